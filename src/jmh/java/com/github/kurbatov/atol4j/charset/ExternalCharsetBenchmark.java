@@ -0,0 +1,85 @@
+/*
+ * atol4j - клиентская библиотека для контрольной кассовой техники (ККТ) АТОЛ
+ * Copyright (C) 2019 Олег Викторович Курбатов
+ *
+ * Это программа является свободным программным обеспечением. Вы можете
+ * распространять и/или модифицировать её согласно условиям Стандартной
+ * Общественной Лицензии GNU, опубликованной Фондом Свободного Программного
+ * Обеспечения, версии 3 или, по Вашему желанию, любой более поздней версии.
+ *
+ * Эта программа распространяется в надежде, что она будет полезной, но БЕЗ
+ * ВСЯКИХ ГАРАНТИЙ, в том числе подразумеваемых гарантий ТОВАРНОГО
+ * СОСТОЯНИЯ ПРИ ПРОДАЖЕ и ГОДНОСТИ ДЛЯ ОПРЕДЕЛЁННОГО ПРИМЕНЕНИЯ. Смотрите
+ * Стандартную Общественную Лицензию GNU для получения дополнительной
+ * информации.
+ *
+ * Вы должны были получить копию Стандартной Общественной Лицензии GNU
+ * вместе с программой. В случае её отсутствия, смотрите
+ * http://www.gnu.org/licenses/.
+ */
+package com.github.kurbatov.atol4j.charset;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Измеряет пропускную способность кодирования и декодирования наименования
+ * товара во внешней кодировке ККТ.
+ *
+ * @author Олег Курбатов &lt;o.v.kurbatov@gmail.com&gt;
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExternalCharsetBenchmark {
+    
+    private static final String NAME = "Молоко пастеризованное 3,2% 1л №5 (Домик в деревне) арт.001234";
+    
+    private CharsetEncoder encoder;
+    
+    private CharsetDecoder decoder;
+    
+    private byte[] encoded;
+
+    @Setup
+    public void setup() throws CharacterCodingException {
+        encoder = ExternalCharset.INSTANCE.newEncoder();
+        decoder = ExternalCharset.INSTANCE.newDecoder();
+        ByteBuffer buffer = encoder.encode(CharBuffer.wrap(NAME));
+        encoded = new byte[buffer.remaining()];
+        buffer.get(encoded);
+    }
+    
+    @Benchmark
+    public ByteBuffer encode() throws CharacterCodingException {
+        return encoder.encode(CharBuffer.wrap(NAME));
+    }
+    
+    @Benchmark
+    public CharBuffer decode() throws CharacterCodingException {
+        return decoder.decode(ByteBuffer.wrap(encoded));
+    }
+    
+    @Benchmark
+    public byte[] getBytes() {
+        return NAME.getBytes(ExternalCharset.INSTANCE);
+    }
+    
+}
@@ -0,0 +1,115 @@
+/*
+ * atol4j - клиентская библиотека для контрольной кассовой техники (ККТ) АТОЛ
+ * Copyright (C) 2019 Олег Викторович Курбатов
+ *
+ * Это программа является свободным программным обеспечением. Вы можете
+ * распространять и/или модифицировать её согласно условиям Стандартной
+ * Общественной Лицензии GNU, опубликованной Фондом Свободного Программного
+ * Обеспечения, версии 3 или, по Вашему желанию, любой более поздней версии.
+ *
+ * Эта программа распространяется в надежде, что она будет полезной, но БЕЗ
+ * ВСЯКИХ ГАРАНТИЙ, в том числе подразумеваемых гарантий ТОВАРНОГО
+ * СОСТОЯНИЯ ПРИ ПРОДАЖЕ и ГОДНОСТИ ДЛЯ ОПРЕДЕЛЁННОГО ПРИМЕНЕНИЯ. Смотрите
+ * Стандартную Общественную Лицензию GNU для получения дополнительной
+ * информации.
+ *
+ * Вы должны были получить копию Стандартной Общественной Лицензии GNU
+ * вместе с программой. В случае её отсутствия, смотрите
+ * http://www.gnu.org/licenses/.
+ */
+package com.github.kurbatov.atol4j.command;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Измеряет пропускную способность кодирования и декодирования чисел в
+ * двоично-десятичном формате (цены, количества и суммы в командах) в сравнении
+ * с прежней реализацией на основе {@link Math#pow(double, double)}.
+ *
+ * @author Олег Курбатов &lt;o.v.kurbatov@gmail.com&gt;
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BinaryDecimalBenchmark {
+    
+    private long value;
+    
+    private byte[] encoded;
+    
+    private byte[] message;
+
+    @Setup
+    public void setup() {
+        value = 1234567890L;
+        encoded = Command.encode(value, 5);
+        message = new byte[104];
+    }
+    
+    @Benchmark
+    public byte[] encode() {
+        return BinaryDecimal.encode(value, 5);
+    }
+    
+    @Benchmark
+    public byte[] encodeInPlace() {
+        BinaryDecimal.encode(value, message, 72, 5);
+        return message;
+    }
+    
+    @Benchmark
+    public byte[] encodeLegacy() {
+        return legacyEncode(value, 5);
+    }
+    
+    @Benchmark
+    public long decode() {
+        return BinaryDecimal.decode(encoded);
+    }
+    
+    @Benchmark
+    public long decodeLegacy() {
+        return legacyDecode(encoded);
+    }
+    
+    private static byte[] legacyEncode(long n, int length) {
+        if (n > 4294967295L) {
+            throw new IllegalArgumentException("Число не может быть больше, чем 4294967295");
+        }
+        byte[] result = new byte[length];
+        for (int i = 0; i < length; i++) {
+            long c = n / (long) Math.pow(100, i);
+            c = c - (c / 100 * 100);
+            long a = c / 10;
+            long b = c - a * 10;
+            result[length - i - 1] = (byte) ((a << 4) | (b & 0xF));
+        }
+        return result;
+    }
+    
+    private static long legacyDecode(byte... buffer) {
+        long result = 0;
+        for (int i = 0; i < buffer.length; i++) {
+            byte b = buffer[i];
+            int a = b & 15;
+            int c = 10 * ((b & 0xF0) >>> 4);
+            int r = a + c;
+            result += r * Math.pow(100, buffer.length - i - 1);
+        }
+        return result;
+    }
+    
+}
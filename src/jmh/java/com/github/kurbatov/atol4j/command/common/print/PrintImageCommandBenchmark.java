@@ -0,0 +1,81 @@
+/*
+ * atol4j - клиентская библиотека для контрольной кассовой техники (ККТ) АТОЛ
+ * Copyright (C) 2019 Олег Викторович Курбатов
+ *
+ * Это программа является свободным программным обеспечением. Вы можете
+ * распространять и/или модифицировать её согласно условиям Стандартной
+ * Общественной Лицензии GNU, опубликованной Фондом Свободного Программного
+ * Обеспечения, версии 3 или, по Вашему желанию, любой более поздней версии.
+ *
+ * Эта программа распространяется в надежде, что она будет полезной, но БЕЗ
+ * ВСЯКИХ ГАРАНТИЙ, в том числе подразумеваемых гарантий ТОВАРНОГО
+ * СОСТОЯНИЯ ПРИ ПРОДАЖЕ и ГОДНОСТИ ДЛЯ ОПРЕДЕЛЁННОГО ПРИМЕНЕНИЯ. Смотрите
+ * Стандартную Общественную Лицензию GNU для получения дополнительной
+ * информации.
+ *
+ * Вы должны были получить копию Стандартной Общественной Лицензии GNU
+ * вместе с программой. В случае её отсутствия, смотрите
+ * http://www.gnu.org/licenses/.
+ */
+package com.github.kurbatov.atol4j.command.common.print;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Измеряет скорость преобразования изображения в растр для печати.
+ *
+ * @author Олег Курбатов &lt;o.v.kurbatov@gmail.com&gt;
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrintImageCommandBenchmark {
+    
+    /**
+     * Ширина изображения в точках: уже растра, во всю ширину и шире растра
+     * (576 точек для 72 байт).
+     */
+    @Param({"384", "576", "800"})
+    private int width;
+    
+    private BufferedImage image;
+    
+    private byte[] raster;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        image = new BufferedImage(width, 200, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, random.nextInt(0x1000000));
+            }
+        }
+        raster = new byte[72];
+    }
+    
+    @Benchmark
+    public byte[] rasterize() {
+        for (int i = 0; i < image.getHeight(); i++) {
+            raster = PrintImageCommand.rasterRow(image, i, raster);
+        }
+        return raster;
+    }
+    
+}
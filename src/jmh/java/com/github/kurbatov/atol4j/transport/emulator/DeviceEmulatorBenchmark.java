@@ -0,0 +1,103 @@
+/*
+ * atol4j - клиентская библиотека для контрольной кассовой техники (ККТ) АТОЛ
+ * Copyright (C) 2019 Олег Викторович Курбатов
+ *
+ * Это программа является свободным программным обеспечением. Вы можете
+ * распространять и/или модифицировать её согласно условиям Стандартной
+ * Общественной Лицензии GNU, опубликованной Фондом Свободного Программного
+ * Обеспечения, версии 3 или, по Вашему желанию, любой более поздней версии.
+ *
+ * Эта программа распространяется в надежде, что она будет полезной, но БЕЗ
+ * ВСЯКИХ ГАРАНТИЙ, в том числе подразумеваемых гарантий ТОВАРНОГО
+ * СОСТОЯНИЯ ПРИ ПРОДАЖЕ и ГОДНОСТИ ДЛЯ ОПРЕДЕЛЁННОГО ПРИМЕНЕНИЯ. Смотрите
+ * Стандартную Общественную Лицензию GNU для получения дополнительной
+ * информации.
+ *
+ * Вы должны были получить копию Стандартной Общественной Лицензии GNU
+ * вместе с программой. В случае её отсутствия, смотрите
+ * http://www.gnu.org/licenses/.
+ */
+package com.github.kurbatov.atol4j.transport.emulator;
+
+import com.github.kurbatov.atol4j.CashRegister;
+import com.github.kurbatov.atol4j.command.Result;
+import com.github.kurbatov.atol4j.command.registration.RegistrationCommandBuilder;
+import com.github.kurbatov.atol4j.transport.protocol.v3.TransportProtocolV3;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Измеряет время формирования чека на эмуляторе ККТ.
+ * 
+ * Режим выборки позволяет оценить не только среднее время, но и хвост
+ * распределения задержек.
+ *
+ * @author Олег Курбатов &lt;o.v.kurbatov@gmail.com&gt;
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeviceEmulatorBenchmark {
+    
+    /**
+     * Размер окна протокола.
+     */
+    @Param({"1", "8"})
+    private int window;
+    
+    /**
+     * Время выполнения задания эмулятором в миллисекундах.
+     */
+    @Param({"0", "1"})
+    private long latency;
+    
+    /**
+     * Количество позиций в чеке.
+     */
+    @Param({"10"})
+    private int items;
+    
+    private CashRegister device;
+
+    @Setup
+    public void setup() throws Exception {
+        DeviceEmulator emulator = new DeviceEmulator();
+        emulator.setLatency(latency);
+        device = new CashRegister(new TransportProtocolV3(new EmulatorTransport(emulator), window), new byte[] {0, 0});
+        device.connect().get(5, TimeUnit.SECONDS);
+    }
+    
+    @TearDown
+    public void tearDown() {
+        device.disconnect();
+    }
+    
+    @Benchmark
+    public Result bill() throws Exception {
+        RegistrationCommandBuilder cb = device.command()
+                .registration((byte) 0x29)
+                .openBillIncome();
+        for (int i = 0; i < items; i++) {
+            cb = cb.registerItem("Товар", 10000, 1000);
+        }
+        return cb.closeBillCash(0)
+                .resetMode()
+                .execute()
+                .get(5, TimeUnit.SECONDS);
+    }
+    
+}
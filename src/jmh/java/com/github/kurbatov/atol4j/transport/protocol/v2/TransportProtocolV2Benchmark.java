@@ -0,0 +1,121 @@
+/*
+ * atol4j - клиентская библиотека для контрольной кассовой техники (ККТ) АТОЛ
+ * Copyright (C) 2019 Олег Викторович Курбатов
+ *
+ * Это программа является свободным программным обеспечением. Вы можете
+ * распространять и/или модифицировать её согласно условиям Стандартной
+ * Общественной Лицензии GNU, опубликованной Фондом Свободного Программного
+ * Обеспечения, версии 3 или, по Вашему желанию, любой более поздней версии.
+ *
+ * Эта программа распространяется в надежде, что она будет полезной, но БЕЗ
+ * ВСЯКИХ ГАРАНТИЙ, в том числе подразумеваемых гарантий ТОВАРНОГО
+ * СОСТОЯНИЯ ПРИ ПРОДАЖЕ и ГОДНОСТИ ДЛЯ ОПРЕДЕЛЁННОГО ПРИМЕНЕНИЯ. Смотрите
+ * Стандартную Общественную Лицензию GNU для получения дополнительной
+ * информации.
+ *
+ * Вы должны были получить копию Стандартной Общественной Лицензии GNU
+ * вместе с программой. В случае её отсутствия, смотрите
+ * http://www.gnu.org/licenses/.
+ */
+package com.github.kurbatov.atol4j.transport.protocol.v2;
+
+import com.github.kurbatov.atol4j.transport.Transport;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Измеряет пропускную способность упаковки, распаковки и проверки сообщений
+ * протоколом нижнего уровня версии 2.
+ *
+ * @author Олег Курбатов &lt;o.v.kurbatov@gmail.com&gt;
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@SuppressWarnings("deprecation")
+public class TransportProtocolV2Benchmark {
+    
+    @Param({"16", "128"})
+    private int size;
+    
+    private TransportProtocolV2 protocol;
+    
+    private byte[] payload;
+    
+    private byte[] frame;
+
+    @Setup
+    public void setup() {
+        protocol = new TransportProtocolV2(new NullTransport());
+        payload = new byte[size];
+        for (int i = 0; i < size; i++) {
+            payload[i] = (byte) i;
+        }
+        frame = protocol.wrap(payload);
+    }
+    
+    @Benchmark
+    public byte[] wrap() {
+        return protocol.wrap(payload);
+    }
+    
+    @Benchmark
+    public byte[] unwrap() {
+        return protocol.unwrap(frame);
+    }
+    
+    @Benchmark
+    public boolean check() {
+        return protocol.check(frame);
+    }
+    
+    static class NullTransport implements Transport {
+
+        @Override
+        public void connect() {
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public void write(byte[] b) {
+        }
+
+        @Override
+        public byte[] read() {
+            return new byte[0];
+        }
+
+        @Override
+        public byte[] read(int count) {
+            return new byte[0];
+        }
+
+        @Override
+        public byte[] read(int count, int timeout) {
+            return new byte[0];
+        }
+
+        @Override
+        public void subscribe(Consumer<byte[]> consumer) {
+        }
+        
+    }
+    
+}
@@ -0,0 +1,129 @@
+/*
+ * atol4j - клиентская библиотека для контрольной кассовой техники (ККТ) АТОЛ
+ * Copyright (C) 2019 Олег Викторович Курбатов
+ *
+ * Это программа является свободным программным обеспечением. Вы можете
+ * распространять и/или модифицировать её согласно условиям Стандартной
+ * Общественной Лицензии GNU, опубликованной Фондом Свободного Программного
+ * Обеспечения, версии 3 или, по Вашему желанию, любой более поздней версии.
+ *
+ * Эта программа распространяется в надежде, что она будет полезной, но БЕЗ
+ * ВСЯКИХ ГАРАНТИЙ, в том числе подразумеваемых гарантий ТОВАРНОГО
+ * СОСТОЯНИЯ ПРИ ПРОДАЖЕ и ГОДНОСТИ ДЛЯ ОПРЕДЕЛЁННОГО ПРИМЕНЕНИЯ. Смотрите
+ * Стандартную Общественную Лицензию GNU для получения дополнительной
+ * информации.
+ *
+ * Вы должны были получить копию Стандартной Общественной Лицензии GNU
+ * вместе с программой. В случае её отсутствия, смотрите
+ * http://www.gnu.org/licenses/.
+ */
+package com.github.kurbatov.atol4j.transport.protocol.v3;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import static com.github.kurbatov.atol4j.transport.protocol.v3.Token.*;
+
+/**
+ * Измеряет пропускную способность расчёта контрольной суммы, кодирования и
+ * декодирования пакетов протокола версии 3.
+ * 
+ * Размеры данных: короткая команда (64 байта), 1 КБ и пакет растровых данных
+ * изображения (8 КБ).
+ *
+ * @author Олег Курбатов &lt;o.v.kurbatov@gmail.com&gt;
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameCodecBenchmark {
+    
+    @Param({"64", "1024", "8192"})
+    private int size;
+    
+    /**
+     * true - данные содержат управляющие символы, которые нужно экранировать
+     */
+    @Param({"false", "true"})
+    private boolean control;
+    
+    private byte[] payload;
+    
+    private ByteBuffer frameOut;
+    
+    private ByteBuffer payloadOut;
+    
+    private byte[] frame;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        payload = new byte[size];
+        for (int i = 0; i < size; i++) {
+            byte b;
+            do {
+                b = (byte) random.nextInt(256);
+            } while (b == STX || b == ESC);
+            payload[i] = b;
+        }
+        if (control) {
+            for (int i = 0; i < size; i += 32) {
+                payload[i] = i % 64 == 0 ? STX : ESC;
+            }
+        }
+        frameOut = ByteBuffer.allocate(FrameCodec.maxFrameLength(size));
+        payloadOut = ByteBuffer.allocate(size);
+        FrameCodec.encode((byte) 1, ByteBuffer.wrap(payload), frameOut);
+        frame = new byte[frameOut.position()];
+        frameOut.flip();
+        frameOut.get(frame);
+    }
+    
+    @Benchmark
+    public int crcBitwise() {
+        int crc = Crc8.INIT;
+        for (byte b : payload) {
+            crc ^= 0xFF & b;
+            for (int k = 0; k < 8; k++) {
+                if ((crc & 0x80) == 128) {
+                    crc = (crc << 1) ^ Crc8.POLY;
+                } else {
+                    crc <<= 1;
+                }
+            }
+        }
+        return crc & 0xFF;
+    }
+    
+    @Benchmark
+    public int crcTable() {
+        return Crc8.update(Crc8.INIT, payload, 0, payload.length);
+    }
+    
+    @Benchmark
+    public int encode() {
+        frameOut.clear();
+        return FrameCodec.encode((byte) 1, ByteBuffer.wrap(payload), frameOut);
+    }
+    
+    @Benchmark
+    public byte decode() {
+        payloadOut.clear();
+        return FrameCodec.decode(ByteBuffer.wrap(frame), payloadOut);
+    }
+    
+}
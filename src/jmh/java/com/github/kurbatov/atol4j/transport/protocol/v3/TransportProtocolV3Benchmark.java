@@ -0,0 +1,156 @@
+/*
+ * atol4j - клиентская библиотека для контрольной кассовой техники (ККТ) АТОЛ
+ * Copyright (C) 2019 Олег Викторович Курбатов
+ *
+ * Это программа является свободным программным обеспечением. Вы можете
+ * распространять и/или модифицировать её согласно условиям Стандартной
+ * Общественной Лицензии GNU, опубликованной Фондом Свободного Программного
+ * Обеспечения, версии 3 или, по Вашему желанию, любой более поздней версии.
+ *
+ * Эта программа распространяется в надежде, что она будет полезной, но БЕЗ
+ * ВСЯКИХ ГАРАНТИЙ, в том числе подразумеваемых гарантий ТОВАРНОГО
+ * СОСТОЯНИЯ ПРИ ПРОДАЖЕ и ГОДНОСТИ ДЛЯ ОПРЕДЕЛЁННОГО ПРИМЕНЕНИЯ. Смотрите
+ * Стандартную Общественную Лицензию GNU для получения дополнительной
+ * информации.
+ *
+ * Вы должны были получить копию Стандартной Общественной Лицензии GNU
+ * вместе с программой. В случае её отсутствия, смотрите
+ * http://www.gnu.org/licenses/.
+ */
+package com.github.kurbatov.atol4j.transport.protocol.v3;
+
+import com.github.kurbatov.atol4j.transport.Transport;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Измеряет пропускную способность упаковки, распаковки и разбора входящего
+ * потока протоколом нижнего уровня версии 3.
+ *
+ * @author Олег Курбатов &lt;o.v.kurbatov@gmail.com&gt;
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransportProtocolV3Benchmark {
+    
+    @Param({"16", "128", "1024"})
+    private int size;
+    
+    private TransportProtocolV3 protocol;
+    
+    private byte[] payload;
+    
+    private byte[] frame;
+    
+    private byte[] head;
+    
+    private byte[] tail;
+    
+    private byte[] batch;
+
+    @Setup
+    public void setup() {
+        protocol = new TransportProtocolV3(new NullTransport());
+        payload = new byte[size];
+        for (int i = 0; i < size; i++) {
+            payload[i] = (byte) i;
+        }
+        frame = protocol.wrap(payload);
+        // синхронный ответ со статусом задания, который не требует
+        // подтверждения и не завершает ожидающих команд
+        byte[] status = new byte[size];
+        status[0] = Status.PENDING;
+        byte[] response = protocol.wrap(status);
+        head = Arrays.copyOfRange(response, 0, response.length / 2);
+        tail = Arrays.copyOfRange(response, response.length / 2, response.length);
+        batch = new byte[response.length * 4];
+        for (int i = 0; i < 4; i++) {
+            System.arraycopy(response, 0, batch, i * response.length, response.length);
+        }
+    }
+    
+    @TearDown
+    public void tearDown() {
+        protocol.stop();
+    }
+    
+    @Benchmark
+    public byte[] wrap() {
+        return protocol.wrap(payload, (byte) 1);
+    }
+    
+    @Benchmark
+    public byte[] unwrap() {
+        return TransportProtocolV3.unwrap(frame);
+    }
+    
+    /**
+     * Пакет приходит двумя частями.
+     */
+    @Benchmark
+    public void processResponseSplit() {
+        protocol.processResponse(head);
+        protocol.processResponse(tail);
+    }
+    
+    /**
+     * Четыре пакета приходят одним блоком.
+     */
+    @Benchmark
+    public void processResponseBatch() {
+        protocol.processResponse(batch);
+    }
+    
+    static class NullTransport implements Transport {
+
+        @Override
+        public void connect() {
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public void write(byte[] b) {
+        }
+
+        @Override
+        public byte[] read() {
+            return new byte[0];
+        }
+
+        @Override
+        public byte[] read(int count) {
+            return new byte[0];
+        }
+
+        @Override
+        public byte[] read(int count, int timeout) {
+            return new byte[0];
+        }
+
+        @Override
+        public void subscribe(Consumer<byte[]> consumer) {
+        }
+        
+    }
+    
+}
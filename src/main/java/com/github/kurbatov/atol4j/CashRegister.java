@@ -20,15 +20,30 @@
 package com.github.kurbatov.atol4j;
 
 import com.github.kurbatov.atol4j.command.Command;
-import com.github.kurbatov.atol4j.command.CommandBuilder;
+import com.github.kurbatov.atol4j.command.CommandChain;
 import com.github.kurbatov.atol4j.command.FirstCommandBuilder;
+import com.github.kurbatov.atol4j.command.RecoveryPolicy;
+import com.github.kurbatov.atol4j.command.RecoveryStrategy;
 import com.github.kurbatov.atol4j.command.Result;
+import com.github.kurbatov.atol4j.command.common.ResetModeCommand;
 import com.github.kurbatov.atol4j.command.common.request.DeviceTypeRequest;
 import com.github.kurbatov.atol4j.command.common.request.RequestBuilder;
+import com.github.kurbatov.atol4j.command.registration.CancelBillCommand;
+import com.github.kurbatov.atol4j.transport.EventLoop;
 import com.github.kurbatov.atol4j.transport.Transport;
+import com.github.kurbatov.atol4j.transport.protocol.CommandTimeout;
+import com.github.kurbatov.atol4j.transport.protocol.ExecutionMode;
+import com.github.kurbatov.atol4j.transport.protocol.Priority;
 import com.github.kurbatov.atol4j.transport.protocol.TransportProtocol;
 import com.github.kurbatov.atol4j.transport.protocol.v3.TransportProtocolV3;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -48,6 +63,22 @@ public class CashRegister {
 
     private DeviceTypeRequest.Response deviceType;
     
+    private final ShadowState shadow = new ShadowState();
+    
+    private long reconcilePeriod = DEFAULT_RECONCILE_PERIOD;
+    
+    private volatile boolean lazyModeReset;
+    
+    private final AtomicBoolean modeResetPending = new AtomicBoolean();
+    
+    private volatile RecoveryPolicy recoveryPolicy = new RecoveryPolicy();
+    
+    /**
+     * Период актуальности теневого состояния устройства по умолчанию, мс.
+     * Теневое состояние по умолчанию не используется.
+     */
+    public static final long DEFAULT_RECONCILE_PERIOD = 0;
+    
     private static final Logger LOGGER = LoggerFactory.getLogger(CashRegister.class);
 
     /**
@@ -102,44 +133,135 @@ public class CashRegister {
      * режим выбора на устройстве. Успешность этой операции зависит от текущего
      * режима и состояния устройства. 
      * 
+     * Если теневое состояние устройства актуально (см.
+     * {@link #setReconcilePeriod(long)}), запрос состояния устройству не
+     * отправляется, а необходимые команды определяются по теневому состоянию.
+     * 
      * @return объект, который оповещает об успешном или неуспешном завершении
      */
     public CompletableFuture<Void> toInitialState() {
-        abort();
+        // необходимые команды определяются по действительному режиму устройства
+        modeResetPending.set(false);
+        if (hasPendingTasks()) {
+            abort();
+        }
+        if (shadow.isFresh(reconcilePeriod)) {
+            return toInitialState(shadow.getMode(), shadow.getSubMode(), shadow.getBillState());
+        }
         return request().deviceState()
-                .thenCompose(response -> {
-                    CompletableFuture<Void> result;
-                    if (response.getMode() != 0) {
-                        CommandBuilder cb = null;
-                        if (response.getBillState() != 0) {
-                            cb = command().cancelBill();
-                        }
-                        if (cb == null) {
-                            cb = command().resetMode();
-                        } else {
-                            cb = cb.resetMode();
-                        }
-                        if (response.getSubMode() != 0) {
-                            cb = cb.resetMode();
-                        }
-                        result = cb.execute().thenAccept(r -> {
-                            if (r.hasError()) {
-                                LOGGER.warn("Ошибка приведение устройства в режим выбора: {}", r.getErrorMessage());
-                                abort();
-                            }
-                        });
-                    } else {
-                        result = CompletableFuture.completedFuture(null);
-                    }
-                    return result;
-                });
+                .thenCompose(response -> toInitialState(response.getMode(), response.getSubMode(), response.getBillState()));
+    }
+    
+    private CompletableFuture<Void> toInitialState(int mode, int subMode, int billState) {
+        if (mode == 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        List<Command<Result>> chain = new ArrayList<>(3);
+        if (billState != 0) {
+            chain.add(CancelBillCommand.INSTANCE);
+        }
+        chain.add(ResetModeCommand.INSTANCE);
+        if (subMode != 0) {
+            chain.add(ResetModeCommand.INSTANCE);
+        }
+        // цепочка выполняется без отложенного выхода из режима и без политики
+        // восстановления: по её завершении устройство должно быть в режиме
+        // выбора
+        return CommandChain.execute(chain.size(), i -> submit(chain.get(i), ExecutionMode.QUEUED)).thenAccept(r -> {
+            if (r.hasError()) {
+                LOGGER.warn("Ошибка приведение устройства в режим выбора: {}", r.getErrorMessage());
+                shadow.invalidate();
+                abort();
+            }
+        });
+    }
+    
+    /**
+     * Устраняет последствия ошибки выполнения команды указанным способом.
+     * 
+     * Задания, которые устройство остановило после ошибки, отменяются. При
+     * восстановлении способом {@link RecoveryStrategy#RESET} устройство
+     * приводится в исходное состояние (см. {@link #toInitialState()}), иначе
+     * состояние устройства не меняется.
+     *
+     * @param strategy способ восстановления
+     * @return объект, который оповещает о завершении восстановления
+     */
+    public CompletableFuture<Void> recover(RecoveryStrategy strategy) {
+        if (strategy == RecoveryStrategy.RESET) {
+            return toInitialState();
+        }
+        if (hasPendingTasks()) {
+            abort();
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+    
+    /**
+     * Устраняет последствия ошибки выполнения команды согласно политике
+     * восстановления (см. {@link #setRecoveryPolicy(RecoveryPolicy)}).
+     * 
+     * Повтор выполняется после паузы, которая удваивается с каждым повтором
+     * (см. {@link RecoveryPolicy#getBackoff(int)}). Команда, которую нельзя
+     * повторить (см. {@link Command#isIdempotent()}), могла быть выполнена
+     * устройством несмотря на ошибку, поэтому вместо повтора устройство
+     * приводится в исходное состояние по его действительному состоянию.
+     *
+     * @param command команда, завершившаяся ошибкой
+     * @param errorCode код ошибки
+     * @param attempt количество уже выполненных повторов
+     * @return объект, который оповещает о завершении восстановления и
+     * передаёт выбранный способ восстановления: при
+     * {@link RecoveryStrategy#RETRY} команду следует повторить
+     */
+    public CompletableFuture<RecoveryStrategy> recover(Command<?> command, byte errorCode, int attempt) {
+        RecoveryPolicy policy = recoveryPolicy;
+        RecoveryStrategy strategy = policy.getStrategy(errorCode, attempt < policy.getRetryLimit());
+        if (strategy == RecoveryStrategy.RETRY && !command.isIdempotent()) {
+            shadow.invalidate(); // исход команды неизвестен
+            strategy = RecoveryStrategy.RESET;
+        }
+        RecoveryStrategy chosen = strategy;
+        CompletableFuture<Void> recovery = recover(strategy);
+        if (strategy == RecoveryStrategy.RETRY) {
+            recovery = recovery.thenCompose(a -> delay(policy.getBackoff(attempt)));
+        }
+        return recovery.thenApply(a -> chosen);
+    }
+    
+    private CompletableFuture<Void> delay(long millis) {
+        // пауза отсчитывается таймером цикла событий, в котором работает
+        // протокол устройства
+        EventLoop loop = protocol instanceof TransportProtocolV3
+                ? ((TransportProtocolV3) protocol).getEventLoop()
+                : EventLoop.getDefault();
+        CompletableFuture<Void> delay = new CompletableFuture<>();
+        loop.getTimer().schedule(() -> delay.complete(null), millis, TimeUnit.MILLISECONDS);
+        return delay;
+    }
+    
+    private boolean hasPendingTasks() {
+        if (protocol instanceof TransportProtocolV3) {
+            return ((TransportProtocolV3) protocol).getPendingCount() > 0;
+        }
+        return true;
     }
     
     /**
      * Отключиться от устройства.
      */
     public void disconnect() {
+        if (modeResetPending.getAndSet(false)) {
+            try {
+                submit(ResetModeCommand.INSTANCE, ExecutionMode.QUEUED).get(CommandTimeout.DEFAULT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException | TimeoutException e) {
+                LOGGER.warn("Не удалось выйти из режима перед отключением от устройства.", e);
+            }
+        }
         protocol.stop();
+        shadow.invalidate();
     }
 
     /**
@@ -169,6 +291,120 @@ public class CashRegister {
         return deviceType;
     }
     
+    /**
+     * Получить теневое состояние устройства.
+     * 
+     * Теневое состояние обновляется по результатам выполненных команд и
+     * сверяется с устройством при каждом запросе состояния устройства.
+     *
+     * @return теневое состояние устройства
+     */
+    public ShadowState getShadowState() {
+        return shadow;
+    }
+
+    /**
+     * Получить период актуальности теневого состояния устройства.
+     *
+     * @return период актуальности, мс
+     */
+    public long getReconcilePeriod() {
+        return reconcilePeriod;
+    }
+
+    /**
+     * Установить период актуальности теневого состояния устройства.
+     * 
+     * Пока с момента последней сверки с устройством прошло меньше указанного
+     * времени, {@link #toInitialState()} не запрашивает состояние устройства.
+     * Значение 0 отключает использование теневого состояния.
+     *
+     * @param reconcilePeriod период актуальности, мс
+     */
+    public void setReconcilePeriod(long reconcilePeriod) {
+        this.reconcilePeriod = reconcilePeriod;
+    }
+
+    /**
+     * Получить политику восстановления после ошибок выполнения команд.
+     *
+     * @return политика восстановления
+     */
+    public RecoveryPolicy getRecoveryPolicy() {
+        return recoveryPolicy;
+    }
+
+    /**
+     * Установить политику восстановления после ошибок выполнения команд.
+     *
+     * @param recoveryPolicy политика восстановления
+     */
+    public void setRecoveryPolicy(RecoveryPolicy recoveryPolicy) {
+        this.recoveryPolicy = recoveryPolicy;
+    }
+
+    /**
+     * Узнать, откладывается ли выход из режима в конце цепочки команд.
+     *
+     * @return true - выход из режима в конце цепочки откладывается
+     */
+    public boolean isLazyModeReset() {
+        return lazyModeReset;
+    }
+
+    /**
+     * Установить, откладывать ли выход из режима в конце цепочки команд.
+     * 
+     * Отложенный выход из режима отправляется устройству перед следующей
+     * командой. Если следующая цепочка начинается со входа в тот же режим, а
+     * теневое состояние актуально (см. {@link #setReconcilePeriod(long)}),
+     * обе команды не отправляются. До отправки следующей команды устройство
+     * остаётся в режиме, в котором завершилась цепочка.
+     *
+     * @param lazyModeReset true - откладывать выход из режима
+     */
+    public void setLazyModeReset(boolean lazyModeReset) {
+        this.lazyModeReset = lazyModeReset;
+    }
+    
+    /**
+     * Откладывает выход из текущего режима до отправки следующей команды.
+     * 
+     * Используется цепочкой команд, завершающейся выходом из режима, если
+     * включено откладывание выхода из режима (см.
+     * {@link #setLazyModeReset(boolean)}).
+     */
+    public void deferModeReset() {
+        modeResetPending.set(true);
+    }
+    
+    /**
+     * Выполняет отложенный выход из режима (см. {@link #deferModeReset()})
+     * перед отправкой указанной команды.
+     * 
+     * Если команда заведомо не изменит состояние устройства (например, входит
+     * в режим, в котором устройство уже находится), выход из режима
+     * отменяется. Если выход из режима завершился ошибкой, устройство
+     * приводится в исходное состояние.
+     *
+     * @param next команда, которая будет отправлена следующей
+     * @return объект, который оповещает о завершении выхода из режима
+     */
+    public CompletableFuture<Void> flushModeReset(Command<?> next) {
+        if (!modeResetPending.getAndSet(false) || next instanceof ResetModeCommand
+                || (shadow.isFresh(reconcilePeriod) && !hasPendingTasks() && next.predict(shadow) != null)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return submit(ResetModeCommand.INSTANCE, ExecutionMode.QUEUED).handle((r, err) -> {
+            if (err == null && !r.hasError()) {
+                return CompletableFuture.<Void>completedFuture(null);
+            }
+            LOGGER.warn("Не удалось выполнить отложенный выход из режима: {}", err != null ? err.getMessage() : r.getErrorMessage());
+            shadow.invalidate();
+            return toInitialState();
+        }).thenCompose(Function.identity());
+    }
+    
     /**
      * Посылает устройству команду на очистку очереди задач.
      */
@@ -188,14 +424,56 @@ public class CashRegister {
      * @return бинарное представление ответа устройства
      */
     public CompletableFuture<byte[]> execute(byte... command) {
+        return execute(Priority.NORMAL, command);
+    }
+
+    /**
+     * Отправляет бинарное представление команды устройству с указанным
+     * приоритетом предварительно добавляя к ней пароль.
+     * 
+     * Если очередь команд устройства ограничена, приоритет определяет, какие
+     * команды будут вытеснены из переполненной очереди. Максимальное время
+     * выполнения определяется кодом команды (см. {@link CommandTimeout}).
+     *
+     * @param priority приоритет команды (см. {@link Priority})
+     * @param command бинарное представление команды
+     * @return бинарное представление ответа устройства
+     */
+    public CompletableFuture<byte[]> execute(int priority, byte[] command) {
+        return execute(priority, ExecutionMode.QUEUED, command);
+    }
+
+    /**
+     * Отправляет бинарное представление команды устройству с указанным
+     * приоритетом и режимом выполнения предварительно добавляя к ней пароль.
+     * 
+     * Режим {@link ExecutionMode#ASYNC} подходит только для команд, не
+     * изменяющих состояние устройства: такая команда может быть отправлена
+     * раньше команд, ожидающих отправки.
+     *
+     * @param priority приоритет команды (см. {@link Priority})
+     * @param mode режим выполнения
+     * @param command бинарное представление команды
+     * @return бинарное представление ответа устройства
+     */
+    public CompletableFuture<byte[]> execute(int priority, ExecutionMode mode, byte[] command) {
         byte[] payload = new byte[password.length + command.length];
         System.arraycopy(password, 0, payload, 0, password.length);
         System.arraycopy(command, 0, payload, password.length, command.length);
-        return protocol.send(payload);
+        int timeout = command.length > 0 ? CommandTimeout.of(command[0]) : CommandTimeout.DEFAULT;
+        CompletableFuture<byte[]> response = protocol.send(payload, priority, timeout, mode);
+        if (mode == ExecutionMode.NO_RESULT) {
+            // пустой ответ означает, что задание выполнено без ошибок
+            return response.thenApply(r -> r.length == 0 ? new byte[] {Result.RESPONSE_CODE, 0, 0} : r);
+        }
+        return response;
     }
     
     /**
      * Выполняет команду и возвращает результат выполнения.
+     * 
+     * После ошибки выполнения команды устройство восстанавливается согласно
+     * политике восстановления (см. {@link #setRecoveryPolicy(RecoveryPolicy)}).
      *
      * @param <C> тип команды
      * @param <R> тип результата выполнения команды
@@ -203,12 +481,50 @@ public class CashRegister {
      * @return результат выполнения команды
      */
     public <C extends Command<R>, R extends Result> CompletableFuture<R> execute(C command) {
-        return command.executeOn(this).thenCompose(r -> {
-            if (r.hasError()) {
-                return this.toInitialState().thenApply(a -> r);
-            } else {
+        return flushModeReset(command).thenCompose(a -> execute(command, 0));
+    }
+    
+    private <R extends Result> CompletableFuture<R> execute(Command<R> command, int attempt) {
+        return submit(command, ExecutionMode.QUEUED).thenCompose(r -> {
+            if (!r.hasError()) {
                 return CompletableFuture.completedFuture(r);
             }
+            return recover(command, r.getErrorCode(), attempt).thenCompose(strategy -> strategy == RecoveryStrategy.RETRY
+                    ? execute(command, attempt + 1)
+                    : CompletableFuture.completedFuture(r));
+        });
+    }
+    
+    /**
+     * Отправляет команду устройству в указанном режиме выполнения и обновляет
+     * теневое состояние устройства по её результату.
+     * 
+     * В отличие от {@link #execute(Command)}, при ошибке выполнения команды
+     * устройство не приводится в исходное состояние, а отложенный выход из
+     * режима не выполняется (см. {@link #flushModeReset(Command)}).
+     * 
+     * Если теневое состояние актуально, а устройство не выполняет других
+     * заданий, команда, которая заведомо не изменит состояние устройства, не
+     * отправляется (см. {@link Command#predict(ShadowState)}).
+     *
+     * @param <R> тип результата выполнения команды
+     * @param command команда
+     * @param mode режим выполнения
+     * @return результат выполнения команды
+     */
+    public <R extends Result> CompletableFuture<R> submit(Command<R> command, ExecutionMode mode) {
+        if (shadow.isFresh(reconcilePeriod) && !hasPendingTasks()) {
+            R predicted = command.predict(shadow);
+            if (predicted != null) {
+                return CompletableFuture.completedFuture(predicted);
+            }
+        }
+        return command.executeOn(this, mode).whenComplete((r, err) -> {
+            if (err != null) {
+                shadow.invalidate();
+            } else if (!r.hasError()) {
+                command.update(shadow, r);
+            }
         });
     }
 
@@ -0,0 +1,220 @@
+/*
+ * atol4j - клиентская библиотека для контрольной кассовой техники (ККТ) АТОЛ
+ * Copyright (C) 2019 Олег Викторович Курбатов
+ *
+ * Это программа является свободным программным обеспечением. Вы можете
+ * распространять и/или модифицировать её согласно условиям Стандартной
+ * Общественной Лицензии GNU, опубликованной Фондом Свободного Программного
+ * Обеспечения, версии 3 или, по Вашему желанию, любой более поздней версии.
+ *
+ * Эта программа распространяется в надежде, что она будет полезной, но БЕЗ
+ * ВСЯКИХ ГАРАНТИЙ, в том числе подразумеваемых гарантий ТОВАРНОГО
+ * СОСТОЯНИЯ ПРИ ПРОДАЖЕ и ГОДНОСТИ ДЛЯ ОПРЕДЕЛЁННОГО ПРИМЕНЕНИЯ. Смотрите
+ * Стандартную Общественную Лицензию GNU для получения дополнительной
+ * информации.
+ *
+ * Вы должны были получить копию Стандартной Общественной Лицензии GNU
+ * вместе с программой. В случае её отсутствия, смотрите
+ * http://www.gnu.org/licenses/.
+ */
+package com.github.kurbatov.atol4j;
+
+import com.github.kurbatov.atol4j.command.common.request.DeviceStateRequest;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Теневое состояние устройства на стороне клиента.
+ * 
+ * Хранит режим, подрежим, состояние чека и смены и счётчики чеков устройства.
+ * Состояние обновляется по результатам успешно выполненных команд, которые
+ * его изменяют, и сверяется с устройством при каждом запросе состояния
+ * устройства. Команда, завершившаяся ошибкой, устройством не выполняется и
+ * состояние не меняет. Если исход команды неизвестен (например, истёк срок
+ * ожидания результата) или её влияние на состояние не моделируется, теневое
+ * состояние считается неизвестным до следующей сверки.
+ * 
+ * Теневое состояние позволяет принимать решения без запроса состояния
+ * устройства, пока оно известно и не старше периода сверки.
+ *
+ * @author Олег Курбатов &lt;o.v.kurbatov@gmail.com&gt;
+ */
+public class ShadowState {
+    
+    private boolean known;
+    
+    private long reconciledAt;
+    
+    private int mode;
+    
+    private int subMode;
+    
+    private int billState;
+    
+    private boolean shiftOpen;
+    
+    private int billNumber;
+    
+    private int shiftNumber;
+    
+    /**
+     * Сверяет теневое состояние с ответом устройства на запрос состояния.
+     *
+     * @param state состояние устройства
+     */
+    public synchronized void reconcile(DeviceStateRequest.Response state) {
+        mode = state.getMode();
+        subMode = state.getSubMode();
+        billState = state.getBillState();
+        shiftOpen = state.isShiftOpen();
+        billNumber = state.getBillNumber();
+        shiftNumber = state.getShiftNumber();
+        reconciledAt = System.nanoTime();
+        known = true;
+    }
+    
+    /**
+     * Помечает теневое состояние неизвестным до следующей сверки с
+     * устройством.
+     */
+    public synchronized void invalidate() {
+        known = false;
+    }
+    
+    /**
+     * Узнать, известно ли состояние устройства.
+     *
+     * @return true - теневое состояние соответствует состоянию устройства
+     */
+    public synchronized boolean isKnown() {
+        return known;
+    }
+    
+    /**
+     * Узнать, можно ли принимать решения по теневому состоянию без сверки с
+     * устройством.
+     *
+     * @param period период сверки в миллисекундах
+     * @return true - состояние известно и с момента сверки с устройством прошло
+     * меньше указанного периода
+     */
+    public synchronized boolean isFresh(long period) {
+        return known && System.nanoTime() - reconciledAt < TimeUnit.MILLISECONDS.toNanos(period);
+    }
+    
+    /**
+     * Отмечает вход устройства в режим.
+     *
+     * @param mode режим
+     */
+    public synchronized void modeEntered(int mode) {
+        this.mode = mode;
+        this.subMode = 0;
+    }
+    
+    /**
+     * Отмечает выход устройства из текущего подрежима или, если подрежима нет,
+     * из текущего режима.
+     */
+    public synchronized void modeReset() {
+        if (subMode != 0) {
+            subMode = 0;
+        } else {
+            mode = 0;
+        }
+    }
+    
+    /**
+     * Отмечает открытие чека.
+     *
+     * @param type тип чека
+     */
+    public synchronized void billOpened(int type) {
+        billState = type;
+    }
+    
+    /**
+     * Отмечает закрытие чека.
+     */
+    public synchronized void billClosed() {
+        billState = 0;
+        billNumber++;
+    }
+    
+    /**
+     * Отмечает аннулирование чека.
+     */
+    public synchronized void billCancelled() {
+        billState = 0;
+    }
+    
+    /**
+     * Отмечает открытие смены.
+     */
+    public synchronized void shiftOpened() {
+        shiftOpen = true;
+    }
+    
+    /**
+     * Отмечает закрытие смены.
+     */
+    public synchronized void shiftClosed() {
+        shiftOpen = false;
+        shiftNumber++;
+    }
+
+    /**
+     * Получить код режима устройства.
+     *
+     * @return код режима
+     */
+    public synchronized int getMode() {
+        return mode;
+    }
+
+    /**
+     * Получить код подрежима устройства.
+     *
+     * @return код подрежима
+     */
+    public synchronized int getSubMode() {
+        return subMode;
+    }
+
+    /**
+     * Получить состояние чека.
+     *
+     * @return тип открытого чека или 0, если чек закрыт
+     * @see DeviceStateRequest.Response#getBillState()
+     */
+    public synchronized int getBillState() {
+        return billState;
+    }
+
+    /**
+     * Узнать, открыта ли смена.
+     *
+     * @return true - смена открыта
+     */
+    public synchronized boolean isShiftOpen() {
+        return shiftOpen;
+    }
+
+    /**
+     * Получить номер последнего закрытого чека.
+     *
+     * @return номер чека
+     */
+    public synchronized int getBillNumber() {
+        return billNumber;
+    }
+
+    /**
+     * Получить номер последней закрытой смены.
+     *
+     * @return номер смены
+     */
+    public synchronized int getShiftNumber() {
+        return shiftNumber;
+    }
+    
+}
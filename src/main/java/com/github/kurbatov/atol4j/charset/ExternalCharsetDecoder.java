@@ -19,14 +19,12 @@
  */
 package com.github.kurbatov.atol4j.charset;
 
-import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CoderResult;
-import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Arrays;
 
 /**
  * Содержит определения внешней кодовой страницы записи данных в ККТ (внешняя
@@ -49,10 +47,21 @@ import java.util.stream.Collectors;
  */
 public class ExternalCharsetDecoder extends CharsetDecoder {
 
-    static final Map<Integer, Character> CODEPAGE = ExternalCharsetEncoder.CODEPAGE
-                .entrySet()
-                .stream()
-                .collect(Collectors.toMap(e -> e.getValue(), e -> e.getKey()));
+    /**
+     * Таблица декодирования: индекс - код символа во внешней кодировке,
+     * значение - символ.
+     */
+    static final char[] TABLE = new char[256];
+    
+    /**
+     * Отметка кода, которому не соответствует ни один символ.
+     */
+    private static final char UNMAPPED = '\uFFFF';
+    
+    static {
+        Arrays.fill(TABLE, UNMAPPED);
+        ExternalCharsetEncoder.CODEPAGE.forEach((c, code) -> TABLE[code] = c);
+    }
 
     public ExternalCharsetDecoder(Charset charset) {
         super(charset, 1, 1);
@@ -60,16 +69,44 @@ public class ExternalCharsetDecoder extends CharsetDecoder {
 
     @Override
     protected CoderResult decodeLoop(ByteBuffer in, CharBuffer out) {
-        for (;;) {
-            if (in.hasRemaining() && !out.hasRemaining()) {
+        if (in.hasArray() && out.hasArray()) {
+            return decodeArrayLoop(in, out);
+        }
+        while (in.hasRemaining()) {
+            if (!out.hasRemaining()) {
                 return CoderResult.OVERFLOW;
             }
-            try {
-                byte c = in.get();
-                out.put(CODEPAGE.get(0xFF & c));
-            } catch (BufferUnderflowException e) {
-                return CoderResult.UNDERFLOW;
+            char c = TABLE[in.get(in.position()) & 0xFF];
+            if (c == UNMAPPED) {
+                return CoderResult.unmappableForLength(1);
             }
+            in.get();
+            out.put(c);
+        }
+        return CoderResult.UNDERFLOW;
+    }
+
+    private CoderResult decodeArrayLoop(ByteBuffer in, CharBuffer out) {
+        byte[] src = in.array();
+        int sp = in.arrayOffset() + in.position();
+        char[] dst = out.array();
+        int dp = out.arrayOffset() + out.position();
+        int n = Math.min(in.remaining(), out.remaining());
+        CoderResult result = null;
+        int i = 0;
+        for (; i < n; i++) {
+            char c = TABLE[src[sp + i] & 0xFF];
+            if (c == UNMAPPED) {
+                result = CoderResult.unmappableForLength(1);
+                break;
+            }
+            dst[dp + i] = c;
+        }
+        in.position(in.position() + i);
+        out.position(out.position() + i);
+        if (result == null) {
+            result = in.hasRemaining() ? CoderResult.OVERFLOW : CoderResult.UNDERFLOW;
         }
+        return result;
     }
 }
@@ -19,12 +19,12 @@
  */
 package com.github.kurbatov.atol4j.charset;
 
-import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetEncoder;
 import java.nio.charset.CoderResult;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -50,6 +50,13 @@ import java.util.Map;
 public class ExternalCharsetEncoder extends CharsetEncoder {
 
     static final Map<Character, Integer> CODEPAGE = new HashMap<>();
+    
+    /**
+     * Таблица кодирования: индекс - код символа, значение - код символа во
+     * внешней кодировке. Символы, отсутствующие во внешней кодировке,
+     * заменяются знаком вопроса.
+     */
+    static final byte[] TABLE = new byte[Character.MAX_VALUE + 1];
 
     static {
         CODEPAGE.put(' ', 0x20);
@@ -279,6 +286,9 @@ public class ExternalCharsetEncoder extends CharsetEncoder {
         CODEPAGE.put('\u2011', 0xFA);
         CODEPAGE.put('$', 0xFC);
         CODEPAGE.put('■', 0xFF);
+        
+        Arrays.fill(TABLE, CODEPAGE.get('?').byteValue());
+        CODEPAGE.forEach((c, code) -> TABLE[c] = code.byteValue());
     }
 
     public ExternalCharsetEncoder(Charset charset) {
@@ -287,22 +297,29 @@ public class ExternalCharsetEncoder extends CharsetEncoder {
 
     @Override
     protected CoderResult encodeLoop(CharBuffer in, ByteBuffer out) {
-        for (;;) {
-            if (in.hasRemaining() && !out.hasRemaining()) {
+        if (in.hasArray() && out.hasArray()) {
+            return encodeArrayLoop(in, out);
+        }
+        while (in.hasRemaining()) {
+            if (!out.hasRemaining()) {
                 return CoderResult.OVERFLOW;
             }
-            try {
-                char c = in.get();
-                Integer outCode;
-                if (CODEPAGE.containsKey(c)) {
-                    outCode = CODEPAGE.get(c);
-                } else {
-                    outCode = CODEPAGE.get('?');
-                }
-                out.put(outCode.byteValue());
-            } catch (BufferUnderflowException e) {
-                return CoderResult.UNDERFLOW;
-            }
+            out.put(TABLE[in.get()]);
+        }
+        return CoderResult.UNDERFLOW;
+    }
+
+    private CoderResult encodeArrayLoop(CharBuffer in, ByteBuffer out) {
+        char[] src = in.array();
+        int sp = in.arrayOffset() + in.position();
+        byte[] dst = out.array();
+        int dp = out.arrayOffset() + out.position();
+        int n = Math.min(in.remaining(), out.remaining());
+        for (int i = 0; i < n; i++) {
+            dst[dp + i] = TABLE[src[sp + i]];
         }
+        in.position(in.position() + n);
+        out.position(out.position() + n);
+        return in.hasRemaining() ? CoderResult.OVERFLOW : CoderResult.UNDERFLOW;
     }
 }
@@ -20,6 +20,8 @@
 package com.github.kurbatov.atol4j.command;
 
 import com.github.kurbatov.atol4j.CashRegister;
+import com.github.kurbatov.atol4j.transport.protocol.ExecutionMode;
+import com.github.kurbatov.atol4j.transport.protocol.Priority;
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -37,7 +39,17 @@ public class BasicCommand implements Command<Result> {
     
     @Override
     public CompletableFuture<Result> executeOn(CashRegister device) {
-        return device.execute(command).thenApply(r -> new Result(r));
+        return executeOn(device, ExecutionMode.QUEUED);
+    }
+
+    @Override
+    public CompletableFuture<Result> executeOn(CashRegister device, ExecutionMode mode) {
+        return device.execute(Priority.NORMAL, mode, command).thenApply(r -> new Result(r));
+    }
+
+    @Override
+    public boolean isPipelined() {
+        return true;
     }
     
 }
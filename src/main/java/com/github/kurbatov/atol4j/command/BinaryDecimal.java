@@ -0,0 +1,122 @@
+/*
+ * atol4j - клиентская библиотека для контрольной кассовой техники (ККТ) АТОЛ
+ * Copyright (C) 2019 Олег Викторович Курбатов
+ *
+ * Это программа является свободным программным обеспечением. Вы можете
+ * распространять и/или модифицировать её согласно условиям Стандартной
+ * Общественной Лицензии GNU, опубликованной Фондом Свободного Программного
+ * Обеспечения, версии 3 или, по Вашему желанию, любой более поздней версии.
+ *
+ * Эта программа распространяется в надежде, что она будет полезной, но БЕЗ
+ * ВСЯКИХ ГАРАНТИЙ, в том числе подразумеваемых гарантий ТОВАРНОГО
+ * СОСТОЯНИЯ ПРИ ПРОДАЖЕ и ГОДНОСТИ ДЛЯ ОПРЕДЕЛЁННОГО ПРИМЕНЕНИЯ. Смотрите
+ * Стандартную Общественную Лицензию GNU для получения дополнительной
+ * информации.
+ *
+ * Вы должны были получить копию Стандартной Общественной Лицензии GNU
+ * вместе с программой. В случае её отсутствия, смотрите
+ * http://www.gnu.org/licenses/.
+ */
+package com.github.kurbatov.atol4j.command;
+
+/**
+ * Кодирование и декодирование чисел в двоично-десятичном формате.
+ * 
+ * Каждый байт содержит две десятичные цифры: старшую в старшем полубайте и
+ * младшую в младшем. Старшие разряды числа передаются первыми. Кодирование и
+ * декодирование выполняются в целочисленной арифметике непосредственно в
+ * массиве команды или ответа без создания промежуточных массивов.
+ *
+ * @author Олег Курбатов &lt;o.v.kurbatov@gmail.com&gt;
+ */
+public final class BinaryDecimal {
+    
+    /**
+     * Максимальная длина двоично-десятичного числа в байтах, которое всегда
+     * помещается в {@code long}.
+     */
+    public static final int MAX_LENGTH = 9;
+    
+    private static final long[] LIMITS = new long[MAX_LENGTH + 1];
+    
+    static {
+        LIMITS[0] = 1;
+        for (int i = 1; i < LIMITS.length; i++) {
+            LIMITS[i] = LIMITS[i - 1] * 100;
+        }
+    }
+
+    private BinaryDecimal() {
+    }
+    
+    /**
+     * Кодирует число в двоично-десятичный формат.
+     *
+     * @param n число
+     * @param length длина бинарного представления в байтах
+     * @return число в двоично-десятичном формате
+     * @throws IllegalArgumentException если число отрицательное или не
+     * помещается в указанное количество байт
+     */
+    public static byte[] encode(long n, int length) {
+        byte[] result = new byte[length];
+        encode(n, result, 0, length);
+        return result;
+    }
+    
+    /**
+     * Кодирует число в двоично-десятичный формат и записывает его в указанный
+     * массив.
+     *
+     * @param n число
+     * @param buffer массив, в который записывается число
+     * @param offset индекс первого байта числа в массиве
+     * @param length длина бинарного представления в байтах
+     * @return индекс байта, следующего за записанным числом
+     * @throws IllegalArgumentException если число отрицательное или не
+     * помещается в указанное количество байт
+     */
+    public static int encode(long n, byte[] buffer, int offset, int length) {
+        if (n < 0) {
+            throw new IllegalArgumentException("Число не может быть отрицательным: " + n);
+        }
+        if (length < LIMITS.length && n >= LIMITS[length]) {
+            throw new IllegalArgumentException(String.format("Число %d не помещается в %d байт", n, length));
+        }
+        for (int i = offset + length - 1; i >= offset; i--) {
+            int c = (int) (n % 100);
+            n /= 100;
+            buffer[i] = (byte) ((c / 10) << 4 | c % 10);
+        }
+        return offset + length;
+    }
+    
+    /**
+     * Декодирует число из двоично-десятичной записи.
+     *
+     * @param buffer байты числа в двоично-десятичном формате
+     * @return декодированное число
+     */
+    public static long decode(byte... buffer) {
+        return decode(buffer, 0, buffer.length);
+    }
+    
+    /**
+     * Декодирует число из двоично-десятичной записи, которая находится в
+     * указанном участке массива.
+     *
+     * @param buffer массив, который содержит число
+     * @param offset индекс первого байта числа в массиве
+     * @param length длина бинарного представления в байтах
+     * @return декодированное число
+     */
+    public static long decode(byte[] buffer, int offset, int length) {
+        long result = 0;
+        for (int i = offset; i < offset + length; i++) {
+            int b = buffer[i];
+            result = result * 100 + ((b >>> 4) & 0xF) * 10 + (b & 0xF);
+        }
+        return result;
+    }
+    
+}
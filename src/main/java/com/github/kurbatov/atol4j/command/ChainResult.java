@@ -0,0 +1,69 @@
+/*
+ * atol4j - клиентская библиотека для контрольной кассовой техники (ККТ) АТОЛ
+ * Copyright (C) 2019 Олег Викторович Курбатов
+ *
+ * Это программа является свободным программным обеспечением. Вы можете
+ * распространять и/или модифицировать её согласно условиям Стандартной
+ * Общественной Лицензии GNU, опубликованной Фондом Свободного Программного
+ * Обеспечения, версии 3 или, по Вашему желанию, любой более поздней версии.
+ *
+ * Эта программа распространяется в надежде, что она будет полезной, но БЕЗ
+ * ВСЯКИХ ГАРАНТИЙ, в том числе подразумеваемых гарантий ТОВАРНОГО
+ * СОСТОЯНИЯ ПРИ ПРОДАЖЕ и ГОДНОСТИ ДЛЯ ОПРЕДЕЛЁННОГО ПРИМЕНЕНИЯ. Смотрите
+ * Стандартную Общественную Лицензию GNU для получения дополнительной
+ * информации.
+ *
+ * Вы должны были получить копию Стандартной Общественной Лицензии GNU
+ * вместе с программой. В случае её отсутствия, смотрите
+ * http://www.gnu.org/licenses/.
+ */
+package com.github.kurbatov.atol4j.command;
+
+/**
+ * Результат выполнения цепочки команд.
+ * 
+ * Содержит код ответа и код ошибки команды, на которой остановилось выполнение
+ * цепочки, и индекс этой команды в цепочке.
+ *
+ * @author Олег Курбатов &lt;o.v.kurbatov@gmail.com&gt;
+ */
+public class ChainResult extends Result {
+    
+    private final Result result;
+    
+    private final int failedIndex;
+
+    /**
+     * Создаёт результат выполнения цепочки команд.
+     *
+     * @param result результат команды, завершившейся ошибкой, или последней
+     * команды цепочки
+     * @param failedIndex индекс команды, завершившейся ошибкой, или -1
+     */
+    public ChainResult(Result result, int failedIndex) {
+        super(result.getResponseCode(), result.getErrorCode(), result.getErrorExt());
+        this.result = result;
+        this.failedIndex = failedIndex;
+    }
+
+    /**
+     * Получить результат команды, завершившейся ошибкой, или последней команды
+     * цепочки.
+     *
+     * @return результат команды
+     */
+    public Result getResult() {
+        return result;
+    }
+
+    /**
+     * Получить индекс команды, завершившейся ошибкой.
+     *
+     * @return индекс команды в цепочке или -1, если все команды выполнены без
+     * ошибок
+     */
+    public int getFailedIndex() {
+        return failedIndex;
+    }
+    
+}
@@ -20,6 +20,8 @@
 package com.github.kurbatov.atol4j.command;
 
 import com.github.kurbatov.atol4j.CashRegister;
+import com.github.kurbatov.atol4j.ShadowState;
+import com.github.kurbatov.atol4j.transport.protocol.ExecutionMode;
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -38,26 +40,123 @@ public interface Command<R extends Result> {
      */
     CompletableFuture<R> executeOn(CashRegister device);
     
+    /**
+     * Исполняет команду на указанном устройстве в указанном режиме выполнения.
+     * 
+     * Команда, результат которой содержит только код ошибки, может быть
+     * отправлена в режиме {@link ExecutionMode#NO_RESULT}. Остальные команды
+     * режим игнорируют.
+     *
+     * @param device устройство
+     * @param mode режим выполнения
+     * @return результат выполнения команды
+     */
+    default CompletableFuture<R> executeOn(CashRegister device, ExecutionMode mode) {
+        return executeOn(device);
+    }
+    
+    /**
+     * Узнать, можно ли отправить команду устройству, не дожидаясь результата
+     * выполнения предыдущей команды цепочки.
+     * 
+     * Такая команда должна передаваться устройству ровно одним заданием и не
+     * должна зависеть от результатов выполнения предыдущих команд. Если
+     * предыдущее задание завершится ошибкой, устройство остановит выполнение
+     * последующих заданий из своей очереди.
+     *
+     * @return true - команду можно отправить заранее, false - команду можно
+     * отправить только после получения результата предыдущей команды
+     */
+    default boolean isPipelined() {
+        return false;
+    }
+    
+    /**
+     * Узнать, можно ли отправить команду в пакетном режиме без запроса
+     * результата.
+     * 
+     * Успешное выполнение такой команды подтверждается только результатом
+     * следующей команды, поэтому режим подходит для печати строк документа и
+     * подобных команд, но не для команд, регистрирующих фискальные данные или
+     * меняющих состояние устройства.
+     *
+     * @return true - команду можно отправить без запроса результата
+     */
+    default boolean isBatchable() {
+        return false;
+    }
+    
+    /**
+     * Обновляет теневое состояние устройства по результату успешного
+     * выполнения команды.
+     * 
+     * По умолчанию теневое состояние признаётся неактуальным: влияние
+     * команды на режим устройства, состояние чека или смены неизвестно.
+     * Команды, которые их заведомо не меняют (запросы, печать и т.п.),
+     * переопределяют метод пустой реализацией.
+     *
+     * @param state теневое состояние устройства
+     * @param result результат выполнения команды
+     */
+    default void update(ShadowState state, R result) {
+        state.invalidate();
+    }
+    
+    /**
+     * Узнать, можно ли повторить команду после временной ошибки устройства.
+     * 
+     * Повтор идемпотентной команды не меняет состояние устройства повторно.
+     * Команды, регистрирующие фискальные данные, могли быть выполнены
+     * устройством несмотря на ошибку (например, ошибку обмена с фискальным
+     * накопителем) и по умолчанию не повторяются.
+     *
+     * @return true - команду можно повторить
+     */
+    default boolean isIdempotent() {
+        return false;
+    }
+    
+    /**
+     * Предсказывает результат выполнения команды по теневому состоянию
+     * устройства.
+     * 
+     * Команду, которая заведомо не изменит состояние устройства (например,
+     * вход в режим, в котором устройство уже находится), можно не отправлять
+     * устройству, а использовать предсказанный результат.
+     *
+     * @param state теневое состояние устройства
+     * @return результат выполнения команды или null, если команду необходимо
+     * отправить устройству
+     */
+    default R predict(ShadowState state) {
+        return null;
+    }
+    
     /**
      * Кодирует число в двоично-десятичный формат.
      *
      * @param n число
      * @param length длинна бинарного представления в байтах
      * @return число в двоично-десятичном формате
+     * @see BinaryDecimal#encode(long, int)
      */
     public static byte[] encode(long n, int length) {
-        if (n > 4294967295L) {
-            throw new IllegalArgumentException("Число не может быть больше, чем 4294967295");
-        }
-        byte[] result = new byte[length];
-        for (int i = 0; i < length; i++) {
-            long c = n / (long) Math.pow(100, i);
-            c = c - (c / 100 * 100);
-            long a = c / 10;
-            long b = c - a * 10;
-            result[length - i - 1] = (byte) ((a << 4) | (b & 0xF));
-        }
-        return result;
+        return BinaryDecimal.encode(n, length);
+    }
+    
+    /**
+     * Кодирует число в двоично-десятичный формат и записывает его в указанный
+     * массив.
+     *
+     * @param n число
+     * @param buffer массив, в который записывается число
+     * @param offset индекс первого байта числа в массиве
+     * @param length длинна бинарного представления в байтах
+     * @return индекс байта, следующего за записанным числом
+     * @see BinaryDecimal#encode(long, byte[], int, int)
+     */
+    public static int encode(long n, byte[] buffer, int offset, int length) {
+        return BinaryDecimal.encode(n, buffer, offset, length);
     }
     
 }
@@ -20,14 +20,17 @@
 package com.github.kurbatov.atol4j.command;
 
 import com.github.kurbatov.atol4j.CashRegister;
+import com.github.kurbatov.atol4j.command.common.ResetModeCommand;
 import com.github.kurbatov.atol4j.command.common.SetModeCommand;
 import com.github.kurbatov.atol4j.command.registration.RegistrationCommandBuilder;
 import com.github.kurbatov.atol4j.command.report.ReportCommandBuilder;
 import com.github.kurbatov.atol4j.command.select.SelectCommandBuilder;
+import com.github.kurbatov.atol4j.transport.protocol.ExecutionMode;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
-import java.util.function.Function;
 
 /**
  * Цепочка команд, позволяющая добавлять дополнительные команды и выполнить уже
@@ -61,21 +64,124 @@ public class CommandBuilder implements SelectCommandBuilder, CommandExecutor {
         return new ReportCommandBuilder(this, password);
     }
     
+    /**
+     * Выполнить цепочку команд и вернуть результат выполнения.
+     * 
+     * Идущие подряд команды, которые {@link Command#isPipelined() допускают}
+     * отправку до получения результата предыдущей команды, передаются
+     * устройству одним пакетом. Количество одновременно отправленных устройству
+     * заданий ограничивается транспортным протоколом.
+     * 
+     * Результатом выполнения является {@link ChainResult}, который содержит
+     * индекс команды, завершившейся ошибкой.
+     * 
+     * Если устройство откладывает выход из режима
+     * ({@link CashRegister#setLazyModeReset(boolean)}), завершающий цепочку
+     * выход из режима отправляется устройству только перед следующей командой.
+     *
+     * @return ссылка на будущий результат выполнения команды
+     */
     @Override
     public CompletableFuture<Result> execute() {
-        CompletableFuture<Result> result = CompletableFuture.completedFuture(new Result());
-        for (Command<? extends Result> c : commands) {
-            result = result.thenCompose(r -> r.hasError() ? CompletableFuture.completedFuture(r) : c.executeOn(device).thenApply(Function.identity()));
+        return execute(false);
+    }
+    
+    /**
+     * Выполнить цепочку команд в пакетном режиме и вернуть результат
+     * выполнения.
+     * 
+     * В отличие от {@link #execute()}, команды пакета, кроме последней, которые
+     * {@link Command#isBatchable() допускают} это (печать строк, штрихкодов,
+     * клише, отрезка ленты и звуковой сигнал), отправляются устройству без
+     * запроса результата: устройство сообщает
+     * только об ошибке их выполнения, а успешное выполнение подтверждается
+     * результатом последней команды пакета. Это сокращает количество обменов
+     * данными при печати длинных документов. Ошибка относится к той команде
+     * пакета, которая её вызвала. Протоколы, которые не поддерживают очередь
+     * заданий устройства, выполняют цепочку как обычно.
+     *
+     * @return ссылка на будущий результат выполнения команды
+     */
+    public CompletableFuture<Result> executeBatch() {
+        return execute(true);
+    }
+    
+    private CompletableFuture<Result> execute(boolean silent) {
+        List<Command<? extends Result>> chain = new ArrayList<>(commands);
+        boolean deferReset = device.isLazyModeReset() && chain.size() > 1
+                && chain.get(chain.size() - 1) instanceof ResetModeCommand;
+        if (deferReset) {
+            chain.remove(chain.size() - 1);
         }
-        return result.thenCompose(r -> {
-            if (r.hasError()) {
-                return device.toInitialState().thenApply(a -> r);
-            } else {
+        CompletableFuture<Void> reset = chain.isEmpty()
+                ? CompletableFuture.completedFuture(null)
+                : device.flushModeReset(chain.get(0));
+        return reset.thenCompose(a -> execute(chain, 0, silent, 0)).thenApply(r -> {
+            if (!r.hasError() && deferReset) {
+                device.deferModeReset();
+            }
+            return r;
+        });
+    }
+    
+    /**
+     * Выполняет команды цепочки, начиная с указанной. После ошибки выполнения
+     * устройство восстанавливается согласно политике восстановления, а при
+     * повторе выполнение продолжается с команды, завершившейся ошибкой.
+     *
+     * @param chain команды цепочки
+     * @param start индекс первой выполняемой команды
+     * @param silent true - пакетный режим
+     * @param attempt количество уже выполненных повторов первой команды
+     * @return результат выполнения цепочки с индексом команды относительно
+     * начала цепочки
+     */
+    private CompletableFuture<Result> execute(List<Command<? extends Result>> chain, int start, boolean silent, int attempt) {
+        Deque<CompletableFuture<? extends Result>> submitted = new ArrayDeque<>();
+        return CommandChain.execute(chain.size() - start, i -> {
+            if (submitted.isEmpty()) {
+                submit(chain, start + i, silent, submitted);
+            }
+            return submitted.poll();
+        }).thenCompose(r -> {
+            if (!r.hasError()) {
                 return CompletableFuture.completedFuture(r);
             }
+            int failed = start + r.getFailedIndex();
+            // повторы считаются для каждой команды: ошибка следующей команды
+            // начинает отсчёт заново
+            int tries = failed == start ? attempt : 0;
+            return device.recover(chain.get(failed), r.getErrorCode(), tries).thenCompose(strategy -> strategy == RecoveryStrategy.RETRY
+                    ? execute(chain, failed, silent, tries + 1)
+                    : CompletableFuture.completedFuture(new ChainResult(r.getResult(), failed)));
         });
     }
 
+    /**
+     * Отправляет устройству пакет команд, начинающийся с указанной команды, не
+     * дожидаясь результатов. Пакет состоит из идущих подряд команд, которые
+     * допускают отправку до получения результата предыдущей команды, или из
+     * одной команды.
+     *
+     * @param chain команды цепочки
+     * @param start индекс первой команды пакета
+     * @param silent true - команды пакета, кроме последней, отправляются без
+     * запроса результата, если допускают это
+     * @param submitted очередь, в которую добавляются ответы команд пакета
+     */
+    private void submit(List<Command<? extends Result>> chain, int start, boolean silent, Deque<CompletableFuture<? extends Result>> submitted) {
+        int end = start + 1;
+        if (chain.get(start).isPipelined()) {
+            while (end < chain.size() && chain.get(end).isPipelined()) {
+                end++;
+            }
+        }
+        for (int i = start; i < end; i++) {
+            Command<? extends Result> c = chain.get(i);
+            submitted.add(device.submit(c, silent && i < end - 1 && c.isBatchable() ? ExecutionMode.NO_RESULT : ExecutionMode.QUEUED));
+        }
+    }
+
     @Override
     public CommandBuilder append(Command<? extends Result> command) {
         commands.add(command);
@@ -0,0 +1,108 @@
+/*
+ * atol4j - клиентская библиотека для контрольной кассовой техники (ККТ) АТОЛ
+ * Copyright (C) 2019 Олег Викторович Курбатов
+ *
+ * Это программа является свободным программным обеспечением. Вы можете
+ * распространять и/или модифицировать её согласно условиям Стандартной
+ * Общественной Лицензии GNU, опубликованной Фондом Свободного Программного
+ * Обеспечения, версии 3 или, по Вашему желанию, любой более поздней версии.
+ *
+ * Эта программа распространяется в надежде, что она будет полезной, но БЕЗ
+ * ВСЯКИХ ГАРАНТИЙ, в том числе подразумеваемых гарантий ТОВАРНОГО
+ * СОСТОЯНИЯ ПРИ ПРОДАЖЕ и ГОДНОСТИ ДЛЯ ОПРЕДЕЛЁННОГО ПРИМЕНЕНИЯ. Смотрите
+ * Стандартную Общественную Лицензию GNU для получения дополнительной
+ * информации.
+ *
+ * Вы должны были получить копию Стандартной Общественной Лицензии GNU
+ * вместе с программой. В случае её отсутствия, смотрите
+ * http://www.gnu.org/licenses/.
+ */
+package com.github.kurbatov.atol4j.command;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import java.util.function.IntFunction;
+
+/**
+ * Исполнитель цепочки шагов, каждый из которых отправляет устройству команду и
+ * возвращает результат её выполнения.
+ * 
+ * Шаги выполняются по очереди: следующий шаг начинается после получения
+ * результата предыдущего. Выполнение останавливается на первом результате с
+ * ошибкой. В отличие от цепочки стадий {@code thenCompose}, исполнитель не
+ * создаёт стадий заранее, а результаты, полученные сразу, обрабатывает в
+ * цикле, поэтому расход памяти и глубина стека не зависят от количества шагов.
+ *
+ * @author Олег Курбатов &lt;o.v.kurbatov@gmail.com&gt;
+ */
+public final class CommandChain {
+    
+    private final int size;
+    
+    private final IntFunction<? extends CompletableFuture<? extends Result>> step;
+    
+    private final CompletableFuture<ChainResult> result = new CompletableFuture<>();
+    
+    private final BiConsumer<Result, Throwable> callback = this::resume;
+    
+    private int index;
+    
+    private Result last = new Result();
+
+    private CommandChain(int size, IntFunction<? extends CompletableFuture<? extends Result>> step) {
+        this.size = size;
+        this.step = step;
+    }
+    
+    /**
+     * Выполняет шаги цепочки по очереди.
+     *
+     * @param size количество шагов
+     * @param step шаг цепочки: получает индекс шага и возвращает результат
+     * выполнения команды
+     * @return результат выполнения цепочки: результат первой команды,
+     * завершившейся ошибкой, или результат последней команды
+     */
+    public static CompletableFuture<ChainResult> execute(int size, IntFunction<? extends CompletableFuture<? extends Result>> step) {
+        CommandChain chain = new CommandChain(size, step);
+        chain.run();
+        return chain.result;
+    }
+    
+    private void run() {
+        try {
+            while (index < size) {
+                CompletableFuture<? extends Result> next = step.apply(index);
+                if (!next.isDone() || next.isCompletedExceptionally()) {
+                    next.whenComplete(callback);
+                    return;
+                }
+                if (!accept(next.join())) {
+                    return;
+                }
+            }
+            result.complete(new ChainResult(last, -1));
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+    }
+    
+    private void resume(Result r, Throwable e) {
+        if (e != null) {
+            result.completeExceptionally(e);
+        } else if (accept(r)) {
+            run();
+        }
+    }
+    
+    private boolean accept(Result r) {
+        last = r;
+        if (r.hasError()) {
+            result.complete(new ChainResult(r, index));
+            return false;
+        }
+        index++;
+        return true;
+    }
+    
+}
@@ -152,6 +152,96 @@ public enum Errors {
      */
     PRODUCT_NOT_FOUND(0x3D),
     
+    /**
+     * Переполнение буфера чека
+     */
+    BILL_BUFFER_OVERFLOW(0x3F),
+    
+    /**
+     * Недостаточное количество товара
+     */
+    NOT_ENOUGH_PRODUCT(0x40),
+    
+    /**
+     * Сторнируемое количество больше проданного
+     */
+    STORNO_COUNT_ERR(0x41),
+    
+    /**
+     * Команда не реализуется в данном режиме ККТ
+     */
+    WRONG_MODE(0x66),
+    
+    /**
+     * Нет бумаги
+     */
+    NO_PAPER(0x67),
+    
+    /**
+     * Нет связи с принтером чеков
+     */
+    PRINTER_CONNECTION_ERR(0x68),
+    
+    /**
+     * Механическая ошибка печатающего устройства
+     */
+    PRINTER_MECHANICAL_ERR(0x69),
+    
+    /**
+     * Сумма не наличных платежей превышает сумму чека
+     */
+    NON_CASH_PAYMENT_EXCEEDED(0x71),
+    
+    /**
+     * Сумма платежей меньше суммы чека
+     */
+    PAYMENT_NOT_ENOUGH(0x72),
+    
+    /**
+     * Неверная величина скидки/надбавки
+     */
+    WRONG_DISCOUNT(0x7B),
+    
+    /**
+     * Неверная секция
+     */
+    WRONG_SECTION(0x7D),
+    
+    /**
+     * Неверный вид оплаты
+     */
+    WRONG_PAYMENT_TYPE(0x7E),
+    
+    /**
+     * Вносимая клиентом сумма меньше суммы чека
+     */
+    CLIENT_SUM_NOT_ENOUGH(0x86),
+    
+    /**
+     * Идёт обработка контрольной ленты
+     */
+    CONTROL_TAPE_PROCESSING(0x8E),
+    
+    /**
+     * Ошибка обмена с фискальным модулем
+     */
+    FISCAL_MODULE_EXCHANGE_ERR(0xBA),
+    
+    /**
+     * Нет связи с внешним устройством
+     */
+    EXTERNAL_DEVICE_CONNECTION_ERR(0xC9),
+    
+    /**
+     * Перегрев головки принтера
+     */
+    PRINTER_OVERHEAT(0xD1),
+    
+    /**
+     * Ошибка обмена с ФН на уровне интерфейса I2C
+     */
+    FN_INTERFACE_ERR(0xD2),
+    
     ;
     
     public final byte code;
@@ -0,0 +1,180 @@
+/*
+ * atol4j - клиентская библиотека для контрольной кассовой техники (ККТ) АТОЛ
+ * Copyright (C) 2019 Олег Викторович Курбатов
+ *
+ * Это программа является свободным программным обеспечением. Вы можете
+ * распространять и/или модифицировать её согласно условиям Стандартной
+ * Общественной Лицензии GNU, опубликованной Фондом Свободного Программного
+ * Обеспечения, версии 3 или, по Вашему желанию, любой более поздней версии.
+ *
+ * Эта программа распространяется в надежде, что она будет полезной, но БЕЗ
+ * ВСЯКИХ ГАРАНТИЙ, в том числе подразумеваемых гарантий ТОВАРНОГО
+ * СОСТОЯНИЯ ПРИ ПРОДАЖЕ и ГОДНОСТИ ДЛЯ ОПРЕДЕЛЁННОГО ПРИМЕНЕНИЯ. Смотрите
+ * Стандартную Общественную Лицензию GNU для получения дополнительной
+ * информации.
+ *
+ * Вы должны были получить копию Стандартной Общественной Лицензии GNU
+ * вместе с программой. В случае её отсутствия, смотрите
+ * http://www.gnu.org/licenses/.
+ */
+package com.github.kurbatov.atol4j.command;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Политика восстановления после ошибок выполнения команд.
+ * 
+ * Сопоставляет кодам ошибок {@link Errors} способы восстановления. Ошибки в
+ * данных товара или оплаты не меняют состояния устройства, временные ошибки
+ * связи с принтером и фискальным модулем приводят к повтору команды, а
+ * остальные ошибки, в том числе не перечисленные в {@link Errors}, - к
+ * приведению устройства в исходное состояние.
+ *
+ * @author Олег Курбатов &lt;o.v.kurbatov@gmail.com&gt;
+ */
+public class RecoveryPolicy {
+    
+    /**
+     * Количество повторов команды или цепочки команд по умолчанию.
+     */
+    public static final int DEFAULT_RETRY_LIMIT = 1;
+    
+    /**
+     * Пауза перед первым повтором по умолчанию, мс.
+     */
+    public static final long DEFAULT_RETRY_DELAY = 200;
+    
+    private final Map<Errors, RecoveryStrategy> strategies = new EnumMap<>(Errors.class);
+    
+    private RecoveryStrategy defaultStrategy = RecoveryStrategy.RESET;
+    
+    private int retryLimit = DEFAULT_RETRY_LIMIT;
+    
+    private long retryDelay = DEFAULT_RETRY_DELAY;
+
+    /**
+     * Создаёт политику восстановления со стратегиями по умолчанию.
+     */
+    public RecoveryPolicy() {
+        assign(RecoveryStrategy.KEEP_STATE, Errors.WRONG_PRICE, Errors.WRONG_COUNT, Errors.STORNO_LAST_OPERATION_ERR,
+                Errors.STORNO_BY_CODE_ERR, Errors.REPEAT_ERR, Errors.REPEAT_DISCOUNT_ERR,
+                Errors.PRICE_CHANGE_ERR, Errors.PRODUCT_CODE_ERR, Errors.BAR_CODE_ERR,
+                Errors.FORMAT_ERR, Errors.LENGTH_ERR, Errors.NO_MORE_DATA,
+                Errors.PRODUCT_NOT_FOUND, Errors.BILL_BUFFER_OVERFLOW, Errors.NOT_ENOUGH_PRODUCT,
+                Errors.STORNO_COUNT_ERR, Errors.NO_PAPER, Errors.PRINTER_MECHANICAL_ERR,
+                Errors.NON_CASH_PAYMENT_EXCEEDED, Errors.PAYMENT_NOT_ENOUGH, Errors.WRONG_DISCOUNT,
+                Errors.WRONG_SECTION, Errors.WRONG_PAYMENT_TYPE, Errors.CLIENT_SUM_NOT_ENOUGH,
+                Errors.PRINTER_OVERHEAT);
+        assign(RecoveryStrategy.RETRY, Errors.PRINTER_CONNECTION_ERR, Errors.CONTROL_TAPE_PROCESSING,
+                Errors.FISCAL_MODULE_EXCHANGE_ERR, Errors.EXTERNAL_DEVICE_CONNECTION_ERR, Errors.FN_INTERFACE_ERR);
+    }
+    
+    private void assign(RecoveryStrategy strategy, Errors... errors) {
+        for (Errors error : errors) {
+            strategies.put(error, strategy);
+        }
+    }
+
+    /**
+     * Получить способ восстановления после указанной ошибки.
+     *
+     * @param error ошибка
+     * @return способ восстановления
+     */
+    public RecoveryStrategy getStrategy(Errors error) {
+        return error == null ? defaultStrategy : strategies.getOrDefault(error, defaultStrategy);
+    }
+
+    /**
+     * Получить способ восстановления после ошибки с указанным кодом.
+     * 
+     * Если ошибку следует устранить повтором команды, но повторы исчерпаны,
+     * устройство приводится в исходное состояние.
+     *
+     * @param errorCode код ошибки
+     * @param retry true - команду ещё можно повторить
+     * @return способ восстановления
+     */
+    public RecoveryStrategy getStrategy(byte errorCode, boolean retry) {
+        RecoveryStrategy strategy = getStrategy(Errors.valueOf(errorCode));
+        return strategy == RecoveryStrategy.RETRY && !retry ? RecoveryStrategy.RESET : strategy;
+    }
+
+    /**
+     * Установить способ восстановления после указанной ошибки.
+     *
+     * @param error ошибка
+     * @param strategy способ восстановления
+     */
+    public void setStrategy(Errors error, RecoveryStrategy strategy) {
+        strategies.put(error, strategy);
+    }
+
+    /**
+     * Получить способ восстановления после ошибок, для которых он не задан.
+     *
+     * @return способ восстановления
+     */
+    public RecoveryStrategy getDefaultStrategy() {
+        return defaultStrategy;
+    }
+
+    /**
+     * Установить способ восстановления после ошибок, для которых он не задан.
+     *
+     * @param defaultStrategy способ восстановления
+     */
+    public void setDefaultStrategy(RecoveryStrategy defaultStrategy) {
+        this.defaultStrategy = defaultStrategy;
+    }
+
+    /**
+     * Получить максимальное количество повторов команды или цепочки команд.
+     *
+     * @return количество повторов
+     */
+    public int getRetryLimit() {
+        return retryLimit;
+    }
+
+    /**
+     * Установить максимальное количество повторов команды или цепочки
+     * команд.
+     *
+     * @param retryLimit количество повторов
+     */
+    public void setRetryLimit(int retryLimit) {
+        this.retryLimit = retryLimit;
+    }
+
+    /**
+     * Получить паузу перед первым повтором команды или цепочки команд.
+     *
+     * @return пауза, мс
+     */
+    public long getRetryDelay() {
+        return retryDelay;
+    }
+
+    /**
+     * Установить паузу перед первым повтором команды или цепочки команд.
+     * Пауза перед каждым следующим повтором удваивается.
+     *
+     * @param retryDelay пауза, мс
+     */
+    public void setRetryDelay(long retryDelay) {
+        this.retryDelay = retryDelay;
+    }
+    
+    /**
+     * Получить паузу перед указанным повтором.
+     *
+     * @param attempt номер повтора, начиная с 0
+     * @return пауза, мс
+     */
+    public long getBackoff(int attempt) {
+        return retryDelay << Math.min(attempt, 16);
+    }
+    
+}
@@ -0,0 +1,52 @@
+/*
+ * atol4j - клиентская библиотека для контрольной кассовой техники (ККТ) АТОЛ
+ * Copyright (C) 2019 Олег Викторович Курбатов
+ *
+ * Это программа является свободным программным обеспечением. Вы можете
+ * распространять и/или модифицировать её согласно условиям Стандартной
+ * Общественной Лицензии GNU, опубликованной Фондом Свободного Программного
+ * Обеспечения, версии 3 или, по Вашему желанию, любой более поздней версии.
+ *
+ * Эта программа распространяется в надежде, что она будет полезной, но БЕЗ
+ * ВСЯКИХ ГАРАНТИЙ, в том числе подразумеваемых гарантий ТОВАРНОГО
+ * СОСТОЯНИЯ ПРИ ПРОДАЖЕ и ГОДНОСТИ ДЛЯ ОПРЕДЕЛЁННОГО ПРИМЕНЕНИЯ. Смотрите
+ * Стандартную Общественную Лицензию GNU для получения дополнительной
+ * информации.
+ *
+ * Вы должны были получить копию Стандартной Общественной Лицензии GNU
+ * вместе с программой. В случае её отсутствия, смотрите
+ * http://www.gnu.org/licenses/.
+ */
+package com.github.kurbatov.atol4j.command;
+
+/**
+ * Способ восстановления после ошибки выполнения команды.
+ *
+ * @author Олег Курбатов &lt;o.v.kurbatov@gmail.com&gt;
+ * @see RecoveryPolicy
+ */
+public enum RecoveryStrategy {
+    
+    /**
+     * Временная ошибка устройства. Команда повторяется после паузы без
+     * изменения состояния устройства, цепочка продолжается с этой команды.
+     * Команды, которые нельзя повторить (см.
+     * {@link Command#isIdempotent()}), вместо повтора приводят к
+     * {@link #RESET}.
+     */
+    RETRY,
+    
+    /**
+     * Ошибка в данных команды (например, неверная цена или количество
+     * товара). Состояние устройства сохраняется: открытый чек остаётся
+     * открытым, и его можно продолжить исправленной командой.
+     */
+    KEEP_STATE,
+    
+    /**
+     * Ошибка, после которой состояние устройства неизвестно или непригодно
+     * для продолжения работы. Устройство приводится в исходное состояние.
+     */
+    RESET
+    
+}
@@ -186,17 +186,24 @@ public class Result {
      *
      * @param buffer байты числа в бинарно-десятичном формате
      * @return декодированное число
+     * @see BinaryDecimal#decode(byte...)
      */
     public static long decode(byte... buffer) {
-        long result = 0;
-        for (int i = 0; i < buffer.length; i++) {
-            byte b = buffer[i];
-            int a = b & 15;
-            int c = 10 * ((b & 0xF0) >>> 4);
-            int r = a + c;
-            result += r * Math.pow(100, buffer.length - i - 1);
-        }
-        return result;
+        return BinaryDecimal.decode(buffer);
+    }
+    
+    /**
+     * Декодирует число из бинарно-десятичной записи, которая находится в
+     * указанном участке массива.
+     *
+     * @param buffer массив, который содержит число
+     * @param offset индекс первого байта числа в массиве
+     * @param length длина бинарного представления в байтах
+     * @return декодированное число
+     * @see BinaryDecimal#decode(byte[], int, int)
+     */
+    public static long decode(byte[] buffer, int offset, int length) {
+        return BinaryDecimal.decode(buffer, offset, length);
     }
     
 }
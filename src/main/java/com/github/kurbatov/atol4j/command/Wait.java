@@ -20,6 +20,7 @@
 package com.github.kurbatov.atol4j.command;
 
 import com.github.kurbatov.atol4j.CashRegister;
+import com.github.kurbatov.atol4j.ShadowState;
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -52,4 +53,14 @@ public class Wait implements Command<Result> {
         });
     }
     
+    @Override
+    public void update(ShadowState state, Result result) {
+        // состояние устройства не меняется
+    }
+    
+    @Override
+    public boolean isIdempotent() {
+        return true;
+    }
+    
 }
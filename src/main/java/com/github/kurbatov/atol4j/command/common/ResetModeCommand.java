@@ -19,7 +19,9 @@
  */
 package com.github.kurbatov.atol4j.command.common;
 
+import com.github.kurbatov.atol4j.ShadowState;
 import com.github.kurbatov.atol4j.command.BasicCommand;
+import com.github.kurbatov.atol4j.command.Result;
 
 /**
  * Команда выхода из текущего режима.
@@ -39,5 +41,18 @@ public class ResetModeCommand extends BasicCommand {
     public ResetModeCommand() {
         super((byte) 0x48);
     }
+    
+    @Override
+    public void update(ShadowState state, Result result) {
+        state.modeReset();
+    }
+    
+    @Override
+    public Result predict(ShadowState state) {
+        if (state.getMode() == 0) {
+            return new Result(Result.RESPONSE_CODE, (byte) 0, (byte) 0);
+        }
+        return null;
+    }
 
 }
@@ -19,7 +19,9 @@
  */
 package com.github.kurbatov.atol4j.command.common;
 
+import com.github.kurbatov.atol4j.ShadowState;
 import com.github.kurbatov.atol4j.command.BasicCommand;
+import com.github.kurbatov.atol4j.command.Result;
 
 /**
  * Команда входа в режим.
@@ -59,6 +61,8 @@ public class SetModeCommand extends BasicCommand {
     public static final byte SECURE_FISCAL_MEMORY_ACCESS = 0x06;
 
     private static final byte COMMAND = 0x56;
+    
+    private final byte mode;
 
     /**
      * Создаёт команду входа в указанный режим.
@@ -68,6 +72,7 @@ public class SetModeCommand extends BasicCommand {
      */
     public SetModeCommand(byte mode, byte[] password) {
         super(wrap(mode, password));
+        this.mode = mode;
     }
 
     private static byte[] wrap(byte mode, byte[] password) {
@@ -81,5 +86,23 @@ public class SetModeCommand extends BasicCommand {
         }
         return new byte[]{COMMAND, mode, password[0], password[1], password[2], password[3]};
     }
+    
+    @Override
+    public void update(ShadowState state, Result result) {
+        state.modeEntered(mode);
+    }
+    
+    @Override
+    public boolean isIdempotent() {
+        return true;
+    }
+    
+    @Override
+    public Result predict(ShadowState state) {
+        if (state.getMode() == mode && state.getSubMode() == 0) {
+            return new Result(Result.RESPONSE_CODE, (byte) 0, (byte) 0);
+        }
+        return null;
+    }
 
 }
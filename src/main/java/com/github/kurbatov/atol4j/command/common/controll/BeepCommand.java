@@ -19,7 +19,9 @@
  */
 package com.github.kurbatov.atol4j.command.common.controll;
 
+import com.github.kurbatov.atol4j.ShadowState;
 import com.github.kurbatov.atol4j.command.BasicCommand;
+import com.github.kurbatov.atol4j.command.Result;
 
 /**
  * Подаёт звуковой сигнал заданной частоты и длительности.
@@ -51,4 +53,19 @@ public class BeepCommand extends BasicCommand {
         return new byte[]{COMMAND, (byte) (divider >>> 8), (byte) (0xFF & divider), (byte) duration};
     }
 
+    @Override
+    public void update(ShadowState state, Result result) {
+        // состояние устройства не меняется
+    }
+    
+    @Override
+    public boolean isIdempotent() {
+        return true;
+    }
+    
+    @Override
+    public boolean isBatchable() {
+        return true;
+    }
+
 }
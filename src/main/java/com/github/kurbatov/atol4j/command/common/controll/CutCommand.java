@@ -19,7 +19,9 @@
  */
 package com.github.kurbatov.atol4j.command.common.controll;
 
+import com.github.kurbatov.atol4j.ShadowState;
 import com.github.kurbatov.atol4j.command.BasicCommand;
+import com.github.kurbatov.atol4j.command.Result;
 
 /**
  * Отрезает чек.
@@ -39,4 +41,19 @@ public class CutCommand extends BasicCommand {
         super(COMMAND, (byte) (full ? 0 : 1));
     }
 
+    @Override
+    public void update(ShadowState state, Result result) {
+        // состояние устройства не меняется
+    }
+    
+    @Override
+    public boolean isIdempotent() {
+        return true;
+    }
+    
+    @Override
+    public boolean isBatchable() {
+        return true;
+    }
+
 }
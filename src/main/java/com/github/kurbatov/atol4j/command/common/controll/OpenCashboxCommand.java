@@ -19,7 +19,9 @@
  */
 package com.github.kurbatov.atol4j.command.common.controll;
 
+import com.github.kurbatov.atol4j.ShadowState;
 import com.github.kurbatov.atol4j.command.BasicCommand;
+import com.github.kurbatov.atol4j.command.Result;
 
 /**
  * Открытие денежного ящика.
@@ -45,4 +47,14 @@ public class OpenCashboxCommand extends BasicCommand {
         super(COMMAND);
     }
 
+    @Override
+    public void update(ShadowState state, Result result) {
+        // состояние устройства не меняется
+    }
+    
+    @Override
+    public boolean isIdempotent() {
+        return true;
+    }
+
 }
@@ -19,8 +19,10 @@
  */
 package com.github.kurbatov.atol4j.command.common.controll;
 
+import com.github.kurbatov.atol4j.ShadowState;
 import com.github.kurbatov.atol4j.command.BasicCommand;
 import com.github.kurbatov.atol4j.command.Command;
+import com.github.kurbatov.atol4j.command.Result;
 
 /**
  * Импульсное открытие денежного ящика.
@@ -50,16 +52,22 @@ public class OpenCashboxImpulseCommand extends BasicCommand {
         if (repeat < 0 || repeat > 99) {
             throw new IllegalArgumentException("Количество повторов должно быть неотрицательным, но не более 99.");
         }
-        byte[] pulseBinary = Command.encode(pulse, 2);
-        byte[] delayBinary = Command.encode(delay, 2);
         byte[] result = new byte[6];
         result[0] = COMMAND;
-        result[1] = pulseBinary[0];
-        result[2] = pulseBinary[1];
-        result[3] = delayBinary[0];
-        result[4] = delayBinary[1];
+        Command.encode(pulse, result, 1, 2);
+        Command.encode(delay, result, 3, 2);
         result[5] = (byte) repeat;
         return result;
     }
 
+    @Override
+    public void update(ShadowState state, Result result) {
+        // состояние устройства не меняется
+    }
+    
+    @Override
+    public boolean isIdempotent() {
+        return true;
+    }
+
 }
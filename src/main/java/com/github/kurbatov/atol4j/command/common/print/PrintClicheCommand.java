@@ -19,7 +19,9 @@
  */
 package com.github.kurbatov.atol4j.command.common.print;
 
+import com.github.kurbatov.atol4j.ShadowState;
 import com.github.kurbatov.atol4j.command.BasicCommand;
+import com.github.kurbatov.atol4j.command.Result;
 
 /**
  * Печать клише на чековой ленте.
@@ -42,4 +44,19 @@ public class PrintClicheCommand extends BasicCommand {
         super(COMMAND);
     }
 
+    @Override
+    public void update(ShadowState state, Result result) {
+        // состояние устройства не меняется
+    }
+    
+    @Override
+    public boolean isIdempotent() {
+        return true;
+    }
+    
+    @Override
+    public boolean isBatchable() {
+        return true;
+    }
+
 }
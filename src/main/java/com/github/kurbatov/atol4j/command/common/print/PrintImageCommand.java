@@ -20,7 +20,10 @@
 package com.github.kurbatov.atol4j.command.common.print;
 
 import com.github.kurbatov.atol4j.CashRegister;
+import com.github.kurbatov.atol4j.ShadowState;
+import com.github.kurbatov.atol4j.command.ChainResult;
 import com.github.kurbatov.atol4j.command.Command;
+import com.github.kurbatov.atol4j.command.CommandChain;
 import java.awt.image.BufferedImage;
 import com.github.kurbatov.atol4j.command.Result;
 import java.util.Arrays;
@@ -30,6 +33,10 @@ import java.util.concurrent.CompletableFuture;
 
 /**
  * Печатает картинку на кассовой ленте.
+ * 
+ * Каждая строка изображения печатается отдельной командой. Результатом
+ * является {@link ChainResult}, содержащий номер строки, печать которой
+ * завершилась ошибкой.
  *
  * @author Олег Курбатов &lt;o.v.kurbatov@gmail.com&gt;
  */
@@ -93,32 +100,52 @@ public class PrintImageCommand implements Command<Result> {
         };
         byte model = device.getDeviceType().getModel();
         byte[] raster = new byte[RASTER_LENGTH.get(model)];
-        int maxWidth = raster.length * 8;
-        int width = image.getWidth();
-        int height = image.getHeight();
-        int padding = (maxWidth - width) / 2;
-        CompletableFuture<Result> result = CompletableFuture.completedFuture(new Result());
-        for (int i = 0; i < height; i++) {
-            int[] data = image.getRGB(0, i, width, 1, null, 0, width);
-            if (padding < 0) {
-                data = Arrays.copyOfRange(data, -padding, -padding + maxWidth);
-            } else if (padding > 0) {
-                int[] tmp = new int[data.length + padding];
-                System.arraycopy(data, 0, tmp, padding, data.length);
-                data = tmp;
-                Arrays.fill(data, 0, padding, 0xFFFFFF);
-            }
-            raster = convertRow(data, raster);
+        // строки растра формируются по мере печати, а не все сразу
+        return CommandChain.execute(image.getHeight(), i -> {
+            rasterRow(image, i, raster);
             byte[] command = new byte[header.length + raster.length];
             System.arraycopy(header, 0, command, 0, header.length);
             System.arraycopy(raster, 0, command, header.length, raster.length);
-            result = result.thenCompose(r ->
-                    r.hasError() ?
-                            CompletableFuture.completedFuture(r) :
-                            device.execute(command).thenApply(b -> new Result(b))
-            );
+            return device.execute(command).thenApply(b -> new Result(b));
+        }).thenApply(r -> r);
+    }
+    
+    @Override
+    public void update(ShadowState state, Result result) {
+        // состояние устройства не меняется
+    }
+    
+    @Override
+    public boolean isIdempotent() {
+        return true;
+    }
+    
+    /**
+     * Преобразует строку изображения в растр для печати.
+     * 
+     * Изображение выравнивается по центру ширины растра: узкое дополняется
+     * белыми точками, широкое обрезается по краям.
+     *
+     * @param image изображение
+     * @param row номер строки изображения
+     * @param raster массив для записи растра, длинна которого определяет
+     * ширину печати (8 точек на байт)
+     * @return растр строки
+     */
+    static byte[] rasterRow(BufferedImage image, int row, byte[] raster) {
+        int maxWidth = raster.length * 8;
+        int width = image.getWidth();
+        int padding = (maxWidth - width) / 2;
+        int[] data = image.getRGB(0, row, width, 1, null, 0, width);
+        if (padding < 0) {
+            data = Arrays.copyOfRange(data, -padding, -padding + maxWidth);
+        } else if (padding > 0) {
+            int[] tmp = new int[data.length + padding];
+            System.arraycopy(data, 0, tmp, padding, data.length);
+            data = tmp;
+            Arrays.fill(data, 0, padding, 0xFFFFFF);
         }
-        return result;
+        return convertRow(data, raster);
     }
     
     private static byte[] convertRow(int[] src, byte[] dst) {
@@ -19,8 +19,10 @@
  */
 package com.github.kurbatov.atol4j.command.common.print;
 
+import com.github.kurbatov.atol4j.ShadowState;
 import com.github.kurbatov.atol4j.charset.ExternalCharset;
 import com.github.kurbatov.atol4j.command.BasicCommand;
+import com.github.kurbatov.atol4j.command.Result;
 
 /**
  * Печатает строку символов на кассовой ленте.
@@ -65,4 +67,19 @@ public class PrintStringCommand extends BasicCommand {
         return message;
     }
     
+    @Override
+    public void update(ShadowState state, Result result) {
+        // состояние устройства не меняется
+    }
+    
+    @Override
+    public boolean isIdempotent() {
+        return true;
+    }
+    
+    @Override
+    public boolean isBatchable() {
+        return true;
+    }
+    
 }
@@ -20,9 +20,9 @@
 package com.github.kurbatov.atol4j.command.common.request;
 
 import com.github.kurbatov.atol4j.CashRegister;
+import com.github.kurbatov.atol4j.ShadowState;
 import com.github.kurbatov.atol4j.command.Command;
 import com.github.kurbatov.atol4j.command.Result;
-import java.util.Arrays;
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -44,6 +44,16 @@ public class CashRequest implements Command<CashRequest.Response>{
         return device.execute(new byte[] {COMMAND}).thenApply(r -> new Response(r));
     }
     
+    @Override
+    public void update(ShadowState state, Response result) {
+        // состояние устройства не меняется
+    }
+    
+    @Override
+    public boolean isIdempotent() {
+        return true;
+    }
+    
     /**
      * Ответ на запрос наличных в кассе.
      */
@@ -56,7 +66,7 @@ public class CashRequest implements Command<CashRequest.Response>{
             if (hasError()) {
                 sum = -1;
             } else {
-                sum = decode(Arrays.copyOfRange(buf, 1, buf.length));
+                sum = decode(buf, 1, buf.length - 1);
             }
         }
 
@@ -20,8 +20,11 @@
 package com.github.kurbatov.atol4j.command.common.request;
 
 import com.github.kurbatov.atol4j.CashRegister;
+import com.github.kurbatov.atol4j.ShadowState;
 import com.github.kurbatov.atol4j.command.Command;
 import com.github.kurbatov.atol4j.command.Result;
+import com.github.kurbatov.atol4j.transport.protocol.ExecutionMode;
+import com.github.kurbatov.atol4j.transport.protocol.Priority;
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -37,7 +40,17 @@ public class DeviceStateCodeRequest implements Command<DeviceStateCodeRequest.Re
     
     @Override
     public CompletableFuture<Response> executeOn(CashRegister device) {
-        return device.execute(COMMAND).thenApply(r -> new Response(r));
+        return device.execute(Priority.NORMAL, ExecutionMode.ASYNC, COMMAND).thenApply(r -> new Response(r));
+    }
+    
+    @Override
+    public void update(ShadowState state, Response result) {
+        // состояние устройства не меняется
+    }
+    
+    @Override
+    public boolean isIdempotent() {
+        return true;
     }
     
     /**
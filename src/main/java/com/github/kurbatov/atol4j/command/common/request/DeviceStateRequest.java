@@ -20,8 +20,11 @@
 package com.github.kurbatov.atol4j.command.common.request;
 
 import com.github.kurbatov.atol4j.CashRegister;
+import com.github.kurbatov.atol4j.ShadowState;
 import com.github.kurbatov.atol4j.command.Command;
 import com.github.kurbatov.atol4j.command.Result;
+import com.github.kurbatov.atol4j.transport.protocol.ExecutionMode;
+import com.github.kurbatov.atol4j.transport.protocol.Priority;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.util.concurrent.CompletableFuture;
@@ -42,7 +45,17 @@ public class DeviceStateRequest implements Command<DeviceStateRequest.Response>{
     
     @Override
     public CompletableFuture<Response> executeOn(CashRegister device) {
-        return device.execute(COMMAND).thenApply(r -> new Response(r));
+        return device.execute(Priority.NORMAL, ExecutionMode.ASYNC, COMMAND).thenApply(r -> new Response(r));
+    }
+    
+    @Override
+    public void update(ShadowState state, Response result) {
+        state.reconcile(result);
+    }
+    
+    @Override
+    public boolean isIdempotent() {
+        return true;
     }
     
     /**
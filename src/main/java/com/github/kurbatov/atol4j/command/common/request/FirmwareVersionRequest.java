@@ -20,9 +20,9 @@
 package com.github.kurbatov.atol4j.command.common.request;
 
 import com.github.kurbatov.atol4j.CashRegister;
+import com.github.kurbatov.atol4j.ShadowState;
 import com.github.kurbatov.atol4j.command.Command;
 import com.github.kurbatov.atol4j.command.Result;
-import java.util.Arrays;
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -49,6 +49,16 @@ public class FirmwareVersionRequest implements Command<FirmwareVersionRequest.Re
         return device.execute(COMMAND, source).thenApply(r -> new Response(r));
     }
     
+    @Override
+    public void update(ShadowState state, Response result) {
+        // состояние устройства не меняется
+    }
+    
+    @Override
+    public boolean isIdempotent() {
+        return true;
+    }
+    
     /**
      * Версия прошивки.
      */
@@ -67,10 +77,10 @@ public class FirmwareVersionRequest implements Command<FirmwareVersionRequest.Re
                 language = 0;
                 build = 0;
             } else {
-                major = decode(Arrays.copyOfRange(buf, 3, 4));
-                minor = decode(Arrays.copyOfRange(buf, 4, 5));
-                language = decode(Arrays.copyOfRange(buf, 5, 6));
-                build = decode(Arrays.copyOfRange(buf, 6, 8));
+                major = decode(buf, 3, 1);
+                minor = decode(buf, 4, 1);
+                language = decode(buf, 5, 1);
+                build = decode(buf, 6, 2);
             }
         }
 
@@ -19,7 +19,9 @@
  */
 package com.github.kurbatov.atol4j.command.common.request;
 
+import com.github.kurbatov.atol4j.ShadowState;
 import com.github.kurbatov.atol4j.command.BasicCommand;
+import com.github.kurbatov.atol4j.command.Result;
 
 /**
  * Запрос последней ошибки.
@@ -39,4 +41,14 @@ public class LastErrorRequest extends BasicCommand {
         super(COMMAND);
     }
     
+    @Override
+    public void update(ShadowState state, Result result) {
+        // состояние устройства не меняется
+    }
+    
+    @Override
+    public boolean isIdempotent() {
+        return true;
+    }
+    
 }
@@ -20,9 +20,9 @@
 package com.github.kurbatov.atol4j.command.common.request;
 
 import com.github.kurbatov.atol4j.CashRegister;
+import com.github.kurbatov.atol4j.ShadowState;
 import com.github.kurbatov.atol4j.command.Command;
 import com.github.kurbatov.atol4j.command.Result;
-import java.util.Arrays;
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -44,6 +44,16 @@ public class LastShiftResultRequest implements Command<LastShiftResultRequest.Re
         return device.execute(COMMAND).thenApply(r -> new Response(r));
     }
     
+    @Override
+    public void update(ShadowState state, Response result) {
+        // состояние устройства не меняется
+    }
+    
+    @Override
+    public boolean isIdempotent() {
+        return true;
+    }
+    
     /**
      * Последний сменный итог.
      */
@@ -54,8 +64,8 @@ public class LastShiftResultRequest implements Command<LastShiftResultRequest.Re
         
         public Response(byte[] buf) {
             super(buf[0], buf[1], (byte) 0);
-            income = decode(Arrays.copyOfRange(buf, 2, 9));
-            outcome = decode(Arrays.copyOfRange(buf, 9, 16));
+            income = decode(buf, 2, 7);
+            outcome = decode(buf, 9, 7);
         }
 
         /**
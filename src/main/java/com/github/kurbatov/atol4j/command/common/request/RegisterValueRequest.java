@@ -20,6 +20,7 @@
 package com.github.kurbatov.atol4j.command.common.request;
 
 import com.github.kurbatov.atol4j.CashRegister;
+import com.github.kurbatov.atol4j.ShadowState;
 import com.github.kurbatov.atol4j.command.Command;
 import com.github.kurbatov.atol4j.command.Result;
 import java.util.Arrays;
@@ -54,6 +55,16 @@ public class RegisterValueRequest implements Command<RegisterValueRequest.Respon
         return device.execute(COMMAND, register, params[0], params[1]).thenApply(r -> new Response(r));
     }
     
+    @Override
+    public void update(ShadowState state, Response result) {
+        // состояние устройства не меняется
+    }
+    
+    @Override
+    public boolean isIdempotent() {
+        return true;
+    }
+    
     /**
      * Значение регистра.
      */
@@ -20,6 +20,7 @@
 package com.github.kurbatov.atol4j.command.common.request;
 
 import com.github.kurbatov.atol4j.CashRegister;
+import com.github.kurbatov.atol4j.ShadowState;
 import com.github.kurbatov.atol4j.command.Command;
 import com.github.kurbatov.atol4j.command.Result;
 import java.util.concurrent.CompletableFuture;
@@ -49,6 +50,16 @@ public class SecurityCodeStateRequest implements Command<SecurityCodeStateReques
         return device.execute(COMMAND, codeNumber).thenApply(r -> new Response(r));
     }
     
+    @Override
+    public void update(ShadowState state, Response result) {
+        // состояние устройства не меняется
+    }
+    
+    @Override
+    public boolean isIdempotent() {
+        return true;
+    }
+    
     /**
      * Статус активации кода защиты.
      */
@@ -20,6 +20,7 @@
 package com.github.kurbatov.atol4j.command.common.request.fiscal;
 
 import com.github.kurbatov.atol4j.CashRegister;
+import com.github.kurbatov.atol4j.ShadowState;
 import com.github.kurbatov.atol4j.charset.ExternalCharset;
 import com.github.kurbatov.atol4j.command.Command;
 import com.github.kurbatov.atol4j.command.Result;
@@ -44,6 +45,16 @@ public class FiscalMemoryNumberRequest implements Command<FiscalMemoryNumberRequ
     public CompletableFuture<Response> executeOn(CashRegister device) {
         return device.execute(COMMAND).thenApply(r -> new Response(r));
     }
+    
+    @Override
+    public void update(ShadowState state, Response result) {
+        // состояние устройства не меняется
+    }
+    
+    @Override
+    public boolean isIdempotent() {
+        return true;
+    }
 
     public static class Response extends Result {
 
@@ -20,6 +20,7 @@
 package com.github.kurbatov.atol4j.command.common.request.fiscal;
 
 import com.github.kurbatov.atol4j.CashRegister;
+import com.github.kurbatov.atol4j.ShadowState;
 import com.github.kurbatov.atol4j.command.Command;
 import com.github.kurbatov.atol4j.command.Result;
 import java.util.concurrent.CompletableFuture;
@@ -42,6 +43,16 @@ public class ShiftStateRequest implements Command<ShiftStateRequest.Response> {
     public CompletableFuture<Response> executeOn(CashRegister device) {
         return device.execute(COMMAND).thenApply(r -> new Response(r));
     }
+    
+    @Override
+    public void update(ShadowState state, Response result) {
+        // состояние устройства не меняется
+    }
+    
+    @Override
+    public boolean isIdempotent() {
+        return true;
+    }
 
     public static class Response extends Result {
 
@@ -19,7 +19,9 @@
  */
 package com.github.kurbatov.atol4j.command.registration;
 
+import com.github.kurbatov.atol4j.ShadowState;
 import com.github.kurbatov.atol4j.command.BasicCommand;
+import com.github.kurbatov.atol4j.command.Result;
 
 /**
  * Команда аннулирования открытого чека.
@@ -38,5 +40,10 @@ public class CancelBillCommand extends BasicCommand {
     public CancelBillCommand() {
         super(COMMAND);
     }
+    
+    @Override
+    public void update(ShadowState state, Result result) {
+        state.billCancelled();
+    }
 
 }
@@ -42,8 +42,9 @@ public class CashIncomeCommand extends BasicCommand {
     }
     
     private static byte[] wrap(long sum, boolean test) {
-        byte[] s = Command.encode(sum, 5);
-        return new byte[]{COMMAND, (byte) (test ? 1 : 0), s[0], s[1], s[2], s[3], s[4]};
+        byte[] message = new byte[]{COMMAND, (byte) (test ? 1 : 0), 0, 0, 0, 0, 0};
+        Command.encode(sum, message, 2, 5);
+        return message;
     }
     
 }
@@ -19,8 +19,10 @@
  */
 package com.github.kurbatov.atol4j.command.registration;
 
+import com.github.kurbatov.atol4j.ShadowState;
 import com.github.kurbatov.atol4j.command.BasicCommand;
 import com.github.kurbatov.atol4j.command.Command;
+import com.github.kurbatov.atol4j.command.Result;
 
 /**
  * Закрыть чек (со сдачей).
@@ -55,6 +57,8 @@ public class CloseBillCommand extends BasicCommand {
     public static final byte OTHER = 0x05;
 
     private static final byte COMMAND = 0x4A;
+    
+    private final boolean test;
 
     /**
      * Создаёт команду рассчёта по чеку.
@@ -65,11 +69,21 @@ public class CloseBillCommand extends BasicCommand {
      */
     public CloseBillCommand(long sum, byte paymentType, boolean test) {
         super(wrap(sum, paymentType, test));
+        this.test = test;
     }
 
     private static byte[] wrap(long sum, byte paymentType, boolean test) {
-        byte[] s = Command.encode(sum, 5);
-        return new byte[]{COMMAND, (byte) (test ? 1 : 0), paymentType, s[0], s[1], s[2], s[3], s[4]};
+        byte[] message = new byte[]{COMMAND, (byte) (test ? 1 : 0), paymentType, 0, 0, 0, 0, 0};
+        Command.encode(sum, message, 3, 5);
+        return message;
     }
     
+    @Override
+    public void update(ShadowState state, Result result) {
+        if (test) {
+            return; // в тестовом режиме чек не закрывается
+        }
+        state.billClosed();
+    }
+
 }
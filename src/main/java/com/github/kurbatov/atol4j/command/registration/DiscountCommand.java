@@ -19,8 +19,10 @@
  */
 package com.github.kurbatov.atol4j.command.registration;
 
+import com.github.kurbatov.atol4j.ShadowState;
 import com.github.kurbatov.atol4j.command.BasicCommand;
 import com.github.kurbatov.atol4j.command.Command;
+import com.github.kurbatov.atol4j.command.Result;
 
 /**
  * Применяет скидку к чеку.
@@ -51,8 +53,14 @@ public class DiscountCommand extends BasicCommand {
     }
 
     private static byte[] wrap(long sum, boolean test) {
-        byte[] s = Command.encode(sum, 5);
-        return new byte[]{COMMAND, (byte) (test ? 1 : 0), 0, 1, 0, s[0], s[1], s[2], s[3], s[4]};
+        byte[] message = new byte[]{COMMAND, (byte) (test ? 1 : 0), 0, 1, 0, 0, 0, 0, 0, 0};
+        Command.encode(sum, message, 5, 5);
+        return message;
+    }
+    
+    @Override
+    public void update(ShadowState state, Result result) {
+        // состояние устройства не меняется
     }
     
 }
@@ -19,9 +19,11 @@
  */
 package com.github.kurbatov.atol4j.command.registration;
 
+import com.github.kurbatov.atol4j.ShadowState;
 import com.github.kurbatov.atol4j.charset.ExternalCharset;
 import com.github.kurbatov.atol4j.command.BasicCommand;
 import com.github.kurbatov.atol4j.command.Command;
+import com.github.kurbatov.atol4j.command.Result;
 import java.util.Arrays;
 
 /**
@@ -68,22 +70,26 @@ public class ItemRegistrationCommand extends BasicCommand {
             System.arraycopy(nameBytes, 0, tmp, 0, nameBytes.length);
             nameBytes = tmp;
         }
-        byte[] p = Command.encode(price, 6);
-        byte[] c = Command.encode(count, 5);
-        byte[] da = Command.encode(discountAmount, 6);
         byte[] message = new byte[104];
         message[0] = COMMAND;
         message[1] = (byte) ((test ? 1 : 0) | 2);
         System.arraycopy(nameBytes, 0, message, 2, 64);
-        System.arraycopy(p, 0, message, 66, p.length);
-        System.arraycopy(c, 0, message, 72, c.length);
+        Command.encode(price, message, 66, 6);
+        Command.encode(count, message, 72, 5);
         message[77] = 1;
         message[78] = (byte) (discount ? 0 : 1);
-        System.arraycopy(da, 0, message, 79, da.length);
+        Command.encode(discountAmount, message, 79, 6);
         message[85] = tax;
         message[86] = section;
         Arrays.fill(message, 86, message.length, (byte) 0);
         return message;
     }
     
+    @Override
+    public void update(ShadowState state, Result result) {
+        if (state.getBillState() == 0) {
+            state.invalidate(); // вне чека регистрация открывает чек
+        }
+    }
+    
 }
@@ -19,7 +19,9 @@
  */
 package com.github.kurbatov.atol4j.command.registration;
 
+import com.github.kurbatov.atol4j.ShadowState;
 import com.github.kurbatov.atol4j.command.BasicCommand;
+import com.github.kurbatov.atol4j.command.Result;
 
 /**
  * Команда открытия чека.
@@ -64,6 +66,10 @@ public class OpenBillCommand extends BasicCommand {
     public static final byte CORRECTION_INCOME_REFUND = 10;
     
     private static final byte COMMAND = (byte) 0x92;
+    
+    private final byte type;
+    
+    private final boolean test;
 
     /**
      * Создаёт команду открытия чека.
@@ -74,6 +80,16 @@ public class OpenBillCommand extends BasicCommand {
      */
     public OpenBillCommand(byte type, boolean print, boolean test) {
         super(new byte[]{COMMAND, (byte) ((test ? 1 : 0) | (print ? 0 : 2)), type});
+        this.type = type;
+        this.test = test;
     }
     
+    @Override
+    public void update(ShadowState state, Result result) {
+        if (test) {
+            return; // в тестовом режиме чек не открывается
+        }
+        state.billOpened(type);
+    }
+
 }
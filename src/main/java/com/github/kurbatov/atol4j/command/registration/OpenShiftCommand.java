@@ -19,7 +19,9 @@
  */
 package com.github.kurbatov.atol4j.command.registration;
 
+import com.github.kurbatov.atol4j.ShadowState;
 import com.github.kurbatov.atol4j.command.BasicCommand;
+import com.github.kurbatov.atol4j.command.Result;
 
 /**
  * Открытие смены.
@@ -29,6 +31,8 @@ import com.github.kurbatov.atol4j.command.BasicCommand;
 public class OpenShiftCommand extends BasicCommand {
 
     private static final byte COMMAND = (byte) 0x9A;
+    
+    private final boolean test;
 
     /**
      * Создаёт команду открытия смены.
@@ -37,6 +41,15 @@ public class OpenShiftCommand extends BasicCommand {
      */
     public OpenShiftCommand(boolean test) {
         super(new byte[]{COMMAND, (byte) (test ? 1 : 0)});
+        this.test = test;
+    }
+    
+    @Override
+    public void update(ShadowState state, Result result) {
+        if (test) {
+            return; // в тестовом режиме смена не открывается
+        }
+        state.shiftOpened();
     }
 
 }
@@ -79,4 +79,9 @@ public class RemittanceCommand implements Command<RemittanceResult> {
         return device.execute(message).thenApply(r -> new RemittanceResult(r));
     }
 
+    @Override
+    public boolean isPipelined() {
+        return true;
+    }
+
 }
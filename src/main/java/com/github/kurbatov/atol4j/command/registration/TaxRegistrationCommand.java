@@ -19,8 +19,10 @@
  */
 package com.github.kurbatov.atol4j.command.registration;
 
+import com.github.kurbatov.atol4j.ShadowState;
 import com.github.kurbatov.atol4j.command.BasicCommand;
 import com.github.kurbatov.atol4j.command.Command;
+import com.github.kurbatov.atol4j.command.Result;
 
 /**
  * Регистрация налога на весь чек.
@@ -43,8 +45,14 @@ public class TaxRegistrationCommand extends BasicCommand {
     }
 
     private static byte[] wrap(long sum, byte type, boolean test) {
-        byte[] s = Command.encode(sum, 7);
-        return new byte[]{COMMAND, (byte) (test ? 1 : 0), 0, type, s[0], s[1], s[2], s[3], s[4], s[5], s[6]};
+        byte[] message = new byte[]{COMMAND, (byte) (test ? 1 : 0), 0, type, 0, 0, 0, 0, 0, 0, 0};
+        Command.encode(sum, message, 4, 7);
+        return message;
+    }
+    
+    @Override
+    public void update(ShadowState state, Result result) {
+        // состояние устройства не меняется
     }
     
 }
@@ -19,7 +19,9 @@
  */
 package com.github.kurbatov.atol4j.command.report.hard;
 
+import com.github.kurbatov.atol4j.ShadowState;
 import com.github.kurbatov.atol4j.command.BasicCommand;
+import com.github.kurbatov.atol4j.command.Result;
 
 /**
  * Снятие суточного отчета с гашением (закрытие смены).
@@ -38,5 +40,10 @@ public class CloseShiftWithReportCommand extends BasicCommand {
     public CloseShiftWithReportCommand() {
         super(COMMAND);
     }
+    
+    @Override
+    public void update(ShadowState state, Result result) {
+        state.shiftClosed();
+    }
 
 }
@@ -0,0 +1,110 @@
+/*
+ * atol4j - клиентская библиотека для контрольной кассовой техники (ККТ) АТОЛ
+ * Copyright (C) 2019 Олег Викторович Курбатов
+ *
+ * Это программа является свободным программным обеспечением. Вы можете
+ * распространять и/или модифицировать её согласно условиям Стандартной
+ * Общественной Лицензии GNU, опубликованной Фондом Свободного Программного
+ * Обеспечения, версии 3 или, по Вашему желанию, любой более поздней версии.
+ *
+ * Эта программа распространяется в надежде, что она будет полезной, но БЕЗ
+ * ВСЯКИХ ГАРАНТИЙ, в том числе подразумеваемых гарантий ТОВАРНОГО
+ * СОСТОЯНИЯ ПРИ ПРОДАЖЕ и ГОДНОСТИ ДЛЯ ОПРЕДЕЛЁННОГО ПРИМЕНЕНИЯ. Смотрите
+ * Стандартную Общественную Лицензию GNU для получения дополнительной
+ * информации.
+ *
+ * Вы должны были получить копию Стандартной Общественной Лицензии GNU
+ * вместе с программой. В случае её отсутствия, смотрите
+ * http://www.gnu.org/licenses/.
+ */
+package com.github.kurbatov.atol4j.transport;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Буфер чтения в прямой памяти, размер которого подстраивается под объём
+ * данных, получаемых за одну операцию чтения.
+ * 
+ * Если операция чтения заполнила буфер целиком, следующая операция читает в
+ * буфер вдвое большего размера: длинный ответ (например, дамп регистров или
+ * отчёт) приходит одним блоком, а не множеством мелких. Если две операции
+ * подряд заполнили не больше четверти буфера, размер буфера уменьшается
+ * вдвое. Размер буфера остаётся в заданных пределах.
+ * 
+ * Буфер не потокобезопасен и рассчитан на одну цепочку операций чтения.
+ *
+ * @author Олег Курбатов &lt;o.v.kurbatov@gmail.com&gt;
+ */
+final class AdaptiveReadBuffer {
+    
+    private final int minSize;
+    
+    private final int maxSize;
+    
+    private ByteBuffer buffer;
+    
+    private boolean shrink;
+
+    /**
+     * Создаёт буфер чтения.
+     *
+     * @param minSize минимальный размер буфера
+     * @param initialSize начальный размер буфера
+     * @param maxSize максимальный размер буфера
+     * @throws IllegalArgumentException если размеры не упорядочены или
+     * минимальный размер меньше единицы
+     */
+    AdaptiveReadBuffer(int minSize, int initialSize, int maxSize) {
+        if (minSize < 1 || minSize > initialSize || initialSize > maxSize) {
+            throw new IllegalArgumentException(String.format("Недопустимые размеры буфера чтения: %d, %d, %d", minSize, initialSize, maxSize));
+        }
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.buffer = ByteBuffer.allocateDirect(initialSize);
+    }
+    
+    /**
+     * Получить очищенный буфер для следующей операции чтения.
+     *
+     * @return буфер
+     */
+    ByteBuffer get() {
+        buffer.clear();
+        return buffer;
+    }
+    
+    /**
+     * Учесть количество байт, прочитанных последней операцией, и выбрать
+     * размер буфера для следующей операции.
+     *
+     * @param read количество прочитанных байт
+     */
+    void record(int read) {
+        int capacity = buffer.capacity();
+        if (read >= capacity) {
+            shrink = false;
+            if (capacity < maxSize) {
+                buffer = ByteBuffer.allocateDirect(Math.min(capacity << 1, maxSize));
+            }
+        } else if (read <= capacity >> 2 && capacity > minSize) {
+            if (shrink) {
+                shrink = false;
+                buffer = ByteBuffer.allocateDirect(Math.max(capacity >> 1, minSize));
+            } else {
+                shrink = true;
+            }
+        } else {
+            shrink = false;
+        }
+    }
+    
+    /**
+     * Узнать текущий размер буфера.
+     *
+     * @return размер буфера в байтах
+     */
+    int capacity() {
+        return buffer.capacity();
+    }
+    
+}
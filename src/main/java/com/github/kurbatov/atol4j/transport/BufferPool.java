@@ -0,0 +1,117 @@
+/*
+ * atol4j - клиентская библиотека для контрольной кассовой техники (ККТ) АТОЛ
+ * Copyright (C) 2019 Олег Викторович Курбатов
+ *
+ * Это программа является свободным программным обеспечением. Вы можете
+ * распространять и/или модифицировать её согласно условиям Стандартной
+ * Общественной Лицензии GNU, опубликованной Фондом Свободного Программного
+ * Обеспечения, версии 3 или, по Вашему желанию, любой более поздней версии.
+ *
+ * Эта программа распространяется в надежде, что она будет полезной, но БЕЗ
+ * ВСЯКИХ ГАРАНТИЙ, в том числе подразумеваемых гарантий ТОВАРНОГО
+ * СОСТОЯНИЯ ПРИ ПРОДАЖЕ и ГОДНОСТИ ДЛЯ ОПРЕДЕЛЁННОГО ПРИМЕНЕНИЯ. Смотрите
+ * Стандартную Общественную Лицензию GNU для получения дополнительной
+ * информации.
+ *
+ * Вы должны были получить копию Стандартной Общественной Лицензии GNU
+ * вместе с программой. В случае её отсутствия, смотрите
+ * http://www.gnu.org/licenses/.
+ */
+package com.github.kurbatov.atol4j.transport;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Пул буферов для многократного использования при кодировании и декодировании
+ * пакетов.
+ * 
+ * Пул хранит буферы одного размера. Запрос буфера большего размера
+ * удовлетворяется новым буфером, который не возвращается в пул. Пул безопасен
+ * для использования из нескольких потоков.
+ *
+ * @author Олег Курбатов &lt;o.v.kurbatov@gmail.com&gt;
+ */
+public class BufferPool {
+    
+    private static final BufferPool DEFAULT = new BufferPool(1024, 64, false);
+    
+    private final int bufferSize;
+    
+    private final int maxPooled;
+    
+    private final boolean direct;
+    
+    private final Queue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+    
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    /**
+     * Создаёт пул буферов.
+     *
+     * @param bufferSize размер буфера в байтах
+     * @param maxPooled максимальное количество свободных буферов в пуле
+     * @param direct true - буферы размещаются в прямой памяти, false - буферы
+     * размещаются в куче
+     */
+    public BufferPool(int bufferSize, int maxPooled, boolean direct) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+        this.direct = direct;
+    }
+    
+    /**
+     * Получить общий пул буферов в куче размером 1 КБ.
+     *
+     * @return общий пул буферов
+     */
+    public static BufferPool getDefault() {
+        return DEFAULT;
+    }
+    
+    /**
+     * Взять из пула буфер не меньше указанного размера.
+     * 
+     * Буфер возвращается очищенным: позиция равна нулю, предел равен ёмкости.
+     *
+     * @param capacity минимальный размер буфера
+     * @return буфер
+     */
+    public ByteBuffer acquire(int capacity) {
+        if (capacity > bufferSize) {
+            return allocate(capacity);
+        }
+        ByteBuffer result = free.poll();
+        if (result == null) {
+            result = allocate(bufferSize);
+        } else {
+            pooled.decrementAndGet();
+            result.clear();
+        }
+        return result;
+    }
+    
+    /**
+     * Вернуть буфер в пул.
+     * 
+     * После возврата буфер нельзя использовать. Буферы, которые не были
+     * получены из этого пула, и буферы сверх максимального количества
+     * игнорируются.
+     *
+     * @param buffer буфер
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer.capacity() == bufferSize && buffer.isDirect() == direct && pooled.incrementAndGet() <= maxPooled) {
+            free.offer(buffer);
+        } else if (buffer.capacity() == bufferSize && buffer.isDirect() == direct) {
+            pooled.decrementAndGet();
+        }
+    }
+    
+    private ByteBuffer allocate(int capacity) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+    
+}
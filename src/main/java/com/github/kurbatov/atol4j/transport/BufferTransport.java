@@ -0,0 +1,100 @@
+/*
+ * atol4j - клиентская библиотека для контрольной кассовой техники (ККТ) АТОЛ
+ * Copyright (C) 2019 Олег Викторович Курбатов
+ *
+ * Это программа является свободным программным обеспечением. Вы можете
+ * распространять и/или модифицировать её согласно условиям Стандартной
+ * Общественной Лицензии GNU, опубликованной Фондом Свободного Программного
+ * Обеспечения, версии 3 или, по Вашему желанию, любой более поздней версии.
+ *
+ * Эта программа распространяется в надежде, что она будет полезной, но БЕЗ
+ * ВСЯКИХ ГАРАНТИЙ, в том числе подразумеваемых гарантий ТОВАРНОГО
+ * СОСТОЯНИЯ ПРИ ПРОДАЖЕ и ГОДНОСТИ ДЛЯ ОПРЕДЕЛЁННОГО ПРИМЕНЕНИЯ. Смотрите
+ * Стандартную Общественную Лицензию GNU для получения дополнительной
+ * информации.
+ *
+ * Вы должны были получить копию Стандартной Общественной Лицензии GNU
+ * вместе с программой. В случае её отсутствия, смотрите
+ * http://www.gnu.org/licenses/.
+ */
+package com.github.kurbatov.atol4j.transport;
+
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * Физический канал обмена данными с ККТ, который передаёт данные в буферах
+ * {@link ByteBuffer} без промежуточного копирования в массивы.
+ * 
+ * Запись принимает несколько буферов и передаёт их устройству одной операцией
+ * (сборка при записи), поэтому заголовок и данные пакета не нужно объединять
+ * в один массив. Получатели данных от устройства получают буфер транспорта во
+ * временное пользование: буфер доступен только для чтения и действителен до
+ * возврата из получателя. Чтобы сохранить данные, получатель должен их
+ * скопировать.
+ * 
+ * Транспорты, которые реализуют только {@link Transport}, используются через
+ * адаптер {@link #of(Transport)}.
+ *
+ * @author Олег Курбатов &lt;o.v.kurbatov@gmail.com&gt;
+ */
+public interface BufferTransport {
+    
+    /**
+     * Устанавливает соединение с устройством.
+     */
+    void connect();
+
+    /**
+     * Разрывает соединение с устройством.
+     */
+    void disconnect();
+    
+    /**
+     * Отправляет устройству содержимое буферов (от позиции до предела) одной
+     * операцией в порядке перечисления.
+     * 
+     * Транспорт может отправлять данные асинхронно: буферы нельзя изменять
+     * после вызова этого метода.
+     *
+     * @param data буферы с данными для отправки
+     */
+    void write(ByteBuffer... data);
+    
+    /**
+     * Подписывает получателя на данные от устройства.
+     * 
+     * Буфер, переданный получателю, доступен только для чтения и действителен
+     * до возврата из получателя.
+     *
+     * @param consumer получатель данных
+     */
+    void listen(Consumer<ByteBuffer> consumer);
+    
+    /**
+     * Подписывает на восстановление соединения после обрыва.
+     * 
+     * Подписчик вызывается после восстановления соединения до того, как
+     * получатели данных получат первые данные нового соединения. Транспорты,
+     * которые не восстанавливают соединение, подписку игнорируют.
+     *
+     * @param listener подписчик
+     */
+    default void addReconnectListener(Runnable listener) {
+    }
+    
+    /**
+     * Получить канал обмена данными для указанного транспорта.
+     *
+     * @param transport транспорт
+     * @return сам транспорт, если он реализует этот интерфейс, иначе адаптер,
+     * который копирует данные между буферами и массивами
+     */
+    static BufferTransport of(Transport transport) {
+        if (transport instanceof BufferTransport) {
+            return (BufferTransport) transport;
+        }
+        return new TransportAdapter(transport);
+    }
+    
+}
@@ -0,0 +1,222 @@
+/*
+ * atol4j - клиентская библиотека для контрольной кассовой техники (ККТ) АТОЛ
+ * Copyright (C) 2019 Олег Викторович Курбатов
+ *
+ * Это программа является свободным программным обеспечением. Вы можете
+ * распространять и/или модифицировать её согласно условиям Стандартной
+ * Общественной Лицензии GNU, опубликованной Фондом Свободного Программного
+ * Обеспечения, версии 3 или, по Вашему желанию, любой более поздней версии.
+ *
+ * Эта программа распространяется в надежде, что она будет полезной, но БЕЗ
+ * ВСЯКИХ ГАРАНТИЙ, в том числе подразумеваемых гарантий ТОВАРНОГО
+ * СОСТОЯНИЯ ПРИ ПРОДАЖЕ и ГОДНОСТИ ДЛЯ ОПРЕДЕЛЁННОГО ПРИМЕНЕНИЯ. Смотрите
+ * Стандартную Общественную Лицензию GNU для получения дополнительной
+ * информации.
+ *
+ * Вы должны были получить копию Стандартной Общественной Лицензии GNU
+ * вместе с программой. В случае её отсутствия, смотрите
+ * http://www.gnu.org/licenses/.
+ */
+package com.github.kurbatov.atol4j.transport;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * Транспорт, который объединяет сообщения, отправленные в течение короткого
+ * промежутка времени, в одну операцию записи.
+ * 
+ * Протокол нижнего уровня версии 3 отправляет каждый пакет (добавление задания,
+ * подтверждение получения результата) отдельной записью. На медленных
+ * последовательных линиях и беспроводных сетях накладные расходы на каждую
+ * запись сопоставимы со временем передачи самого пакета. Этот транспорт
+ * накапливает пакеты в течение периода ожидания и передаёт их нижележащему
+ * транспорту одним блоком.
+ * 
+ * Перед чтением данных из транспорта накопленные сообщения отправляются
+ * немедленно. Получатели {@link #listen(Consumer)} подписываются на буферы
+ * нижележащего транспорта (см. {@link BufferTransport#of(Transport)}).
+ *
+ * @author Олег Курбатов &lt;o.v.kurbatov@gmail.com&gt;
+ */
+public class CoalescingTransport implements Transport, BufferTransport {
+    
+    private final Transport transport;
+    
+    private final int linger;
+    
+    private final int maxSize;
+    
+    private byte[] buffer;
+    
+    private int size;
+    
+    private final EventLoop loop;
+    
+    private ScheduledExecutorService scheduler;
+    
+    /**
+     * Период ожидания по умолчанию в миллисекундах.
+     */
+    public static final int DEFAULT_LINGER = 2;
+    
+    /**
+     * Размер блока по умолчанию, при достижении которого данные отправляются
+     * без ожидания.
+     */
+    public static final int DEFAULT_MAX_SIZE = 1024;
+
+    /**
+     * Создаёт транспорт, который объединяет сообщения, отправленные в течение
+     * периода ожидания по умолчанию.
+     *
+     * @param transport транспорт, через который передаются объединённые
+     * сообщения
+     */
+    public CoalescingTransport(Transport transport) {
+        this(transport, DEFAULT_LINGER, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Создаёт транспорт, который объединяет сообщения, отправленные в течение
+     * указанного периода ожидания.
+     *
+     * @param transport транспорт, через который передаются объединённые
+     * сообщения
+     * @param linger период ожидания в миллисекундах
+     * @param maxSize размер блока, при достижении которого данные отправляются
+     * без ожидания
+     * @throws IllegalArgumentException если период ожидания отрицательный или
+     * размер блока меньше единицы
+     */
+    public CoalescingTransport(Transport transport, int linger, int maxSize) {
+        this(transport, linger, maxSize, EventLoop.getDefault());
+    }
+
+    /**
+     * Создаёт транспорт, который объединяет сообщения, отправленные в течение
+     * указанного периода ожидания, и отправляет накопленные данные
+     * планировщиком указанного цикла событий.
+     *
+     * @param transport транспорт, через который передаются объединённые
+     * сообщения
+     * @param linger период ожидания в миллисекундах
+     * @param maxSize размер блока, при достижении которого данные отправляются
+     * без ожидания
+     * @param loop цикл событий, планировщик которого отправляет накопленные
+     * данные
+     * @throws IllegalArgumentException если период ожидания отрицательный или
+     * размер блока меньше единицы
+     */
+    public CoalescingTransport(Transport transport, int linger, int maxSize, EventLoop loop) {
+        if (linger < 0) {
+            throw new IllegalArgumentException("Период ожидания не может быть отрицательным: " + linger);
+        }
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Размер блока должен быть больше нуля: " + maxSize);
+        }
+        this.transport = transport;
+        this.linger = linger;
+        this.maxSize = maxSize;
+        this.buffer = new byte[maxSize];
+        this.loop = loop;
+    }
+
+    @Override
+    public void connect() {
+        scheduler = loop.getScheduler();
+        transport.connect();
+    }
+
+    @Override
+    public void disconnect() {
+        flush();
+        transport.disconnect();
+    }
+
+    @Override
+    public synchronized void write(byte[] b) {
+        boolean first = size == 0;
+        ensure(b.length);
+        System.arraycopy(b, 0, buffer, size, b.length);
+        size += b.length;
+        written(first);
+    }
+
+    @Override
+    public synchronized void write(ByteBuffer... data) {
+        boolean first = size == 0;
+        for (ByteBuffer b : data) {
+            int len = b.remaining();
+            ensure(len);
+            b.get(buffer, size, len);
+            size += len;
+        }
+        written(first);
+    }
+    
+    private void ensure(int len) {
+        if (buffer.length - size < len) {
+            byte[] tmp = new byte[Math.max(buffer.length * 2, size + len)];
+            System.arraycopy(buffer, 0, tmp, 0, size);
+            buffer = tmp;
+        }
+    }
+    
+    private void written(boolean first) {
+        if (size >= maxSize || scheduler == null) {
+            flush();
+        } else if (first) {
+            scheduler.schedule(this::flush, linger, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Немедленно отправляет накопленные сообщения.
+     */
+    public synchronized void flush() {
+        if (size > 0) {
+            byte[] block = new byte[size];
+            System.arraycopy(buffer, 0, block, 0, size);
+            size = 0;
+            transport.write(block);
+        }
+    }
+
+    @Override
+    public byte[] read() {
+        flush();
+        return transport.read();
+    }
+
+    @Override
+    public byte[] read(int count) {
+        flush();
+        return transport.read(count);
+    }
+
+    @Override
+    public byte[] read(int count, int timeout) throws TimeoutException {
+        flush();
+        return transport.read(count, timeout);
+    }
+
+    @Override
+    public void subscribe(Consumer<byte[]> consumer) {
+        transport.subscribe(consumer);
+    }
+
+    @Override
+    public void listen(Consumer<ByteBuffer> consumer) {
+        BufferTransport.of(transport).listen(consumer);
+    }
+
+    @Override
+    public void addReconnectListener(Runnable listener) {
+        BufferTransport.of(transport).addReconnectListener(listener);
+    }
+    
+}
@@ -0,0 +1,226 @@
+/*
+ * atol4j - клиентская библиотека для контрольной кассовой техники (ККТ) АТОЛ
+ * Copyright (C) 2019 Олег Викторович Курбатов
+ *
+ * Это программа является свободным программным обеспечением. Вы можете
+ * распространять и/или модифицировать её согласно условиям Стандартной
+ * Общественной Лицензии GNU, опубликованной Фондом Свободного Программного
+ * Обеспечения, версии 3 или, по Вашему желанию, любой более поздней версии.
+ *
+ * Эта программа распространяется в надежде, что она будет полезной, но БЕЗ
+ * ВСЯКИХ ГАРАНТИЙ, в том числе подразумеваемых гарантий ТОВАРНОГО
+ * СОСТОЯНИЯ ПРИ ПРОДАЖЕ и ГОДНОСТИ ДЛЯ ОПРЕДЕЛЁННОГО ПРИМЕНЕНИЯ. Смотрите
+ * Стандартную Общественную Лицензию GNU для получения дополнительной
+ * информации.
+ *
+ * Вы должны были получить копию Стандартной Общественной Лицензии GNU
+ * вместе с программой. В случае её отсутствия, смотрите
+ * http://www.gnu.org/licenses/.
+ */
+package com.github.kurbatov.atol4j.transport;
+
+import java.io.IOException;
+import java.nio.channels.AsynchronousChannelGroup;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Общий цикл событий для обслуживания множества устройств.
+ * 
+ * Каждое подключение к ККТ нуждается в потоках для сетевого ввода-вывода,
+ * доставки результатов и отложенных действий. Если выделять их на каждое
+ * устройство, сотни касс порождают сотни потоков, большую часть времени
+ * простаивающих. Цикл событий предоставляет общие для всех подключений
+ * группу асинхронных каналов, пул потоков обработки событий, планировщик и
+ * таймер сроков выполнения заданий.
+ * Порядок событий одного устройства сохраняется последовательными
+ * исполнителями ({@link SerialExecutor}), которые работают поверх общего пула.
+ * 
+ * Потоки цикла событий являются фоновыми (daemon) и не препятствуют
+ * завершению приложения.
+ * 
+ * Результаты команд всех устройств цикла доставляются в потоках общего пула,
+ * и в них же выполняются обработчики, зарегистрированные приложением на
+ * будущих результатах. Обработчики не должны блокироваться: блокирующий
+ * обработчик задерживает доставку результатов всем устройствам цикла.
+ * Длительную или блокирующую обработку следует выполнять в собственном пуле
+ * потоков приложения (например, {@code thenApplyAsync(fn, executor)}).
+ *
+ * @author Олег Курбатов &lt;o.v.kurbatov@gmail.com&gt;
+ */
+public class EventLoop {
+    
+    private static final class DefaultHolder {
+        private static final EventLoop INSTANCE = new EventLoop(Runtime.getRuntime().availableProcessors());
+    }
+    
+    private final AsynchronousChannelGroup group;
+    
+    private final ExecutorService executor;
+    
+    private final ScheduledExecutorService scheduler;
+    
+    private final HashedWheelTimer timer;
+
+    /**
+     * Создаёт цикл событий с указанным количеством потоков ввода-вывода и
+     * таким же количеством потоков обработки событий.
+     *
+     * @param threads количество потоков
+     * @throws IllegalArgumentException если количество потоков меньше единицы
+     */
+    public EventLoop(int threads) {
+        this(threads, threads);
+    }
+
+    /**
+     * Создаёт цикл событий.
+     *
+     * @param ioThreads количество потоков сетевого ввода-вывода
+     * @param workerThreads количество потоков обработки событий
+     * @throws IllegalArgumentException если количество потоков меньше единицы
+     */
+    public EventLoop(int ioThreads, int workerThreads) {
+        if (ioThreads < 1 || workerThreads < 1) {
+            throw new IllegalArgumentException(String.format("Количество потоков должно быть больше нуля. Указано: %d, %d.", ioThreads, workerThreads));
+        }
+        try {
+            group = AsynchronousChannelGroup.withFixedThreadPool(ioThreads, factory("atol4j-io-"));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        executor = Executors.newFixedThreadPool(workerThreads, factory("atol4j-events-"));
+        scheduler = Executors.newSingleThreadScheduledExecutor(factory("atol4j-scheduler-"));
+        timer = new HashedWheelTimer(scheduler, executor, 10, TimeUnit.MILLISECONDS, 512);
+    }
+    
+    /**
+     * Получить общий цикл событий, число потоков которого равно числу
+     * доступных процессоров.
+     * 
+     * Общий цикл событий создаётся при первом обращении и не останавливается.
+     *
+     * @return общий цикл событий
+     */
+    public static EventLoop getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * Получить группу асинхронных каналов, в которой открываются сетевые
+     * подключения.
+     *
+     * @return группа асинхронных каналов
+     */
+    public AsynchronousChannelGroup getGroup() {
+        return group;
+    }
+
+    /**
+     * Получить общий пул потоков обработки событий.
+     *
+     * @return пул потоков обработки событий
+     */
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Получить общий планировщик отложенных действий.
+     * 
+     * Действия планировщика должны быть короткими и не блокирующими: один
+     * поток планировщика обслуживает все устройства.
+     *
+     * @return планировщик
+     */
+    public ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+    
+    /**
+     * Получить общий таймер с тактом 10 мс для отслеживания сроков выполнения
+     * заданий.
+     *
+     * @return таймер
+     */
+    public HashedWheelTimer getTimer() {
+        return timer;
+    }
+    
+    /**
+     * Создать исполнитель, который выполняет задачи по одной в порядке
+     * поступления в потоках общего пула.
+     *
+     * @return последовательный исполнитель
+     */
+    public SerialExecutor newSerialExecutor() {
+        return new SerialExecutor(executor);
+    }
+    
+    /**
+     * Узнать, выполняется ли текущий поток в цикле событий.
+     * 
+     * Поток цикла событий нельзя блокировать в ожидании другого устройства:
+     * события этого устройства могут обрабатываться тем же пулом потоков.
+     *
+     * @return true - текущий поток принадлежит какому-либо циклу событий
+     */
+    public static boolean inEventLoop() {
+        return Thread.currentThread() instanceof LoopThread;
+    }
+    
+    /**
+     * Остановить цикл событий. Подключения, открытые в группе каналов цикла
+     * событий, закрываются.
+     */
+    public void shutdown() {
+        timer.stop();
+        scheduler.shutdown();
+        executor.shutdown();
+        try {
+            group.shutdownNow();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    
+    /**
+     * Дождаться остановки цикла событий.
+     *
+     * @param timeout максимальное время ожидания
+     * @param unit единица измерения времени ожидания
+     * @return true - цикл событий остановлен, false - время ожидания истекло
+     * @throws InterruptedException если ожидание прервано
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        return scheduler.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)
+                && executor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)
+                && group.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+    
+    private static ThreadFactory factory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread thread = new LoopThread(r, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+    
+    /**
+     * Поток цикла событий.
+     */
+    private static final class LoopThread extends Thread {
+        
+        LoopThread(Runnable target, String name) {
+            super(target, name);
+        }
+        
+    }
+    
+}
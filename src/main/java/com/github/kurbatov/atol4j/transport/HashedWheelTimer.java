@@ -0,0 +1,243 @@
+/*
+ * atol4j - клиентская библиотека для контрольной кассовой техники (ККТ) АТОЛ
+ * Copyright (C) 2019 Олег Викторович Курбатов
+ *
+ * Это программа является свободным программным обеспечением. Вы можете
+ * распространять и/или модифицировать её согласно условиям Стандартной
+ * Общественной Лицензии GNU, опубликованной Фондом Свободного Программного
+ * Обеспечения, версии 3 или, по Вашему желанию, любой более поздней версии.
+ *
+ * Эта программа распространяется в надежде, что она будет полезной, но БЕЗ
+ * ВСЯКИХ ГАРАНТИЙ, в том числе подразумеваемых гарантий ТОВАРНОГО
+ * СОСТОЯНИЯ ПРИ ПРОДАЖЕ и ГОДНОСТИ ДЛЯ ОПРЕДЕЛЁННОГО ПРИМЕНЕНИЯ. Смотрите
+ * Стандартную Общественную Лицензию GNU для получения дополнительной
+ * информации.
+ *
+ * Вы должны были получить копию Стандартной Общественной Лицензии GNU
+ * вместе с программой. В случае её отсутствия, смотрите
+ * http://www.gnu.org/licenses/.
+ */
+package com.github.kurbatov.atol4j.transport;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Таймер на основе хешированного колеса для большого количества отложенных
+ * действий с невысокой точностью срабатывания.
+ * 
+ * Отложенные действия раскладываются по ячейкам колеса в соответствии со
+ * временем срабатывания. Одна периодическая задача планировщика поворачивает
+ * колесо на одно деление за такт и передаёт исполнителю действия, время
+ * которых наступило. Добавление и отмена действия выполняются за постоянное
+ * время независимо от количества ожидающих действий, что позволяет
+ * отслеживать сроки выполнения тысяч заданий множества устройств без
+ * отдельного потока на устройство. Точность срабатывания ограничена
+ * длительностью такта.
+ *
+ * @author Олег Курбатов &lt;o.v.kurbatov@gmail.com&gt;
+ */
+public class HashedWheelTimer {
+    
+    private final ScheduledExecutorService scheduler;
+    
+    private final Executor executor;
+    
+    private final long tickNanos;
+    
+    private final Queue<Handle>[] wheel;
+    
+    private final int mask;
+    
+    private final Queue<Handle> added = new ConcurrentLinkedQueue<>();
+    
+    private final AtomicInteger pending = new AtomicInteger();
+    
+    private volatile long startTime;
+    
+    private volatile ScheduledFuture<?> ticker;
+    
+    private long tick;
+    
+    private static final Logger LOGGER = LoggerFactory.getLogger(HashedWheelTimer.class);
+
+    /**
+     * Создаёт таймер.
+     *
+     * @param scheduler планировщик, который поворачивает колесо
+     * @param executor исполнитель, в потоках которого выполняются отложенные
+     * действия
+     * @param tick длительность такта
+     * @param unit единица измерения длительности такта
+     * @param wheelSize количество ячеек колеса (округляется вверх до степени
+     * двойки)
+     * @throws IllegalArgumentException если длительность такта или количество
+     * ячеек меньше единицы
+     */
+    @SuppressWarnings("unchecked")
+    public HashedWheelTimer(ScheduledExecutorService scheduler, Executor executor, long tick, TimeUnit unit, int wheelSize) {
+        if (tick < 1 || wheelSize < 1) {
+            throw new IllegalArgumentException(String.format("Длительность такта и количество ячеек должны быть больше нуля. Указано: %d, %d.", tick, wheelSize));
+        }
+        this.scheduler = scheduler;
+        this.executor = executor;
+        this.tickNanos = unit.toNanos(tick);
+        int size = Integer.highestOneBit(wheelSize);
+        if (size < wheelSize) {
+            size <<= 1;
+        }
+        wheel = new Queue[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new ArrayDeque<>();
+        }
+        mask = size - 1;
+    }
+    
+    /**
+     * Запланировать выполнение действия.
+     *
+     * @param action действие
+     * @param delay задержка
+     * @param unit единица измерения задержки
+     * @return отложенное действие, которое можно отменить
+     */
+    public Handle schedule(Runnable action, long delay, TimeUnit unit) {
+        start();
+        Handle handle = new Handle(action, System.nanoTime() - startTime + unit.toNanos(Math.max(delay, 0)));
+        pending.incrementAndGet();
+        added.add(handle);
+        return handle;
+    }
+    
+    /**
+     * Получить количество действий, ожидающих выполнения.
+     *
+     * @return количество запланированных и не отменённых действий
+     */
+    public int size() {
+        return pending.get();
+    }
+    
+    /**
+     * Остановить таймер. Действия, ожидающие выполнения, не будут выполнены.
+     */
+    public void stop() {
+        ScheduledFuture<?> current = ticker;
+        if (current != null) {
+            current.cancel(false);
+        }
+    }
+    
+    private void start() {
+        if (ticker == null) {
+            synchronized (this) {
+                if (ticker == null) {
+                    startTime = System.nanoTime();
+                    ticker = scheduler.scheduleAtFixedRate(this::advance, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Поворачивает колесо до текущего момента времени. Выполняется только
+     * потоком планировщика.
+     */
+    private void advance() {
+        long target = (System.nanoTime() - startTime) / tickNanos;
+        while (tick <= target) {
+            transfer();
+            expire(wheel[(int) (tick & mask)]);
+            tick++;
+        }
+    }
+    
+    private void transfer() {
+        for (Handle handle = added.poll(); handle != null; handle = added.poll()) {
+            if (handle.isCancelled()) {
+                continue;
+            }
+            // округление вверх: действие не выполняется раньше срока
+            long due = Math.max((handle.deadline + tickNanos - 1) / tickNanos, tick);
+            handle.rounds = (due - tick) / wheel.length;
+            wheel[(int) (due & mask)].add(handle);
+        }
+    }
+    
+    private void expire(Queue<Handle> bucket) {
+        for (int i = bucket.size(); i > 0; i--) {
+            Handle handle = bucket.poll();
+            if (handle.isCancelled()) {
+                continue;
+            }
+            if (handle.rounds > 0) {
+                handle.rounds--;
+                bucket.add(handle);
+            } else if (handle.state.compareAndSet(Handle.PENDING, Handle.EXPIRED)) {
+                pending.decrementAndGet();
+                try {
+                    executor.execute(handle.action);
+                } catch (RejectedExecutionException e) {
+                    LOGGER.debug("Исполнитель остановлен, отложенное действие не будет выполнено", e);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Отложенное действие.
+     */
+    public class Handle {
+        
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+        
+        private final Runnable action;
+        
+        private final long deadline;
+        
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        
+        private long rounds;
+
+        private Handle(Runnable action, long deadline) {
+            this.action = action;
+            this.deadline = deadline;
+        }
+        
+        /**
+         * Отменить действие.
+         *
+         * @return true - действие отменено, false - действие уже выполнено или
+         * отменено ранее
+         */
+        public boolean cancel() {
+            if (state.compareAndSet(PENDING, CANCELLED)) {
+                pending.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+        
+        /**
+         * Проверить, отменено ли действие.
+         *
+         * @return true - действие отменено
+         */
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+        
+    }
+    
+}
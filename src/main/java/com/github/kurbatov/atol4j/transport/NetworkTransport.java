@@ -21,17 +21,19 @@ package com.github.kurbatov.atol4j.transport;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
 import java.nio.channels.AsynchronousCloseException;
 import java.nio.channels.AsynchronousSocketChannel;
 import java.nio.channels.CompletionHandler;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
 import org.slf4j.Logger;
@@ -40,22 +42,59 @@ import org.slf4j.LoggerFactory;
 /**
  * Реализация транспортировки данных по сетевому интерфейсу (Ethernet или WiFi).
  * 
- * Этот транспорт не поддерживает протокол обмена нижнего уровня версии 2.
+ * Транспорт не создаёт собственных потоков: подключение открывается в группе
+ * асинхронных каналов цикла событий ({@link EventLoop}), а запись выполняется
+ * цепочкой асинхронных операций в порядке вызова {@link #write(byte[])}.
+ * Множество транспортов может разделять один цикл событий.
+ * 
+ * Транспорт реализует {@link BufferTransport}: несколько буферов
+ * записываются одной операцией, а получатели {@link #listen(Consumer)}
+ * получают буфер чтения без копирования. Подписчики
+ * {@link #subscribe(Consumer)} получают копию данных. Буфер чтения размещён в
+ * прямой памяти, и его размер подстраивается под объём поступающих данных.
+ * 
+ * При обрыве соединения транспорт восстанавливает его в фоне с
+ * увеличивающейся случайной задержкой (см.
+ * {@link #setReconnectDelay(int, int)}). Данные, отправленные без соединения,
+ * передаются после его восстановления, а подписчики
+ * {@link #addReconnectListener(Runnable)} получают оповещение, чтобы
+ * возобновить обмен.
+ * 
+ * Пока на транспорт никто не подписан, полученные данные накапливаются для
+ * блокирующего чтения {@link #read(int, int)}. Блокирующее чтение позволяет
+ * использовать сетевой транспорт с протоколом нижнего уровня версии 2.
  *
  * @author Олег Курбатов &lt;o.v.kurbatov@gmail.com&gt;
  */
-public class NetworkTransport implements Transport {
+public class NetworkTransport implements Transport, BufferTransport {
 
-    private ExecutorService executor;
-    private AsynchronousSocketChannel client;
+    private volatile AsynchronousSocketChannel client;
     private final InetSocketAddress addr;
+    private final EventLoop loop;
+    private final Queue<ByteBuffer[]> writes = new ArrayDeque<>();
+    private boolean writing;
+    private boolean connected;
+    private WriteHandler writeHandler;
+    private volatile boolean closing;
     private final Set<Consumer<byte[]>> subscribers = new CopyOnWriteArraySet<>();
+    private final Set<Consumer<ByteBuffer>> listeners = new CopyOnWriteArraySet<>();
+    private final Set<Runnable> reconnectListeners = new CopyOnWriteArraySet<>();
+    private final Object inboxLock = new Object();
+    private byte[] inbox = new byte[MIN_READ_BUFFER_SIZE];
+    private int inboxSize;
+    private boolean tcpNoDelay = true;
+    private int receiveBufferSize;
+    private int sendBufferSize;
+    private volatile boolean autoReconnect = true;
+    private volatile int minReconnectDelay = 100;
+    private volatile int maxReconnectDelay = 10000;
+    private static final int MIN_READ_BUFFER_SIZE = 64;
+    private static final int INITIAL_READ_BUFFER_SIZE = 1024;
+    private static final int MAX_READ_BUFFER_SIZE = 65536;
     private static final Logger LOGGER = LoggerFactory.getLogger(NetworkTransport.class);
     
     /**
      * Создаёт объект, который передаёт данные ККТ по протоколу TCP/IP.
-     * 
-     * Этот транспорт не поддерживает протокол обмена нижнего уровня версии 2.
      *
      * @param host хост
      */
@@ -65,59 +104,55 @@ public class NetworkTransport implements Transport {
     
     /**
      * Создаёт объект, который передаёт данные ККТ по протоколу TCP/IP.
-     * 
-     * Этот транспорт не поддерживает протокол обмена нижнего уровня версии 2.
      *
      * @param host хост
      * @param port порт
      */
     public NetworkTransport(String host, int port) {
+        this(host, port, EventLoop.getDefault());
+    }
+    
+    /**
+     * Создаёт объект, который передаёт данные ККТ по протоколу TCP/IP,
+     * используя указанный цикл событий.
+     *
+     * @param host хост
+     * @param port порт
+     * @param loop цикл событий, в котором обслуживается подключение
+     */
+    public NetworkTransport(String host, int port, EventLoop loop) {
         addr = new InetSocketAddress(host, port);
+        this.loop = loop;
     }
     
     @Override
     public void connect() {
-        executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "atol4j-NetworkTransport"));
+        closing = false;
+        AsynchronousSocketChannel channel = open();
         try {
-            client = AsynchronousSocketChannel.open();
-            client.connect(addr)
+            channel.connect(addr)
                     .get();
-            ByteBuffer readBuffer = ByteBuffer.allocate(128);
-            client.read(readBuffer, client, new CompletionHandler<Integer, AsynchronousSocketChannel>() {
-                @Override
-                public void completed(Integer result, AsynchronousSocketChannel attachment) {
-                    if (result > 0) {
-                        byte[] msg = new byte[readBuffer.position()];
-                        System.arraycopy(readBuffer.array(), 0, msg, 0, msg.length);
-                        subscribers.forEach(s -> s.accept(msg));
-                    }
-                    if (result > -1) {
-                        readBuffer.clear();
-                        attachment.read(readBuffer, attachment, this);
-                    }
-                }
-
-                @Override
-                public void failed(Throwable exc, AsynchronousSocketChannel attachment) {
-                    if (exc instanceof AsynchronousCloseException) {
-                        LOGGER.debug("Соединение с ККТ закрыто", exc);
-                    } else {
-                        LOGGER.error("Ошибка чтения данных от ККТ", exc);
-                    }
-                }
-            });
-        } catch (IOException | InterruptedException | ExecutionException e) {
+        } catch (InterruptedException | ExecutionException e) {
+            close(channel);
             throw new RuntimeException(e);
         }
+        established(channel, false);
     }
 
     @Override
     public void disconnect() {
-        executor.shutdown();
-        try {
-            executor.awaitTermination(10, TimeUnit.SECONDS);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+        closing = true;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        synchronized (writes) {
+            try {
+                long remaining;
+                while (writing && connected && (remaining = deadline - System.nanoTime()) > 0) {
+                    TimeUnit.NANOSECONDS.timedWait(writes, remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            connected = false;
         }
         try {
             client.close();
@@ -126,43 +161,435 @@ public class NetworkTransport implements Transport {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * 
+     * Пока соединение восстанавливается, данные накапливаются и отправляются
+     * после восстановления соединения.
+     *
+     * @throws IllegalStateException если соединение потеряно, а
+     * автоматическое восстановление соединения отключено
+     */
     @Override
     public void write(byte[] b) {
-        executor.submit(() -> {
-            try {
-                client.write(ByteBuffer.wrap(b)).get();
-            } catch (InterruptedException | ExecutionException e) {
-                LOGGER.error("Ошибка отправки данных по сети", e);
+        write(ByteBuffer.wrap(b));
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * Пока соединение восстанавливается, данные накапливаются и отправляются
+     * после восстановления соединения.
+     *
+     * @throws IllegalStateException если соединение потеряно, а
+     * автоматическое восстановление соединения отключено
+     */
+    @Override
+    public void write(ByteBuffer... data) {
+        WriteHandler handler;
+        synchronized (writes) {
+            if (!connected && !autoReconnect) {
+                throw new IllegalStateException("Нет соединения с ККТ");
             }
-        });
+            if (writing || !connected) {
+                writes.add(data);
+                return;
+            }
+            writing = true;
+            handler = writeHandler;
+        }
+        handler.write(data);
     }
 
     @Override
     public byte[] read() {
-        CompletableFuture<byte[]> result = new CompletableFuture<>();
-        subscribe(new Consumer<byte[]>() {
-            @Override
-            public void accept(byte[] b) {
-                result.complete(b);
-                subscribers.remove(this);
-            }
-        });
-        return result.join();
+        synchronized (inboxLock) {
+            return inboxSize == 0 ? new byte[0] : take(inboxSize);
+        }
     }
 
     @Override
     public byte[] read(int count) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        synchronized (inboxLock) {
+            try {
+                while (inboxSize < count) {
+                    inboxLock.wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Чтение данных прервано", e);
+            }
+            return take(count);
+        }
     }
 
     @Override
     public byte[] read(int count, int timeout) throws TimeoutException {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        synchronized (inboxLock) {
+            try {
+                long remaining;
+                while (inboxSize < count) {
+                    remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        throw new TimeoutException(String.format("За %d мс получено %d байт из %d", timeout, inboxSize, count));
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(inboxLock, remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Чтение данных прервано", e);
+            }
+            return take(count);
+        }
+    }
+    
+    /**
+     * Включить или отключить TCP_NODELAY (алгоритм Нейгла). По умолчанию
+     * включено: пакеты протокола малы, и задержка их отправки увеличивает
+     * время выполнения команд. Применяется при подключении.
+     *
+     * @param tcpNoDelay true - отправлять данные без задержки
+     */
+    public void setTcpNoDelay(boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+    }
+    
+    /**
+     * Задать размер приёмного буфера сокета (SO_RCVBUF). По умолчанию
+     * используется размер, заданный операционной системой. Применяется при
+     * подключении.
+     *
+     * @param receiveBufferSize размер буфера в байтах или 0 для размера по
+     * умолчанию
+     */
+    public void setReceiveBufferSize(int receiveBufferSize) {
+        this.receiveBufferSize = receiveBufferSize;
+    }
+    
+    /**
+     * Задать размер буфера отправки сокета (SO_SNDBUF). По умолчанию
+     * используется размер, заданный операционной системой. Применяется при
+     * подключении.
+     *
+     * @param sendBufferSize размер буфера в байтах или 0 для размера по
+     * умолчанию
+     */
+    public void setSendBufferSize(int sendBufferSize) {
+        this.sendBufferSize = sendBufferSize;
+    }
+    
+    /**
+     * Включить или отключить автоматическое восстановление соединения. По
+     * умолчанию включено.
+     *
+     * @param autoReconnect true - восстанавливать соединение после обрыва
+     */
+    public void setAutoReconnect(boolean autoReconnect) {
+        this.autoReconnect = autoReconnect;
+    }
+    
+    /**
+     * Задать пределы задержки перед попытками восстановления соединения.
+     * 
+     * Задержка удваивается с каждой неудачной попыткой от минимальной до
+     * максимальной и случайно уменьшается не более чем вдвое, чтобы
+     * устройства, потерявшие связь одновременно, не подключались
+     * одновременно. По умолчанию от 100 мс до 10 с.
+     *
+     * @param minDelay минимальная задержка в миллисекундах
+     * @param maxDelay максимальная задержка в миллисекундах
+     * @throws IllegalArgumentException если минимальная задержка меньше
+     * единицы или больше максимальной
+     */
+    public void setReconnectDelay(int minDelay, int maxDelay) {
+        if (minDelay < 1 || minDelay > maxDelay) {
+            throw new IllegalArgumentException(String.format("Недопустимые пределы задержки: %d, %d", minDelay, maxDelay));
+        }
+        this.minReconnectDelay = minDelay;
+        this.maxReconnectDelay = maxDelay;
+    }
+    
+    /**
+     * Передаёт полученные данные получателям или накапливает их для
+     * блокирующего чтения, если получателей нет.
+     *
+     * @param data полученные данные
+     */
+    private void receive(ByteBuffer data) {
+        if (listeners.isEmpty() && subscribers.isEmpty()) {
+            synchronized (inboxLock) {
+                int len = data.remaining();
+                if (inbox.length - inboxSize < len) {
+                    inbox = Arrays.copyOf(inbox, Math.max(inbox.length << 1, inboxSize + len));
+                }
+                data.get(inbox, inboxSize, len);
+                inboxSize += len;
+                inboxLock.notifyAll();
+            }
+            return;
+        }
+        listeners.forEach(l -> l.accept(data.asReadOnlyBuffer()));
+        if (!subscribers.isEmpty()) {
+            byte[] msg = new byte[data.remaining()];
+            data.get(msg);
+            subscribers.forEach(s -> s.accept(msg));
+        }
+    }
+    
+    /**
+     * Извлекает данные из начала накопленных данных. Вызывается под
+     * блокировкой накопленных данных.
+     *
+     * @param count количество байт
+     * @return данные
+     */
+    private byte[] take(int count) {
+        byte[] result = Arrays.copyOf(inbox, count);
+        inboxSize -= count;
+        System.arraycopy(inbox, count, inbox, 0, inboxSize);
+        return result;
     }
 
     @Override
     public void subscribe(Consumer<byte[]> consumer) {
         subscribers.add(consumer);
     }
+
+    @Override
+    public void listen(Consumer<ByteBuffer> consumer) {
+        listeners.add(consumer);
+    }
+
+    @Override
+    public void addReconnectListener(Runnable listener) {
+        reconnectListeners.add(listener);
+    }
+    
+    private AsynchronousSocketChannel open() {
+        try {
+            AsynchronousSocketChannel channel = AsynchronousSocketChannel.open(loop.getGroup());
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, tcpNoDelay);
+            if (receiveBufferSize > 0) {
+                channel.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferSize);
+            }
+            if (sendBufferSize > 0) {
+                channel.setOption(StandardSocketOptions.SO_SNDBUF, sendBufferSize);
+            }
+            return channel;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    
+    /**
+     * Начинает обмен данными по установленному соединению: отправляет данные,
+     * накопленные без соединения, оповещает о восстановлении соединения и
+     * запускает чтение.
+     *
+     * @param channel канал установленного соединения
+     * @param reconnected true - соединение восстановлено после обрыва
+     */
+    private void established(AsynchronousSocketChannel channel, boolean reconnected) {
+        WriteHandler handler = new WriteHandler(channel);
+        ByteBuffer[] next;
+        synchronized (writes) {
+            client = channel;
+            writeHandler = handler;
+            connected = true;
+            next = writes.poll();
+            writing = next != null;
+        }
+        if (next != null) {
+            handler.write(next);
+        }
+        if (reconnected) {
+            // чтение ещё не запущено: получатели могут сбросить состояние
+            // разбора данных
+            reconnectListeners.forEach(Runnable::run);
+        }
+        new ReadHandler(channel).read();
+    }
+    
+    /**
+     * Обрабатывает обрыв соединения: закрывает канал и, если это разрешено,
+     * начинает восстановление соединения.
+     *
+     * @param channel канал оборванного соединения
+     * @param cause причина обрыва или null, если устройство закрыло соединение
+     */
+    private void connectionLost(AsynchronousSocketChannel channel, Throwable cause) {
+        synchronized (writes) {
+            if (channel != client || !connected || closing) {
+                return;
+            }
+            connected = false;
+            writing = false;
+            if (!autoReconnect) {
+                writes.clear();
+            }
+            writes.notifyAll();
+        }
+        close(channel);
+        if (!autoReconnect) {
+            LOGGER.error("Соединение с ККТ потеряно", cause);
+            return;
+        }
+        LOGGER.warn("Соединение с ККТ потеряно. Восстанавливаем соединение.", cause);
+        reconnect(1);
+    }
+    
+    private void reconnect(int attempt) {
+        loop.getScheduler().schedule(() -> {
+            if (closing) {
+                return;
+            }
+            AsynchronousSocketChannel channel;
+            try {
+                channel = open();
+            } catch (RuntimeException e) {
+                LOGGER.debug("Попытка {} восстановить соединение не удалась", attempt, e);
+                reconnect(attempt + 1);
+                return;
+            }
+            channel.connect(addr, null, new CompletionHandler<Void, Void>() {
+                @Override
+                public void completed(Void result, Void attachment) {
+                    if (closing) {
+                        close(channel);
+                        return;
+                    }
+                    LOGGER.info("Соединение с ККТ восстановлено с попытки {}", attempt);
+                    established(channel, true);
+                }
+
+                @Override
+                public void failed(Throwable exc, Void attachment) {
+                    close(channel);
+                    LOGGER.debug("Попытка {} восстановить соединение не удалась", attempt, exc);
+                    reconnect(attempt + 1);
+                }
+            });
+        }, backoff(attempt), TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Вычисляет задержку перед попыткой восстановления соединения.
+     *
+     * @param attempt номер попытки, начиная с единицы
+     * @return задержка в миллисекундах
+     */
+    long backoff(int attempt) {
+        long ceiling = Math.min((long) maxReconnectDelay, (long) minReconnectDelay << Math.min(attempt - 1, 20));
+        return ceiling - ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+    }
+    
+    private static void close(AsynchronousSocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.debug("Не удалось закрыть соединение", e);
+        }
+    }
+    
+    /**
+     * Продолжает цепочку чтения соединения и передаёт полученные данные
+     * получателям.
+     */
+    private class ReadHandler implements CompletionHandler<Integer, AdaptiveReadBuffer> {
+        
+        private final AsynchronousSocketChannel channel;
+        
+        private final AdaptiveReadBuffer buffer = new AdaptiveReadBuffer(MIN_READ_BUFFER_SIZE, INITIAL_READ_BUFFER_SIZE, MAX_READ_BUFFER_SIZE);
+
+        ReadHandler(AsynchronousSocketChannel channel) {
+            this.channel = channel;
+        }
+        
+        void read() {
+            channel.read(buffer.get(), buffer, this);
+        }
+
+        @Override
+        public void completed(Integer result, AdaptiveReadBuffer attachment) {
+            if (result < 0) {
+                connectionLost(channel, null);
+                return;
+            }
+            if (result > 0) {
+                ByteBuffer data = attachment.get();
+                data.limit(result);
+                receive(data);
+                attachment.record(result);
+            }
+            read();
+        }
+
+        @Override
+        public void failed(Throwable exc, AdaptiveReadBuffer attachment) {
+            if (exc instanceof AsynchronousCloseException && closing) {
+                LOGGER.debug("Соединение с ККТ закрыто", exc);
+            } else {
+                connectionLost(channel, exc);
+            }
+        }
+        
+    }
+    
+    /**
+     * Продолжает цепочку записи: дописывает остаток буфера или начинает
+     * запись следующего сообщения из очереди.
+     */
+    private class WriteHandler implements CompletionHandler<Long, ByteBuffer[]> {
+        
+        private final AsynchronousSocketChannel channel;
+
+        WriteHandler(AsynchronousSocketChannel channel) {
+            this.channel = channel;
+        }
+        
+        void write(ByteBuffer[] data) {
+            channel.write(data, 0, data.length, 0, TimeUnit.MILLISECONDS, data, this);
+        }
+
+        @Override
+        public void completed(Long result, ByteBuffer[] data) {
+            ByteBuffer[] next = data;
+            if (!hasRemaining(data)) {
+                synchronized (writes) {
+                    if (writeHandler != this || !connected) {
+                        return; // соединение оборвано
+                    }
+                    next = writes.poll();
+                    if (next == null) {
+                        writing = false;
+                        writes.notifyAll();
+                        return;
+                    }
+                }
+            }
+            write(next);
+        }
+
+        @Override
+        public void failed(Throwable exc, ByteBuffer[] data) {
+            if (closing) {
+                LOGGER.debug("Отправка данных прервана закрытием соединения", exc);
+            } else {
+                LOGGER.error("Ошибка отправки данных по сети", exc);
+            }
+            connectionLost(channel, exc);
+        }
+        
+        private boolean hasRemaining(ByteBuffer[] data) {
+            for (ByteBuffer b : data) {
+                if (b.hasRemaining()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+    }
     
 }
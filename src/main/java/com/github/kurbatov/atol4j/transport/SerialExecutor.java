@@ -0,0 +1,140 @@
+/*
+ * atol4j - клиентская библиотека для контрольной кассовой техники (ККТ) АТОЛ
+ * Copyright (C) 2019 Олег Викторович Курбатов
+ *
+ * Это программа является свободным программным обеспечением. Вы можете
+ * распространять и/или модифицировать её согласно условиям Стандартной
+ * Общественной Лицензии GNU, опубликованной Фондом Свободного Программного
+ * Обеспечения, версии 3 или, по Вашему желанию, любой более поздней версии.
+ *
+ * Эта программа распространяется в надежде, что она будет полезной, но БЕЗ
+ * ВСЯКИХ ГАРАНТИЙ, в том числе подразумеваемых гарантий ТОВАРНОГО
+ * СОСТОЯНИЯ ПРИ ПРОДАЖЕ и ГОДНОСТИ ДЛЯ ОПРЕДЕЛЁННОГО ПРИМЕНЕНИЯ. Смотрите
+ * Стандартную Общественную Лицензию GNU для получения дополнительной
+ * информации.
+ *
+ * Вы должны были получить копию Стандартной Общественной Лицензии GNU
+ * вместе с программой. В случае её отсутствия, смотрите
+ * http://www.gnu.org/licenses/.
+ */
+package com.github.kurbatov.atol4j.transport;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Исполнитель, который выполняет задачи по одной в порядке поступления,
+ * используя потоки другого исполнителя.
+ * 
+ * Позволяет множеству устройств разделять общий пул потоков, сохраняя порядок
+ * событий каждого отдельного устройства. В каждый момент времени в общем пуле
+ * выполняется не более одной задачи этого исполнителя. Исключение, выброшенное
+ * задачей, записывается в журнал и не мешает выполнению следующих задач.
+ *
+ * @author Олег Курбатов &lt;o.v.kurbatov@gmail.com&gt;
+ */
+public class SerialExecutor implements Executor {
+    
+    private final Executor executor;
+    
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    
+    private boolean running;
+    
+    private volatile Thread current;
+    
+    private static final Logger LOGGER = LoggerFactory.getLogger(SerialExecutor.class);
+
+    /**
+     * Создаёт последовательный исполнитель.
+     *
+     * @param executor исполнитель, в потоках которого выполняются задачи
+     */
+    public SerialExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        synchronized (tasks) {
+            tasks.add(command);
+            if (running) {
+                return;
+            }
+            running = true;
+        }
+        schedule();
+    }
+    
+    /**
+     * Проверить, выполняется ли текущий поток задачу этого исполнителя.
+     *
+     * @return true - вызов сделан из задачи этого исполнителя
+     */
+    public boolean isCurrentThread() {
+        return Thread.currentThread() == current;
+    }
+    
+    /**
+     * Дождаться выполнения задач, поставленных в очередь до вызова этого
+     * метода.
+     * 
+     * Вызов из задачи этого исполнителя возвращает false без ожидания.
+     *
+     * @param timeout максимальное время ожидания
+     * @param unit единица измерения времени ожидания
+     * @return true - задачи выполнены, false - время ожидания истекло
+     * @throws InterruptedException если ожидание прервано
+     */
+    public boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+        if (isCurrentThread()) {
+            return false;
+        }
+        CountDownLatch latch = new CountDownLatch(1);
+        execute(latch::countDown);
+        return latch.await(timeout, unit);
+    }
+    
+    private void schedule() {
+        try {
+            executor.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            synchronized (tasks) {
+                tasks.clear();
+                running = false;
+            }
+            throw e;
+        }
+    }
+    
+    private void drain() {
+        Runnable task;
+        synchronized (tasks) {
+            task = tasks.poll();
+        }
+        current = Thread.currentThread();
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            LOGGER.error("Ошибка выполнения задачи", e);
+        } finally {
+            current = null;
+        }
+        synchronized (tasks) {
+            if (tasks.isEmpty()) {
+                running = false;
+                return;
+            }
+        }
+        // следующая задача ставится в общий пул, чтобы не занимать поток
+        // надолго и дать выполниться задачам других устройств
+        schedule();
+    }
+    
+}
@@ -0,0 +1,77 @@
+/*
+ * atol4j - клиентская библиотека для контрольной кассовой техники (ККТ) АТОЛ
+ * Copyright (C) 2019 Олег Викторович Курбатов
+ *
+ * Это программа является свободным программным обеспечением. Вы можете
+ * распространять и/или модифицировать её согласно условиям Стандартной
+ * Общественной Лицензии GNU, опубликованной Фондом Свободного Программного
+ * Обеспечения, версии 3 или, по Вашему желанию, любой более поздней версии.
+ *
+ * Эта программа распространяется в надежде, что она будет полезной, но БЕЗ
+ * ВСЯКИХ ГАРАНТИЙ, в том числе подразумеваемых гарантий ТОВАРНОГО
+ * СОСТОЯНИЯ ПРИ ПРОДАЖЕ и ГОДНОСТИ ДЛЯ ОПРЕДЕЛЁННОГО ПРИМЕНЕНИЯ. Смотрите
+ * Стандартную Общественную Лицензию GNU для получения дополнительной
+ * информации.
+ *
+ * Вы должны были получить копию Стандартной Общественной Лицензии GNU
+ * вместе с программой. В случае её отсутствия, смотрите
+ * http://www.gnu.org/licenses/.
+ */
+package com.github.kurbatov.atol4j.transport;
+
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * Адаптер транспорта, который работает с массивами байт, к каналу обмена
+ * данными в буферах.
+ *
+ * @author Олег Курбатов &lt;o.v.kurbatov@gmail.com&gt;
+ */
+class TransportAdapter implements BufferTransport {
+    
+    private final Transport transport;
+
+    TransportAdapter(Transport transport) {
+        this.transport = transport;
+    }
+
+    @Override
+    public void connect() {
+        transport.connect();
+    }
+
+    @Override
+    public void disconnect() {
+        transport.disconnect();
+    }
+
+    @Override
+    public void write(ByteBuffer... data) {
+        if (data.length == 1 && data[0].hasArray() && data[0].arrayOffset() == 0
+                && data[0].position() == 0 && data[0].limit() == data[0].array().length) {
+            // буфер целиком занимает массив: передаём массив без копирования
+            transport.write(data[0].array());
+            data[0].position(data[0].limit());
+            return;
+        }
+        int size = 0;
+        for (ByteBuffer b : data) {
+            size += b.remaining();
+        }
+        byte[] block = new byte[size];
+        int pos = 0;
+        for (ByteBuffer b : data) {
+            int len = b.remaining();
+            b.get(block, pos, len);
+            pos += len;
+        }
+        transport.write(block);
+    }
+
+    @Override
+    public void listen(Consumer<ByteBuffer> consumer) {
+        transport.subscribe(b -> consumer.accept(ByteBuffer.wrap(b).asReadOnlyBuffer()));
+    }
+    
+}
@@ -0,0 +1,565 @@
+/*
+ * atol4j - клиентская библиотека для контрольной кассовой техники (ККТ) АТОЛ
+ * Copyright (C) 2019 Олег Викторович Курбатов
+ *
+ * Это программа является свободным программным обеспечением. Вы можете
+ * распространять и/или модифицировать её согласно условиям Стандартной
+ * Общественной Лицензии GNU, опубликованной Фондом Свободного Программного
+ * Обеспечения, версии 3 или, по Вашему желанию, любой более поздней версии.
+ *
+ * Эта программа распространяется в надежде, что она будет полезной, но БЕЗ
+ * ВСЯКИХ ГАРАНТИЙ, в том числе подразумеваемых гарантий ТОВАРНОГО
+ * СОСТОЯНИЯ ПРИ ПРОДАЖЕ и ГОДНОСТИ ДЛЯ ОПРЕДЕЛЁННОГО ПРИМЕНЕНИЯ. Смотрите
+ * Стандартную Общественную Лицензию GNU для получения дополнительной
+ * информации.
+ *
+ * Вы должны были получить копию Стандартной Общественной Лицензии GNU
+ * вместе с программой. В случае её отсутствия, смотрите
+ * http://www.gnu.org/licenses/.
+ */
+package com.github.kurbatov.atol4j.transport.emulator;
+
+import com.github.kurbatov.atol4j.charset.ExternalCharset;
+import com.github.kurbatov.atol4j.command.Result;
+import com.github.kurbatov.atol4j.transport.protocol.v3.Command;
+import com.github.kurbatov.atol4j.transport.protocol.v3.FrameCodec;
+import com.github.kurbatov.atol4j.transport.protocol.v3.FrameParser;
+import com.github.kurbatov.atol4j.transport.protocol.v3.Status;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Эмулятор ККТ, который поддерживает протокол нижнего уровня версии 3.
+ * 
+ * Эмулятор ведёт очередь заданий как устройство: принятое задание получает
+ * статус {@link Status#PENDING}, затем по очереди выполняется
+ * ({@link Status#IN_PROGRESS}) в течение заданной задержки. Результат задания,
+ * для которого требуется результат, передаётся асинхронным ответом
+ * ({@link Status#ASYNC_RESULT}) и хранится до подтверждения. Если задание
+ * завершилось ошибкой и не имеет флага игнорирования ошибок, последующие
+ * задания очереди останавливаются ({@link Status#STOPPED}). Об ошибке
+ * задания, для которого результат не требуется, эмулятор сообщает асинхронным
+ * ответом {@link Status#ASYNC_ERROR}, а успешно выполненное задание без запроса
+ * результата сразу удаляет из очереди.
+ * 
+ * Для проверки устойчивости клиента эмулятор может терять пакеты и запрашивать
+ * повторную передачу пакетов с заданной вероятностью.
+ * 
+ * Ответ на команду формирует обработчик команд. Обработчик по умолчанию
+ * отвечает на запрос состояния и запрос типа устройства, а на остальные
+ * команды возвращает успешный результат.
+ * 
+ * Все пакеты обрабатываются в одном потоке эмулятора. Полученные пакеты
+ * передаются подписчикам из этого же потока.
+ *
+ * @author Олег Курбатов &lt;o.v.kurbatov@gmail.com&gt;
+ */
+public class DeviceEmulator {
+    
+    private final Set<Consumer<byte[]>> subscribers = new CopyOnWriteArraySet<>();
+    
+    private final Map<Byte, Long> latencies = new ConcurrentHashMap<>();
+    
+    private final Map<Byte, Task> tasks = new LinkedHashMap<>();
+    
+    private final FrameParser parser = new FrameParser();
+    
+    private volatile Function<byte[], byte[]> handler = DeviceEmulator::respond;
+    
+    private volatile long latency;
+    
+    private volatile long jitter;
+    
+    private volatile double lossRate;
+    
+    private volatile double retransmitRate;
+    
+    private volatile int passwordLength = 2;
+    
+    private volatile int capacity = MAX_TASKS;
+    
+    private volatile Random random = new Random();
+    
+    private volatile ScheduledExecutorService executor;
+    
+    private ScheduledFuture<?> execution;
+    
+    private final boolean[] retransmitted = new boolean[256];
+    
+    /**
+     * Максимальное количество заданий в очереди эмулятора по умолчанию.
+     */
+    public static final int MAX_TASKS = 0xE0;
+    
+    /**
+     * Модель устройства, которую сообщает обработчик команд по умолчанию.
+     */
+    public static final byte MODEL = 57;
+    
+    private static final byte ASYNC_RESPONSE_ID = (byte) 0xF0;
+    
+    // флаги
+    private static final byte NEED_RESULT = 1;
+    private static final byte IGNORE_ERR = 2;
+    private static final byte ASYNC = 4;
+    
+    private static final Logger LOGGER = LoggerFactory.getLogger(DeviceEmulator.class);
+    
+    /**
+     * Запускает эмулятор.
+     */
+    public synchronized void start() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "atol4j-DeviceEmulator");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+    
+    /**
+     * Останавливает эмулятор. Задания, которые не были выполнены, отменяются.
+     */
+    public void stop() {
+        ScheduledExecutorService ex;
+        synchronized (this) {
+            ex = executor;
+        }
+        if (ex == null) {
+            return;
+        }
+        // поток эмулятора может находиться в подписчике, который в это время
+        // передаёт эмулятору данные, поэтому остановка выполняется без
+        // блокировки
+        ex.shutdownNow();
+        try {
+            ex.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (executor == ex) {
+                executor = null;
+                execution = null;
+                tasks.clear();
+                parser.reset();
+            }
+        }
+    }
+    
+    /**
+     * Принимает данные, переданные клиентом устройству.
+     * 
+     * Данные могут содержать часть пакета или несколько пакетов. Массив не
+     * должен изменяться после передачи эмулятору.
+     *
+     * @param data данные от клиента
+     * @throws IllegalStateException если эмулятор не запущен
+     */
+    public void receive(byte[] data) {
+        ScheduledExecutorService ex = executor;
+        if (ex == null) {
+            throw new IllegalStateException("Эмулятор не запущен");
+        }
+        try {
+            ex.execute(() -> process(data));
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Эмулятор остановлен, полученные данные отброшены");
+        }
+    }
+    
+    /**
+     * Подписывает потребителя на данные, которые эмулятор передаёт клиенту.
+     *
+     * @param consumer подписчик
+     */
+    public void subscribe(Consumer<byte[]> consumer) {
+        subscribers.add(consumer);
+    }
+    
+    /**
+     * Отписывает потребителя от данных, которые эмулятор передаёт клиенту.
+     *
+     * @param consumer подписчик
+     */
+    public void unsubscribe(Consumer<byte[]> consumer) {
+        subscribers.remove(consumer);
+    }
+
+    /**
+     * Установить обработчик команд.
+     * 
+     * Обработчик получает команду без пароля и возвращает ответ устройства,
+     * начиная с кода ответа.
+     *
+     * @param handler обработчик команд
+     */
+    public void setHandler(Function<byte[], byte[]> handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Установить время выполнения задания по умолчанию.
+     *
+     * @param millis время выполнения в миллисекундах
+     */
+    public void setLatency(long millis) {
+        this.latency = millis;
+    }
+    
+    /**
+     * Установить время выполнения заданий с указанным кодом команды.
+     *
+     * @param command код команды
+     * @param millis время выполнения в миллисекундах
+     */
+    public void setLatency(byte command, long millis) {
+        latencies.put(command, millis);
+    }
+
+    /**
+     * Установить максимальное случайное отклонение времени выполнения задания.
+     * 
+     * К времени выполнения каждого задания добавляется равномерно
+     * распределённая случайная величина от 0 до указанного значения.
+     *
+     * @param millis отклонение в миллисекундах
+     */
+    public void setJitter(long millis) {
+        this.jitter = millis;
+    }
+
+    /**
+     * Установить вероятность потери пакета.
+     * 
+     * С этой вероятностью теряются как принятые, так и отправленные пакеты.
+     *
+     * @param lossRate вероятность от 0 до 1
+     */
+    public void setLossRate(double lossRate) {
+        this.lossRate = lossRate;
+    }
+
+    /**
+     * Установить вероятность запроса повторной передачи пакета.
+     * 
+     * С этой вероятностью эмулятор отвечает на принятый пакет пустым пакетом с
+     * тем же идентификатором, как если бы пакет был повреждён при передаче.
+     * Повтор одного и того же пакета запрашивается не более одного раза.
+     * Повторно переданный пакет обрабатывается после пакетов, принятых до
+     * него, поэтому порядок заданий в очереди может измениться.
+     *
+     * @param retransmitRate вероятность от 0 до 1
+     */
+    public void setRetransmitRate(double retransmitRate) {
+        this.retransmitRate = retransmitRate;
+    }
+
+    /**
+     * Установить длину пароля, который предшествует команде в задании.
+     *
+     * @param passwordLength длина пароля в байтах
+     */
+    public void setPasswordLength(int passwordLength) {
+        this.passwordLength = passwordLength;
+    }
+
+    /**
+     * Установить максимальное количество заданий в очереди эмулятора.
+     *
+     * @param capacity максимальное количество заданий
+     */
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Установить начальное значение генератора случайных чисел, чтобы потери
+     * пакетов и отклонения времени выполнения воспроизводились от запуска к
+     * запуску.
+     *
+     * @param seed начальное значение
+     */
+    public void setSeed(long seed) {
+        this.random = new Random(seed);
+    }
+    
+    private void process(byte[] data) {
+        parser.parse(data, this::processFrame);
+    }
+    
+    private void processFrame(byte[] frame) {
+        byte id = frame[3];
+        if (random.nextDouble() < lossRate) {
+            LOGGER.debug("Эмулятор потерял пакет {}", id & 0xFF);
+            return;
+        }
+        byte[] payload;
+        try {
+            java.nio.ByteBuffer in = java.nio.ByteBuffer.wrap(frame);
+            payload = new byte[FrameCodec.payloadLength(in)];
+            FrameCodec.decode(in, java.nio.ByteBuffer.wrap(payload));
+        } catch (IllegalArgumentException e) {
+            LOGGER.debug("Эмулятор получил повреждённый пакет {}", id & 0xFF, e);
+            send(id, new byte[0]);
+            return;
+        }
+        if (!retransmitted[id & 0xFF] && random.nextDouble() < retransmitRate) {
+            retransmitted[id & 0xFF] = true;
+            LOGGER.debug("Эмулятор запрашивает повтор пакета {}", id & 0xFF);
+            send(id, new byte[0]);
+            return;
+        }
+        retransmitted[id & 0xFF] = false;
+        if (payload.length == 0) {
+            return;
+        }
+        byte[] response = processCommand(payload);
+        if (response != null) {
+            send(id, response);
+        }
+        schedule();
+    }
+    
+    private byte[] processCommand(byte[] payload) {
+        switch (payload[0]) {
+            case Command.ADD:
+                return payload.length < 4
+                        ? new byte[] {Status.ILLEGAL_VALUE}
+                        : add(payload[1], payload[2], Arrays.copyOfRange(payload, 3, payload.length));
+            case Command.ACK:
+                if (payload.length > 1) {
+                    ack(payload[1]);
+                }
+                return null;
+            case Command.REQ:
+                return payload.length < 2 ? new byte[] {Status.ILLEGAL_VALUE} : request(payload[1]);
+            case Command.ABORT:
+                abort();
+                return new byte[] {Status.RESULT};
+            case Command.ACK_ADD:
+                if (payload.length < 5) {
+                    return new byte[] {Status.ILLEGAL_VALUE};
+                }
+                ack(payload[1]);
+                return add(payload[2], payload[3], Arrays.copyOfRange(payload, 4, payload.length));
+            default:
+                return new byte[] {Status.ILLEGAL_VALUE};
+        }
+    }
+    
+    private byte[] add(byte flags, byte id, byte[] data) {
+        if (tasks.containsKey(id)) {
+            return new byte[] {Status.ALREADY_EXISTS};
+        }
+        if (tasks.size() >= capacity) {
+            return new byte[] {Status.OVERFLOW};
+        }
+        Task task = new Task(id, flags, data);
+        tasks.put(id, task);
+        return new byte[] {task.status};
+    }
+    
+    private void ack(byte id) {
+        Task task = tasks.get(id);
+        if (task != null && (task.status == Status.RESULT || task.status == Status.STOPPED)) {
+            tasks.remove(id);
+        }
+    }
+    
+    private byte[] request(byte id) {
+        Task task = tasks.get(id);
+        if (task == null) {
+            return new byte[] {Status.NOT_FOUND};
+        }
+        if (task.status != Status.RESULT) {
+            return new byte[] {task.status};
+        }
+        byte[] response = new byte[task.result.length + 1];
+        response[0] = Status.RESULT;
+        System.arraycopy(task.result, 0, response, 1, task.result.length);
+        return response;
+    }
+    
+    private void abort() {
+        if (execution != null) {
+            execution.cancel(false);
+            execution = null;
+        }
+        tasks.clear();
+    }
+    
+    /**
+     * Запускает выполнение первого задания в очереди, если эмулятор не занят.
+     */
+    private void schedule() {
+        if (execution != null) {
+            return;
+        }
+        for (Task task : tasks.values()) {
+            if (task.status == Status.PENDING) {
+                task.status = Status.IN_PROGRESS;
+                long delay = latencies.getOrDefault(commandCode(task), latency);
+                if (jitter > 0) {
+                    delay += (long) (random.nextDouble() * jitter);
+                }
+                try {
+                    execution = executor.schedule(() -> complete(task), delay, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    LOGGER.debug("Эмулятор остановлен, задание {} не будет выполнено", task.id & 0xFF);
+                }
+                return;
+            }
+        }
+    }
+    
+    private void complete(Task task) {
+        execution = null;
+        if (tasks.get(task.id) != task) {
+            return; // очередь заданий очищена
+        }
+        byte[] command = Arrays.copyOfRange(task.data, Math.min(passwordLength, task.data.length), task.data.length);
+        byte[] result;
+        try {
+            result = handler.apply(command);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Ошибка обработчика команд эмулятора", e);
+            result = new byte[] {Status.ILLEGAL_VALUE};
+        }
+        task.result = result;
+        task.status = Status.RESULT;
+        boolean stop = (task.flags & IGNORE_ERR) == 0 && isError(result);
+        if (stop) {
+            for (Task t : tasks.values()) {
+                if (t.status == Status.PENDING) {
+                    t.status = Status.STOPPED;
+                }
+            }
+        }
+        if ((task.flags & (NEED_RESULT | ASYNC)) != 0 || stop) {
+            byte[] response = new byte[result.length + 2];
+            response[0] = (task.flags & (NEED_RESULT | ASYNC)) != 0 ? Status.ASYNC_RESULT : Status.ASYNC_ERROR;
+            response[1] = task.id;
+            System.arraycopy(result, 0, response, 2, result.length);
+            send(ASYNC_RESPONSE_ID, response);
+        } else {
+            tasks.remove(task.id);
+        }
+        schedule();
+    }
+    
+    private byte commandCode(Task task) {
+        return task.data.length > passwordLength ? task.data[passwordLength] : 0;
+    }
+    
+    private static boolean isError(byte[] result) {
+        return result.length > 1 && result[0] == Result.RESPONSE_CODE && result[1] != 0;
+    }
+    
+    private void send(byte id, byte[] payload) {
+        if (random.nextDouble() < lossRate) {
+            LOGGER.debug("Эмулятор потерял ответ в пакете {}", id & 0xFF);
+            return;
+        }
+        java.nio.ByteBuffer out = java.nio.ByteBuffer.allocate(FrameCodec.maxFrameLength(payload.length));
+        int len = FrameCodec.encode(id, java.nio.ByteBuffer.wrap(payload), out);
+        byte[] frame = Arrays.copyOf(out.array(), len);
+        subscribers.forEach(s -> s.accept(frame));
+    }
+    
+    /**
+     * Обработчик команд по умолчанию.
+     * 
+     * Отвечает на запрос состояния и запрос типа устройства, на остальные
+     * команды возвращает успешный результат. Может быть использован
+     * собственным обработчиком команд для команд, которые он не эмулирует.
+     *
+     * @param command команда без пароля
+     * @return ответ устройства
+     */
+    public static byte[] respond(byte[] command) {
+        if (command.length == 0) {
+            return new byte[] {Result.RESPONSE_CODE, 0, 0};
+        }
+        switch (command[0]) {
+            case 0x3F:
+                return deviceState();
+            case (byte) 0xA5:
+                return deviceType();
+            default:
+                return new byte[] {Result.RESPONSE_CODE, 0, 0};
+        }
+    }
+    
+    private static byte[] deviceState() {
+        LocalDateTime now = LocalDateTime.now();
+        byte[] response = new byte[30];
+        response[0] = 0x44;
+        response[1] = bcd(1);
+        response[2] = 1;
+        response[3] = bcd(now.getYear() % 100);
+        response[4] = bcd(now.getMonthValue());
+        response[5] = bcd(now.getDayOfMonth());
+        response[6] = bcd(now.getHour());
+        response[7] = bcd(now.getMinute());
+        response[8] = bcd(now.getSecond());
+        response[9] = 8; // есть бумага
+        response[13] = bcd(1);
+        response[14] = MODEL;
+        return response;
+    }
+    
+    private static byte[] deviceType() {
+        byte[] name = "АТОЛ Эмулятор".getBytes(ExternalCharset.INSTANCE);
+        byte[] response = new byte[11 + name.length];
+        response[1] = 3; // версия протокола
+        response[2] = 1; // ККТ
+        response[3] = MODEL;
+        System.arraycopy(name, 0, response, 11, name.length);
+        return response;
+    }
+    
+    private static byte bcd(int value) {
+        return (byte) ((value / 10) << 4 | value % 10);
+    }
+    
+    /**
+     * Задание в очереди эмулятора.
+     */
+    private static class Task {
+        
+        private final byte id;
+        
+        private final byte flags;
+        
+        private final byte[] data;
+        
+        private byte status = Status.PENDING;
+        
+        private byte[] result;
+
+        Task(byte id, byte flags, byte[] data) {
+            this.id = id;
+            this.flags = flags;
+            this.data = data;
+        }
+        
+    }
+    
+}
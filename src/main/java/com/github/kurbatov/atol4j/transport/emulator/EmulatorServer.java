@@ -0,0 +1,163 @@
+/*
+ * atol4j - клиентская библиотека для контрольной кассовой техники (ККТ) АТОЛ
+ * Copyright (C) 2019 Олег Викторович Курбатов
+ *
+ * Это программа является свободным программным обеспечением. Вы можете
+ * распространять и/или модифицировать её согласно условиям Стандартной
+ * Общественной Лицензии GNU, опубликованной Фондом Свободного Программного
+ * Обеспечения, версии 3 или, по Вашему желанию, любой более поздней версии.
+ *
+ * Эта программа распространяется в надежде, что она будет полезной, но БЕЗ
+ * ВСЯКИХ ГАРАНТИЙ, в том числе подразумеваемых гарантий ТОВАРНОГО
+ * СОСТОЯНИЯ ПРИ ПРОДАЖЕ и ГОДНОСТИ ДЛЯ ОПРЕДЕЛЁННОГО ПРИМЕНЕНИЯ. Смотрите
+ * Стандартную Общественную Лицензию GNU для получения дополнительной
+ * информации.
+ *
+ * Вы должны были получить копию Стандартной Общественной Лицензии GNU
+ * вместе с программой. В случае её отсутствия, смотрите
+ * http://www.gnu.org/licenses/.
+ */
+package com.github.kurbatov.atol4j.transport.emulator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Сетевой интерфейс эмулятора ККТ.
+ * 
+ * Принимает TCP-подключения, как это делает ККТ с интерфейсом Ethernet или
+ * WiFi, что позволяет подключиться к эмулятору при помощи
+ * {@link com.github.kurbatov.atol4j.transport.NetworkTransport}. Как и
+ * устройство, эмулятор обслуживает единственное активное подключение.
+ *
+ * @author Олег Курбатов &lt;o.v.kurbatov@gmail.com&gt;
+ */
+public class EmulatorServer {
+    
+    private final DeviceEmulator emulator;
+    
+    private final int port;
+    
+    private ServerSocket server;
+    
+    private Thread acceptor;
+    
+    private volatile Socket client;
+    
+    private static final Logger LOGGER = LoggerFactory.getLogger(EmulatorServer.class);
+
+    /**
+     * Создаёт сетевой интерфейс эмулятора, который принимает подключения на
+     * указанном порту локального узла.
+     *
+     * @param emulator эмулятор ККТ
+     * @param port порт (0 - выбрать свободный порт)
+     */
+    public EmulatorServer(DeviceEmulator emulator, int port) {
+        this.emulator = emulator;
+        this.port = port;
+    }
+    
+    /**
+     * Запускает эмулятор и начинает приём подключений.
+     */
+    public synchronized void start() {
+        try {
+            server = new ServerSocket(port, 1, InetAddress.getLoopbackAddress());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        emulator.start();
+        acceptor = new Thread(this::serve, "atol4j-EmulatorServer");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+    
+    /**
+     * Прекращает приём подключений, закрывает активное подключение и
+     * останавливает эмулятор.
+     */
+    public synchronized void stop() {
+        try {
+            server.close();
+            Socket s = client;
+            if (s != null) {
+                s.close();
+            }
+            acceptor.join(10000);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        emulator.stop();
+    }
+
+    /**
+     * Разрывает активное подключение, как это происходит при потере связи с
+     * устройством. Эмулятор продолжает выполнять задания и принимать
+     * подключения.
+     */
+    public void dropConnection() {
+        Socket s = client;
+        if (s != null) {
+            try {
+                s.close();
+            } catch (IOException e) {
+                LOGGER.debug("Не удалось закрыть подключение к эмулятору", e);
+            }
+        }
+    }
+
+    /**
+     * Получить порт, на котором эмулятор принимает подключения.
+     *
+     * @return номер порта
+     */
+    public int getPort() {
+        return server.getLocalPort();
+    }
+    
+    private void serve() {
+        while (!server.isClosed()) {
+            try (Socket socket = server.accept()) {
+                socket.setTcpNoDelay(true);
+                client = socket;
+                OutputStream out = socket.getOutputStream();
+                Consumer<byte[]> writer = b -> {
+                    try {
+                        out.write(b);
+                        out.flush();
+                    } catch (IOException e) {
+                        LOGGER.debug("Эмулятор не смог отправить данные клиенту", e);
+                    }
+                };
+                emulator.subscribe(writer);
+                try {
+                    InputStream in = socket.getInputStream();
+                    byte[] buf = new byte[1024];
+                    for (int n = in.read(buf); n > -1; n = in.read(buf)) {
+                        emulator.receive(Arrays.copyOf(buf, n));
+                    }
+                } finally {
+                    emulator.unsubscribe(writer);
+                    client = null;
+                }
+            } catch (SocketException e) {
+                LOGGER.debug("Подключение к эмулятору закрыто", e);
+            } catch (IOException e) {
+                LOGGER.warn("Ошибка сетевого интерфейса эмулятора", e);
+            }
+        }
+    }
+    
+}
@@ -0,0 +1,178 @@
+/*
+ * atol4j - клиентская библиотека для контрольной кассовой техники (ККТ) АТОЛ
+ * Copyright (C) 2019 Олег Викторович Курбатов
+ *
+ * Это программа является свободным программным обеспечением. Вы можете
+ * распространять и/или модифицировать её согласно условиям Стандартной
+ * Общественной Лицензии GNU, опубликованной Фондом Свободного Программного
+ * Обеспечения, версии 3 или, по Вашему желанию, любой более поздней версии.
+ *
+ * Эта программа распространяется в надежде, что она будет полезной, но БЕЗ
+ * ВСЯКИХ ГАРАНТИЙ, в том числе подразумеваемых гарантий ТОВАРНОГО
+ * СОСТОЯНИЯ ПРИ ПРОДАЖЕ и ГОДНОСТИ ДЛЯ ОПРЕДЕЛЁННОГО ПРИМЕНЕНИЯ. Смотрите
+ * Стандартную Общественную Лицензию GNU для получения дополнительной
+ * информации.
+ *
+ * Вы должны были получить копию Стандартной Общественной Лицензии GNU
+ * вместе с программой. В случае её отсутствия, смотрите
+ * http://www.gnu.org/licenses/.
+ */
+package com.github.kurbatov.atol4j.transport.emulator;
+
+import com.github.kurbatov.atol4j.transport.Transport;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * Транспорт, который передаёт данные эмулятору ККТ в пределах процесса.
+ * 
+ * Подключение транспорта запускает эмулятор, отключение - останавливает.
+ * Данные от эмулятора передаются подписчикам транспорта, а если подписчиков
+ * нет - накапливаются для чтения методами {@code read}.
+ * 
+ * Эмулятор поддерживает только протокол обмена нижнего уровня версии 3.
+ *
+ * @author Олег Курбатов &lt;o.v.kurbatov@gmail.com&gt;
+ */
+public class EmulatorTransport implements Transport {
+    
+    private final DeviceEmulator emulator;
+    
+    private final Set<Consumer<byte[]>> subscribers = new CopyOnWriteArraySet<>();
+    
+    private final Consumer<byte[]> receiver = this::receive;
+    
+    private final Object inboxLock = new Object();
+    private byte[] inbox = new byte[256];
+    private int inboxSize;
+
+    /**
+     * Создаёт транспорт к новому эмулятору с настройками по умолчанию.
+     */
+    public EmulatorTransport() {
+        this(new DeviceEmulator());
+    }
+
+    /**
+     * Создаёт транспорт к указанному эмулятору.
+     *
+     * @param emulator эмулятор ККТ
+     */
+    public EmulatorTransport(DeviceEmulator emulator) {
+        this.emulator = emulator;
+    }
+
+    /**
+     * Получить эмулятор, с которым работает этот транспорт.
+     *
+     * @return эмулятор ККТ
+     */
+    public DeviceEmulator getEmulator() {
+        return emulator;
+    }
+
+    @Override
+    public void connect() {
+        emulator.subscribe(receiver);
+        emulator.start();
+    }
+
+    @Override
+    public void disconnect() {
+        emulator.stop();
+        emulator.unsubscribe(receiver);
+    }
+
+    @Override
+    public void write(byte[] b) {
+        emulator.receive(b);
+    }
+
+    @Override
+    public byte[] read() {
+        synchronized (inboxLock) {
+            return inboxSize == 0 ? new byte[0] : take(inboxSize);
+        }
+    }
+
+    @Override
+    public byte[] read(int count) {
+        synchronized (inboxLock) {
+            try {
+                while (inboxSize < count) {
+                    inboxLock.wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Чтение данных прервано", e);
+            }
+            return take(count);
+        }
+    }
+
+    @Override
+    public byte[] read(int count, int timeout) throws TimeoutException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        synchronized (inboxLock) {
+            try {
+                long remaining;
+                while (inboxSize < count) {
+                    remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        throw new TimeoutException(String.format("За %d мс получено %d байт из %d", timeout, inboxSize, count));
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(inboxLock, remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Чтение данных прервано", e);
+            }
+            return take(count);
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<byte[]> consumer) {
+        subscribers.add(consumer);
+    }
+    
+    /**
+     * Передаёт данные от эмулятора подписчикам или накапливает их для чтения,
+     * если подписчиков нет.
+     *
+     * @param data данные от эмулятора
+     */
+    private void receive(byte[] data) {
+        if (!subscribers.isEmpty()) {
+            subscribers.forEach(s -> s.accept(data));
+            return;
+        }
+        synchronized (inboxLock) {
+            if (inbox.length - inboxSize < data.length) {
+                inbox = Arrays.copyOf(inbox, Math.max(inbox.length << 1, inboxSize + data.length));
+            }
+            System.arraycopy(data, 0, inbox, inboxSize, data.length);
+            inboxSize += data.length;
+            inboxLock.notifyAll();
+        }
+    }
+    
+    /**
+     * Извлекает данные из начала накопленных данных. Вызывается под
+     * блокировкой накопленных данных.
+     *
+     * @param count количество байт
+     * @return данные
+     */
+    private byte[] take(int count) {
+        byte[] result = Arrays.copyOf(inbox, count);
+        System.arraycopy(inbox, count, inbox, 0, inboxSize - count);
+        inboxSize -= count;
+        return result;
+    }
+    
+}
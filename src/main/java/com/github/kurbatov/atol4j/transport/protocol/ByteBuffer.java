@@ -22,24 +22,52 @@ package com.github.kurbatov.atol4j.transport.protocol;
 /**
  * Буфер бинарных данных, который позволяет добавлять данные в конец и получать
  * их из начала.
+ * 
+ * Данные хранятся в непрерывном участке массива. Когда данные достигают конца
+ * массива, необработанный остаток переносится в начало массива, только если он
+ * занимает не больше половины объёма, иначе объём удваивается. Поэтому
+ * каждый байт переносится в среднем не больше одного раза, а извлекаемые
+ * данные всегда доступны {@link #slice(int) без копирования}. Буфер может
+ * размещаться в куче или в прямой памяти.
+ * 
+ * Буфер не потокобезопасен: данные в него добавляет и извлекает один поток
+ * (например, {@link com.github.kurbatov.atol4j.transport.protocol.v3.FrameParser
+ * разборщик пакетов}).
  *
  * @author Олег Курбатов &lt;o.v.kurbatov@gmail.com&gt;
  */
 public class ByteBuffer {
+    
+    private final boolean direct;
+    
+    private java.nio.ByteBuffer storage;
 
     private byte[] buffer;
 
-    private volatile int head;
+    private int head;
 
-    private volatile int tail;
+    private int tail;
 
     /**
-     * Создаёт буфер с заданным начальным объёмом.
+     * Создаёт буфер в куче с заданным начальным объёмом.
      *
      * @param initialCapacity начальный объём
      */
     public ByteBuffer(int initialCapacity) {
-        buffer = new byte[initialCapacity];
+        this(initialCapacity, false);
+    }
+
+    /**
+     * Создаёт буфер с заданным начальным объёмом.
+     *
+     * @param initialCapacity начальный объём
+     * @param direct true - буфер размещается в прямой памяти, false - буфер
+     * размещается в куче
+     */
+    public ByteBuffer(int initialCapacity, boolean direct) {
+        this.direct = direct;
+        storage = allocate(Math.max(initialCapacity, 1));
+        buffer = direct ? null : storage.array();
     }
 
     /**
@@ -49,9 +77,34 @@ public class ByteBuffer {
      * @param pos индекс стартового элемента
      * @param len длинна блока данных
      */
-    public synchronized void append(byte[] bytes, int pos, int len) {
+    public void append(byte[] bytes, int pos, int len) {
+        ensure(len);
+        if (buffer != null) {
+            System.arraycopy(bytes, pos, buffer, tail, len);
+        } else {
+            java.nio.ByteBuffer view = storage.duplicate();
+            view.position(tail);
+            view.put(bytes, pos, len);
+        }
+        tail += len;
+    }
+
+    /**
+     * Добавляет данные указанного буфера (от позиции до предела) в конец этого
+     * буфера. Позиция указанного буфера сдвигается до предела.
+     *
+     * @param data данные для добавления в конец буфера
+     */
+    public void append(java.nio.ByteBuffer data) {
+        int len = data.remaining();
         ensure(len);
-        System.arraycopy(bytes, pos, buffer, tail, len);
+        if (buffer != null) {
+            data.get(buffer, tail, len);
+        } else {
+            java.nio.ByteBuffer view = storage.duplicate();
+            view.position(tail);
+            view.put(data);
+        }
         tail += len;
     }
 
@@ -71,7 +124,7 @@ public class ByteBuffer {
      * @return значение в указанной позиции
      */
     public byte get(int i) {
-        return buffer[head + i];
+        return buffer != null ? buffer[head + i] : storage.get(head + i);
     }
 
     /**
@@ -87,7 +140,7 @@ public class ByteBuffer {
         if (isEmpty()) {
             throw new IndexOutOfBoundsException("Attempt to take a byte from an empty buffer");
         }
-        byte result = buffer[head];
+        byte result = get(0);
         skip(1);
         return result;
     }
@@ -108,11 +161,39 @@ public class ByteBuffer {
             throw new IndexOutOfBoundsException(String.format("Attempt to take %d bytes from buffer of %d", len, size()));
         }
         byte[] result = new byte[len];
-        System.arraycopy(buffer, head, result, 0, len);
+        if (buffer != null) {
+            System.arraycopy(buffer, head, result, 0, len);
+        } else {
+            java.nio.ByteBuffer view = storage.duplicate();
+            view.position(head);
+            view.get(result);
+        }
         skip(len);
         return result;
     }
     
+    /**
+     * Получить представление указанного количества байт из начала буфера без
+     * копирования данных.
+     * 
+     * Представление доступно только для чтения и действительно до следующего
+     * изменения буфера. Данные остаются в буфере: чтобы извлечь их, нужно
+     * вызвать {@link #skip(int)}.
+     *
+     * @param len количество байт
+     * @return представление данных из начала буфера
+     * @throws IndexOutOfBoundsException при попытке получить больше байт, чем
+     * хранится в буфере
+     */
+    public java.nio.ByteBuffer slice(int len) {
+        if (len < 0 || len > size()) {
+            throw new IndexOutOfBoundsException(String.format("Attempt to slice %d bytes from buffer of %d", len, size()));
+        }
+        java.nio.ByteBuffer view = storage.asReadOnlyBuffer();
+        view.limit(head + len).position(head);
+        return view.slice();
+    }
+    
     /**
      * Пропустить заданное количество байт с начала буфера.
      *
@@ -149,14 +230,20 @@ public class ByteBuffer {
      * @return индекс искомого байта.
      */
     public int find(byte b, int fromIndex) {
-        int result = -1;
-        for (int i = head + fromIndex; i < tail; i++) {
-            if (buffer[i] == b) {
-                result = i - head;
-                break;
+        if (buffer != null) {
+            for (int i = head + fromIndex; i < tail; i++) {
+                if (buffer[i] == b) {
+                    return i - head;
+                }
+            }
+        } else {
+            for (int i = head + fromIndex; i < tail; i++) {
+                if (storage.get(i) == b) {
+                    return i - head;
+                }
             }
         }
-        return result;
+        return -1;
     }
 
     /**
@@ -176,18 +263,54 @@ public class ByteBuffer {
     public boolean isEmpty() {
         return size() == 0;
     }
+    
+    /**
+     * Узнать текущий объём буфера.
+     *
+     * @return объём буфера в байтах
+     */
+    public int capacity() {
+        return storage.capacity();
+    }
+    
+    /**
+     * Узнать, размещён ли буфер в прямой памяти.
+     *
+     * @return true - буфер размещён в прямой памяти, false - в куче
+     */
+    public boolean isDirect() {
+        return direct;
+    }
 
     private void ensure(int capasity) {
-        if (buffer.length - size() < capasity) {
-            byte[] tmp = new byte[buffer.length + capasity * 2];
-            System.arraycopy(buffer, head, tmp, 0, size());
-            buffer = tmp;
-            tail = size();
-            head = 0;
-        } else if (buffer.length - tail < capasity) {
-            System.arraycopy(buffer, head, buffer, 0, size());
-            tail = size();
-            head = 0;
+        int capacity = storage.capacity();
+        if (capacity - tail >= capasity) {
+            return;
+        }
+        int size = size();
+        java.nio.ByteBuffer target = storage;
+        if (size + capasity > capacity || size > capacity / 2) {
+            // перенос большого остатка в начало массива освободил бы мало
+            // места, поэтому объём удваивается
+            int required = size + capasity;
+            int grown = capacity << 1;
+            while (grown < required && grown > 0) {
+                grown <<= 1;
+            }
+            target = allocate(grown > 0 ? grown : required);
         }
+        java.nio.ByteBuffer remaining = storage.duplicate();
+        remaining.limit(tail).position(head);
+        target.clear();
+        target.put(remaining);
+        storage = target;
+        buffer = direct ? null : storage.array();
+        head = 0;
+        tail = size;
     }
+    
+    private java.nio.ByteBuffer allocate(int capacity) {
+        return direct ? java.nio.ByteBuffer.allocateDirect(capacity) : java.nio.ByteBuffer.allocate(capacity);
+    }
+    
 }
@@ -0,0 +1,64 @@
+/*
+ * atol4j - клиентская библиотека для контрольной кассовой техники (ККТ) АТОЛ
+ * Copyright (C) 2019 Олег Викторович Курбатов
+ *
+ * Это программа является свободным программным обеспечением. Вы можете
+ * распространять и/или модифицировать её согласно условиям Стандартной
+ * Общественной Лицензии GNU, опубликованной Фондом Свободного Программного
+ * Обеспечения, версии 3 или, по Вашему желанию, любой более поздней версии.
+ *
+ * Эта программа распространяется в надежде, что она будет полезной, но БЕЗ
+ * ВСЯКИХ ГАРАНТИЙ, в том числе подразумеваемых гарантий ТОВАРНОГО
+ * СОСТОЯНИЯ ПРИ ПРОДАЖЕ и ГОДНОСТИ ДЛЯ ОПРЕДЕЛЁННОГО ПРИМЕНЕНИЯ. Смотрите
+ * Стандартную Общественную Лицензию GNU для получения дополнительной
+ * информации.
+ *
+ * Вы должны были получить копию Стандартной Общественной Лицензии GNU
+ * вместе с программой. В случае её отсутствия, смотрите
+ * http://www.gnu.org/licenses/.
+ */
+package com.github.kurbatov.atol4j.transport.protocol;
+
+/**
+ * Режим выполнения задания устройством.
+ * 
+ * Режим определяет флаги, с которыми задание добавляется в очередь заданий
+ * устройства. Протоколы, которые не поддерживают очередь заданий, режим
+ * игнорируют.
+ *
+ * @author Олег Курбатов &lt;o.v.kurbatov@gmail.com&gt;
+ */
+public enum ExecutionMode {
+    
+    /**
+     * Задание отправляется устройству в порядке очереди и занимает место в
+     * окне до получения результата. Ошибка выполнения задания останавливает
+     * выполнение последующих заданий устройства.
+     */
+    QUEUED,
+    
+    /**
+     * Задание отправляется устройству сразу, минуя очередь заданий,
+     * ожидающих отправки, и не занимает места в окне. Результат передаётся
+     * устройством асинхронно. Подходит для запросов состояния, которые не
+     * должны ждать завершения длительной печати на стороне клиента.
+     */
+    ASYNC,
+    
+    /**
+     * Задание отправляется устройству в порядке очереди, но ошибка его
+     * выполнения не останавливает выполнение последующих заданий устройства.
+     */
+    IGNORE_ERRORS,
+    
+    /**
+     * Задание отправляется устройству в порядке очереди без запроса
+     * результата. Устройство сообщает только об ошибке выполнения задания, а
+     * успешное выполнение подтверждается результатом следующего задания.
+     * Ответ на успешно выполненное задание пуст. Подходит для длинных
+     * последовательностей команд печати, где результат каждой команды не
+     * нужен.
+     */
+    NO_RESULT
+    
+}
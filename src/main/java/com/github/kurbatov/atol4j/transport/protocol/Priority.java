@@ -0,0 +1,49 @@
+/*
+ * atol4j - клиентская библиотека для контрольной кассовой техники (ККТ) АТОЛ
+ * Copyright (C) 2019 Олег Викторович Курбатов
+ *
+ * Это программа является свободным программным обеспечением. Вы можете
+ * распространять и/или модифицировать её согласно условиям Стандартной
+ * Общественной Лицензии GNU, опубликованной Фондом Свободного Программного
+ * Обеспечения, версии 3 или, по Вашему желанию, любой более поздней версии.
+ *
+ * Эта программа распространяется в надежде, что она будет полезной, но БЕЗ
+ * ВСЯКИХ ГАРАНТИЙ, в том числе подразумеваемых гарантий ТОВАРНОГО
+ * СОСТОЯНИЯ ПРИ ПРОДАЖЕ и ГОДНОСТИ ДЛЯ ОПРЕДЕЛЁННОГО ПРИМЕНЕНИЯ. Смотрите
+ * Стандартную Общественную Лицензию GNU для получения дополнительной
+ * информации.
+ *
+ * Вы должны были получить копию Стандартной Общественной Лицензии GNU
+ * вместе с программой. В случае её отсутствия, смотрите
+ * http://www.gnu.org/licenses/.
+ */
+package com.github.kurbatov.atol4j.transport.protocol;
+
+/**
+ * Содержит определения приоритетов сообщений.
+ * 
+ * Приоритет не меняет порядок отправки сообщений устройству. Он определяет,
+ * какие сообщения будут вытеснены из переполненной очереди в первую очередь.
+ * Допустимо использовать любое целое число: чем больше число, тем выше
+ * приоритет.
+ *
+ * @author Олег Курбатов &lt;o.v.kurbatov@gmail.com&gt;
+ */
+public interface Priority {
+    
+    /**
+     * Низкий приоритет (например, служебная печать)
+     */
+    static final int LOW = -10;
+    
+    /**
+     * Обычный приоритет
+     */
+    static final int NORMAL = 0;
+    
+    /**
+     * Высокий приоритет (например, формирование чека)
+     */
+    static final int HIGH = 10;
+    
+}
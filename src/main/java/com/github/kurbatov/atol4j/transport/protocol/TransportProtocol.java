@@ -39,6 +39,58 @@ public interface TransportProtocol {
      */
     CompletableFuture<byte[]> send(byte[] message);
     
+    /**
+     * Отправляет сообщение устройству с указанным приоритетом и возвращает
+     * ответ.
+     *
+     * Приоритет учитывается протоколами, которые ограничивают очередь
+     * сообщений, ожидающих отправки. Остальные протоколы его игнорируют.
+     *
+     * @param message сообщение
+     * @param priority приоритет сообщения (см. {@link Priority})
+     * @return ответ устройства
+     */
+    default CompletableFuture<byte[]> send(byte[] message, int priority) {
+        return send(message);
+    }
+    
+    /**
+     * Отправляет сообщение устройству с указанным приоритетом и
+     * максимальным временем выполнения и возвращает ответ.
+     *
+     * Протоколы, которые отслеживают время выполнения заданий, завершают ответ
+     * исключением {@link java.util.concurrent.TimeoutException}, если
+     * устройство не вернуло результат за указанное время. Остальные протоколы
+     * время выполнения игнорируют.
+     *
+     * @param message сообщение
+     * @param priority приоритет сообщения (см. {@link Priority})
+     * @param timeout максимальное время выполнения в миллисекундах (см.
+     * {@link CommandTimeout})
+     * @return ответ устройства
+     */
+    default CompletableFuture<byte[]> send(byte[] message, int priority, int timeout) {
+        return send(message, priority);
+    }
+    
+    /**
+     * Отправляет сообщение устройству с указанным приоритетом, максимальным
+     * временем выполнения и режимом выполнения и возвращает ответ.
+     * 
+     * Протоколы, которые не поддерживают очередь заданий устройства, режим
+     * выполнения игнорируют.
+     *
+     * @param message сообщение
+     * @param priority приоритет сообщения (см. {@link Priority})
+     * @param timeout максимальное время выполнения в миллисекундах (см.
+     * {@link CommandTimeout})
+     * @param mode режим выполнения
+     * @return ответ устройства
+     */
+    default CompletableFuture<byte[]> send(byte[] message, int priority, int timeout, ExecutionMode mode) {
+        return send(message, priority, timeout);
+    }
+    
     /**
      * Устанавливает связь с устройством.
      */
@@ -19,6 +19,8 @@
  */
 package com.github.kurbatov.atol4j.transport.protocol.v2;
 
+import com.github.kurbatov.atol4j.transport.protocol.CommandTimeout;
+
 /**
  * Содержит определения величины задержек в миллисекундах.
  *
@@ -26,34 +28,31 @@ package com.github.kurbatov.atol4j.transport.protocol.v2;
  */
 public interface Timeout {
     
+    /** Ожидание подтверждения готовности устройства к приёму (ACK на ENQ). */
     static final int T1 = 500;
+    /** Ожидание начала пакета ответа после подтверждения готовности. */
     static final int T2 = 2000;
+    /** Ожидание повторной передачи пакета ответа после NAK. */
     static final int T3 = 500;
+    /** Ожидание подтверждения приёма пакета (ACK на пакет). */
     static final int T4 = 500;
+    /** Ожидание начала передачи ответа (ENQ от устройства). */
     static final int T5 = 10000;
+    /** Ожидание следующего байта пакета ответа. */
     static final int T6 = 500;
+    /** Пауза при одновременной попытке передачи. */
     static final int T7 = 500;
+    /** Ожидание окончания передачи (EOT). */
     static final int T8 = 1000;
     
+    /**
+     * Получить время ожидания ответа на указанную команду.
+     *
+     * @param command код команды
+     * @return таймаут T5 в миллисекундах
+     */
     static int T5(byte command) {
-        int result;
-        switch(command) {
-            case 0x6B: result = 10000; break;
-            case (byte)0x8D:
-            case (byte)0x8E:
-            case (byte)0xA7:
-            case 0x4A: result = 20000; break;
-            case 0x5A: result = 40000; break;
-            case (byte)0x91: result = 45000; break;
-            case (byte)0xA6:
-            case (byte)0xE6:
-            case (byte)0xEA:
-            case (byte)0xEB: result = 50000; break;
-            case (byte)0xA8:
-            case (byte)0xAB: result = 120000; break;
-            default: result = T5;
-        }
-        return result;
+        return CommandTimeout.of(command);
     }
     
 }
@@ -19,10 +19,15 @@
  */
 package com.github.kurbatov.atol4j.transport.protocol.v2;
 
+import com.github.kurbatov.atol4j.transport.EventLoop;
+import com.github.kurbatov.atol4j.transport.HashedWheelTimer;
+import com.github.kurbatov.atol4j.transport.SerialExecutor;
 import com.github.kurbatov.atol4j.transport.Transport;
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import com.github.kurbatov.atol4j.transport.protocol.TransportProtocol;
@@ -30,6 +35,12 @@ import static com.github.kurbatov.atol4j.transport.protocol.v2.Token.*;
 
 /**
  * Строит сообщения для ККМ в соответствии с протоколом нижнего уровня v2.
+ * 
+ * Обмен сообщениями реализован как конечный автомат, который переходит из
+ * состояния в состояние по мере поступления данных от устройства и истечения
+ * таймаутов T1-T8. Поток, отправляющий сообщение, не блокируется: ответ
+ * завершается в потоках цикла событий. Сообщения передаются устройству строго
+ * по одному в порядке отправки.
  *
  * @deprecated Эта версия протокола не используется новыми устройствами
  * и сохранена в целях совместимости со старыми.
@@ -39,12 +50,39 @@ import static com.github.kurbatov.atol4j.transport.protocol.v2.Token.*;
 public class TransportProtocolV2 implements TransportProtocol {
 
     private final Transport transport;
+    
+    private final SerialExecutor executor;
+    
+    private final HashedWheelTimer timer;
+    
+    // состояние автомата изменяется только в потоке исполнителя
+    
+    private final Deque<Task> queue = new ArrayDeque<>();
+    
+    private byte[] response = new byte[256];
+    
+    private int length;
+    
+    private Task task;
+    
+    private State state = State.IDLE;
+    
+    private int attempts;
+    
+    private int crc;
+    
+    private int step;
+    
+    private HashedWheelTimer.Handle deadline;
 
     private static final byte[] EMPTY = new byte[0];
     private static final byte[] ENQ_MSG = new byte[] {ENQ};
     private static final byte[] ACK_MSG = new byte[] {ACK};
     private static final byte[] NAK_MSG = new byte[] {NAK};
     private static final byte[] EOT_MSG = new byte[] {EOT};
+    
+    private static final int ENQ_ATTEMPTS = 5;
+    private static final int FRAME_ATTEMPTS = 10;
 
     private static final Logger LOGGER = LoggerFactory.getLogger(TransportProtocolV2.class);
 
@@ -59,7 +97,26 @@ public class TransportProtocolV2 implements TransportProtocol {
      * @see com.github.kurbatov.atol4j.transport.protocol.v3.TransportProtocolV3
      */
     public TransportProtocolV2(Transport transport) {
+        this(transport, EventLoop.getDefault());
+    }
+
+    /**
+     * Создаёт протокол нижнего уровня версии 2, который обрабатывает данные
+     * от устройства и таймауты в потоках указанного цикла событий.
+     *
+     * @param transport транспорт, который осуществляет доставку сообщений между
+     * клиентом и устройством
+     * @param loop цикл событий, в потоках которого обрабатываются данные от
+     * устройства и таймауты
+     * @deprecated Эта версия протокола не используется новыми устройствами
+     * и сохранена в целях совместимости со старыми.
+     * @see com.github.kurbatov.atol4j.transport.protocol.v3.TransportProtocolV3
+     */
+    public TransportProtocolV2(Transport transport, EventLoop loop) {
         this.transport = transport;
+        this.executor = loop.newSerialExecutor();
+        this.timer = loop.getTimer();
+        transport.subscribe(bytes -> executor.execute(() -> receive(bytes)));
     }
 
     @Override
@@ -69,80 +126,313 @@ public class TransportProtocolV2 implements TransportProtocol {
 
     @Override
     public void stop() {
+        try {
+            executor.awaitIdle(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
         transport.disconnect();
     }
     
     @Override
     public CompletableFuture<byte[]> send(byte[] message) {
-        try {
-            byte answer = 0;
-            for (int i = 0; i < 5 && answer != ACK; i++) {
-                transport.write(ENQ_MSG);
-                answer = transport.read(1, Timeout.T1)[0];
-                if (answer == ENQ) {
-                    try {
-                        Thread.sleep(Timeout.T7);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        throw new RuntimeException("Выполнение прервано в момент паузы при конфликте", e);
-                    }
-                }
-            }
-            if (answer != ACK) {
-                transport.write(EOT_MSG);
-                throw new RuntimeException("Устройство не готово к приёму сообщений");
-            }
-            answer = NAK;
-            byte[] frame = wrap(message);
-            for (int i = 0; i < 10 && answer == NAK; i++) {
-                transport.write(frame);
-                answer = transport.read(1, Timeout.T4)[0];
-            }
-            if (answer != ACK) {
-                throw new RuntimeException("Устройство не подтвердило приём сообщения: " + Arrays.toString(frame));
+        return send(message, 0, Timeout.T5(message[0]));
+    }
+
+    @Override
+    public CompletableFuture<byte[]> send(byte[] message, int priority) {
+        return send(message);
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * Максимальное время выполнения используется как таймаут T5 ожидания
+     * ответа устройства. Если устройство не начало передачу ответа за это
+     * время, ответ завершается пустым массивом.
+     */
+    @Override
+    public CompletableFuture<byte[]> send(byte[] message, int priority, int timeout) {
+        Task t = new Task(message, timeout);
+        executor.execute(() -> {
+            queue.add(t);
+            if (state == State.IDLE) {
+                next();
             }
-            transport.write(EOT_MSG);
-            for (int i = 0; i < 5 && answer != ENQ; i++) {
-                try {
-                    answer = transport.read(1, Timeout.T5(message[0]))[0];
-                } catch (TimeoutException e) {
-                    return CompletableFuture.completedFuture(EMPTY); // считаем, что нет ответа
+        });
+        return t.result;
+    }
+    
+    /**
+     * Начинает передачу следующего сообщения из очереди.
+     */
+    private void next() {
+        task = queue.poll();
+        if (task == null) {
+            state = State.IDLE;
+            cancel();
+            return;
+        }
+        attempts = 0;
+        enquire();
+    }
+    
+    private void enquire() {
+        attempts++;
+        write(ENQ_MSG, State.ENQUIRY, Timeout.T1);
+    }
+    
+    private void transmit() {
+        attempts++;
+        write(wrap(task.message), State.TRANSMIT, Timeout.T4);
+    }
+    
+    /**
+     * Обрабатывает данные, полученные от устройства.
+     *
+     * @param bytes данные
+     */
+    private void receive(byte[] bytes) {
+        for (byte b : bytes) {
+            receive(b);
+        }
+    }
+    
+    private void receive(byte b) {
+        switch (state) {
+            case ENQUIRY:
+                if (b == ACK) {
+                    attempts = 0;
+                    transmit();
+                } else if (b == ENQ) {
+                    // устройство тоже пытается начать передачу
+                    await(State.COLLISION, Timeout.T7);
+                } else if (b == NAK) {
+                    retryEnquiry();
                 }
-                if (answer != ENQ) {
-                    transport.write(NAK_MSG);
+                break;
+            case TRANSMIT:
+                if (b == ACK) {
+                    attempts = 0;
+                    write(EOT_MSG, State.AWAIT_RESPONSE, task.timeout);
+                } else if (b == NAK) {
+                    retryFrame();
                 }
-            }
-            transport.write(ACK_MSG);
-            byte[] response = EMPTY;
-            for (int i = 0; i < 10; i++) {
-                while (response == EMPTY || response[response.length - 1] != ETX) {
-                    byte[] part = transport.read();
-                    if (part != null) {
-                        byte[] tmp = new byte[response.length + part.length];
-                        if (response != EMPTY) {
-                            System.arraycopy(response, 0, tmp, 0, response.length);
-                        }
-                        System.arraycopy(part, 0, tmp, response.length, part.length);
-                        response = tmp;
-                    }
+                break;
+            case AWAIT_RESPONSE:
+                if (b == ENQ) {
+                    write(ACK_MSG, State.AWAIT_FRAME, Timeout.T2);
                 }
-                if (!check(response)) {
-                    transport.write(NAK_MSG);
-                    response = EMPTY;
+                break;
+            case AWAIT_FRAME:
+                if (b == ENQ) {
+                    // подтверждение готовности не дошло до устройства
+                    write(ACK_MSG, State.AWAIT_FRAME, Timeout.T2);
+                } else if (b == STX) {
+                    length = 0;
+                    crc = 0;
+                    await(State.FRAME, Timeout.T6);
                 }
+                break;
+            case FRAME:
+                crc ^= b;
+                if (b == DLE) {
+                    await(State.ESCAPE, Timeout.T6);
+                } else if (b == ETX) {
+                    await(State.CHECKSUM, Timeout.T6);
+                } else {
+                    collect(b);
+                    await(State.FRAME, Timeout.T6);
+                }
+                break;
+            case ESCAPE:
+                crc ^= b;
+                collect(b);
+                await(State.FRAME, Timeout.T6);
+                break;
+            case CHECKSUM:
+                if ((byte) crc == b) {
+                    byte[] result = Arrays.copyOf(response, length);
+                    write(ACK_MSG, State.AWAIT_EOT, Timeout.T8);
+                    task.result.complete(result);
+                } else {
+                    LOGGER.debug("Неверная контрольная сумма ответа устройства");
+                    retryResponse();
+                }
+                break;
+            case AWAIT_EOT:
+                if (b == EOT) {
+                    next();
+                }
+                break;
+            default:
+                LOGGER.debug("Получены неожиданные данные от устройства: {}", b);
+        }
+    }
+    
+    /**
+     * Обрабатывает истечение таймаута в текущем состоянии.
+     */
+    private void expire() {
+        switch (state) {
+            case ENQUIRY:
+                retryEnquiry();
+                break;
+            case COLLISION:
+                enquire();
+                break;
+            case TRANSMIT:
+                retryFrame();
+                break;
+            case AWAIT_RESPONSE:
+                // считаем, что нет ответа
+                task.result.complete(EMPTY);
+                next();
+                break;
+            case AWAIT_FRAME:
+            case FRAME:
+            case ESCAPE:
+            case CHECKSUM:
+                retryResponse();
+                break;
+            case AWAIT_EOT:
+                LOGGER.warn("Устройство не завершило передачу ответа");
+                next();
+                break;
+            default:
+        }
+    }
+    
+    private void retryEnquiry() {
+        if (attempts < ENQ_ATTEMPTS) {
+            enquire();
+        } else {
+            abort("Устройство не готово к приёму сообщений");
+        }
+    }
+    
+    private void retryFrame() {
+        if (attempts < FRAME_ATTEMPTS) {
+            transmit();
+        } else {
+            abort("Устройство не подтвердило приём сообщения");
+        }
+    }
+    
+    private void retryResponse() {
+        if (++attempts < FRAME_ATTEMPTS) {
+            write(NAK_MSG, State.AWAIT_FRAME, Timeout.T3);
+        } else {
+            abort("Не удалось прочитать ответ от устройства.");
+        }
+    }
+    
+    /**
+     * Прерывает передачу текущего сообщения и переходит к следующему.
+     *
+     * @param reason причина
+     */
+    private void abort(String reason) {
+        try {
+            transport.write(EOT_MSG);
+        } catch (RuntimeException e) {
+            LOGGER.debug("Не удалось завершить передачу", e);
+        }
+        task.result.completeExceptionally(new RuntimeException(reason));
+        next();
+    }
+    
+    /**
+     * Отправляет данные устройству и переходит в указанное состояние.
+     *
+     * @param bytes данные
+     * @param next следующее состояние
+     * @param timeout таймаут следующего состояния в миллисекундах
+     */
+    private void write(byte[] bytes, State next, int timeout) {
+        await(next, timeout);
+        try {
+            transport.write(bytes);
+        } catch (RuntimeException e) {
+            cancel();
+            task.result.completeExceptionally(new RuntimeException("Ошибка при попытке отправить сообщение устройству", e));
+            next();
+        }
+    }
+    
+    /**
+     * Переходит в указанное состояние и запускает его таймаут.
+     *
+     * @param next следующее состояние
+     * @param timeout таймаут в миллисекундах
+     */
+    private void await(State next, int timeout) {
+        cancel();
+        state = next;
+        int current = ++step;
+        deadline = timer.schedule(() -> executor.execute(() -> {
+            if (step == current) {
+                expire();
             }
-            if (response == EMPTY) {
-                throw new RuntimeException("Не удалось прочитать ответ от устройства.");
-            }
-            transport.write(ACK_MSG);
-            answer = transport.read(1)[0];
-            if (answer != EOT) {
-                LOGGER.warn("Неожиданный конец передачи данных: {}", answer);
-            }
-            return CompletableFuture.completedFuture(unwrap(response));
-        } catch (TimeoutException ex) {
-            throw new RuntimeException("Ошибка при попытке отправить сообщение устройству", ex);
+        }), timeout, TimeUnit.MILLISECONDS);
+    }
+    
+    private void collect(byte b) {
+        if (length == response.length) {
+            response = Arrays.copyOf(response, length << 1);
+        }
+        response[length++] = b;
+    }
+    
+    private void cancel() {
+        if (deadline != null) {
+            deadline.cancel();
+            deadline = null;
+        }
+    }
+    
+    /**
+     * Состояние обмена сообщением с устройством.
+     */
+    private enum State {
+        /** Нет сообщений для передачи. */
+        IDLE,
+        /** Ожидание готовности устройства к приёму (T1). */
+        ENQUIRY,
+        /** Пауза при одновременной попытке передачи (T7). */
+        COLLISION,
+        /** Ожидание подтверждения приёма сообщения (T4). */
+        TRANSMIT,
+        /** Ожидание начала передачи ответа (T5). */
+        AWAIT_RESPONSE,
+        /** Ожидание начала пакета ответа (T2, T3 при повторе). */
+        AWAIT_FRAME,
+        /** Приём данных пакета ответа (T6). */
+        FRAME,
+        /** Приём экранированного байта (T6). */
+        ESCAPE,
+        /** Приём контрольной суммы (T6). */
+        CHECKSUM,
+        /** Ожидание окончания передачи (T8). */
+        AWAIT_EOT
+    }
+    
+    /**
+     * Сообщение, ожидающее передачи устройству.
+     */
+    private static class Task {
+        
+        private final byte[] message;
+        
+        private final int timeout;
+        
+        private final CompletableFuture<byte[]> result = new CompletableFuture<>();
+
+        Task(byte[] message, int timeout) {
+            this.message = message;
+            this.timeout = timeout;
         }
+        
     }
 
     /**
@@ -0,0 +1,121 @@
+/*
+ * atol4j - клиентская библиотека для контрольной кассовой техники (ККТ) АТОЛ
+ * Copyright (C) 2019 Олег Викторович Курбатов
+ *
+ * Это программа является свободным программным обеспечением. Вы можете
+ * распространять и/или модифицировать её согласно условиям Стандартной
+ * Общественной Лицензии GNU, опубликованной Фондом Свободного Программного
+ * Обеспечения, версии 3 или, по Вашему желанию, любой более поздней версии.
+ *
+ * Эта программа распространяется в надежде, что она будет полезной, но БЕЗ
+ * ВСЯКИХ ГАРАНТИЙ, в том числе подразумеваемых гарантий ТОВАРНОГО
+ * СОСТОЯНИЯ ПРИ ПРОДАЖЕ и ГОДНОСТИ ДЛЯ ОПРЕДЕЛЁННОГО ПРИМЕНЕНИЯ. Смотрите
+ * Стандартную Общественную Лицензию GNU для получения дополнительной
+ * информации.
+ *
+ * Вы должны были получить копию Стандартной Общественной Лицензии GNU
+ * вместе с программой. В случае её отсутствия, смотрите
+ * http://www.gnu.org/licenses/.
+ */
+package com.github.kurbatov.atol4j.transport.protocol.v3;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Рассчитывает контрольную сумму пакетов протокола нижнего уровня версии 3.
+ * 
+ * Используется CRC-8 с полиномом X^8+X^5+X^4+X^0 (0x31) и начальным значением
+ * 0xFF. Расчёт ведётся по предварительно вычисленной таблице из 256 значений:
+ * один поиск в таблице на байт данных вместо восьми итераций с ветвлением.
+ *
+ * @author Олег Курбатов &lt;o.v.kurbatov@gmail.com&gt;
+ */
+public final class Crc8 {
+    
+    /**
+     * Начальное значение контрольной суммы.
+     */
+    public static final int INIT = 0xFF;
+    
+    /**
+     * Полином: X^8+X^5+X^4+X^0
+     */
+    public static final int POLY = 0x31;
+    
+    private static final byte[] TABLE = new byte[256];
+    
+    static {
+        for (int i = 0; i < TABLE.length; i++) {
+            int crc = i;
+            for (int k = 0; k < 8; k++) {
+                if ((crc & 0x80) != 0) {
+                    crc = (crc << 1) ^ POLY;
+                } else {
+                    crc <<= 1;
+                }
+            }
+            TABLE[i] = (byte) crc;
+        }
+    }
+
+    private Crc8() {
+    }
+    
+    /**
+     * Обновить контрольную сумму значением одного байта.
+     *
+     * @param crc текущее значение контрольной суммы
+     * @param b байт данных
+     * @return новое значение контрольной суммы
+     */
+    public static int update(int crc, byte b) {
+        return TABLE[(crc ^ b) & 0xFF] & 0xFF;
+    }
+    
+    /**
+     * Обновить контрольную сумму значениями из фрагмента массива.
+     *
+     * @param crc текущее значение контрольной суммы
+     * @param buf массив данных
+     * @param off индекс первого байта фрагмента
+     * @param len длинна фрагмента
+     * @return новое значение контрольной суммы
+     */
+    public static int update(int crc, byte[] buf, int off, int len) {
+        for (int i = off, end = off + len; i < end; i++) {
+            crc = TABLE[(crc ^ buf[i]) & 0xFF] & 0xFF;
+        }
+        return crc;
+    }
+    
+    /**
+     * Обновить контрольную сумму значениями из буфера от текущей позиции до
+     * предела. Позиция буфера не изменяется.
+     *
+     * @param crc текущее значение контрольной суммы
+     * @param buf буфер данных
+     * @return новое значение контрольной суммы
+     */
+    public static int update(int crc, ByteBuffer buf) {
+        if (buf.hasArray()) {
+            return update(crc, buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+        }
+        for (int i = buf.position(), end = buf.limit(); i < end; i++) {
+            crc = TABLE[(crc ^ buf.get(i)) & 0xFF] & 0xFF;
+        }
+        return crc;
+    }
+    
+    /**
+     * Рассчитать контрольную сумму фрагмента массива.
+     *
+     * @param buf массив данных
+     * @param off индекс первого байта фрагмента
+     * @param len длинна фрагмента
+     * @return контрольная сумма
+     */
+    public static byte compute(byte[] buf, int off, int len) {
+        return (byte) update(INIT, buf, off, len);
+    }
+    
+}
@@ -0,0 +1,246 @@
+/*
+ * atol4j - клиентская библиотека для контрольной кассовой техники (ККТ) АТОЛ
+ * Copyright (C) 2019 Олег Викторович Курбатов
+ *
+ * Это программа является свободным программным обеспечением. Вы можете
+ * распространять и/или модифицировать её согласно условиям Стандартной
+ * Общественной Лицензии GNU, опубликованной Фондом Свободного Программного
+ * Обеспечения, версии 3 или, по Вашему желанию, любой более поздней версии.
+ *
+ * Эта программа распространяется в надежде, что она будет полезной, но БЕЗ
+ * ВСЯКИХ ГАРАНТИЙ, в том числе подразумеваемых гарантий ТОВАРНОГО
+ * СОСТОЯНИЯ ПРИ ПРОДАЖЕ и ГОДНОСТИ ДЛЯ ОПРЕДЕЛЁННОГО ПРИМЕНЕНИЯ. Смотрите
+ * Стандартную Общественную Лицензию GNU для получения дополнительной
+ * информации.
+ *
+ * Вы должны были получить копию Стандартной Общественной Лицензии GNU
+ * вместе с программой. В случае её отсутствия, смотрите
+ * http://www.gnu.org/licenses/.
+ */
+package com.github.kurbatov.atol4j.transport.protocol.v3;
+
+import java.nio.ByteBuffer;
+import static com.github.kurbatov.atol4j.transport.protocol.v3.Token.*;
+
+/**
+ * Кодирует и декодирует пакеты протокола нижнего уровня версии 3.
+ * 
+ * Кодирование и декодирование выполняются за один проход непосредственно над
+ * буферами {@link ByteBuffer} (в куче или в прямой памяти) без создания
+ * промежуточных массивов. Контрольная сумма рассчитывается {@link Crc8 по
+ * таблице}. Данные без управляющих символов копируются целиком, без
+ * побайтового экранирования.
+ *
+ * @author Олег Курбатов &lt;o.v.kurbatov@gmail.com&gt;
+ */
+public final class FrameCodec {
+    
+    /**
+     * Максимальная длинна данных в одном пакете.
+     */
+    public static final int MAX_PAYLOAD_LENGTH = 0x7FFF;
+    
+    private FrameCodec() {
+    }
+    
+    /**
+     * Рассчитать максимальную длинну пакета с данными указанной длинны (если
+     * все байты данных и контрольная сумма потребуют экранирования).
+     *
+     * @param payloadLength длинна данных
+     * @return максимальная длинна пакета
+     */
+    public static int maxFrameLength(int payloadLength) {
+        return 2 * payloadLength + 6;
+    }
+    
+    /**
+     * Кодирует данные в пакет с указанным идентификатором.
+     * 
+     * Данные читаются из буфера {@code payload} от текущей позиции до предела,
+     * пакет записывается в буфер {@code out} с текущей позиции. Позиции обоих
+     * буферов сдвигаются на количество прочитанных и записанных байт.
+     *
+     * @param id идентификатор пакета
+     * @param payload данные
+     * @param out буфер для записи пакета
+     * @return длинна пакета в байтах
+     * @throws IllegalArgumentException если длинна данных превышает
+     * {@link #MAX_PAYLOAD_LENGTH}
+     * @throws java.nio.BufferOverflowException если в буфере недостаточно
+     * места для записи пакета
+     */
+    public static int encode(byte id, ByteBuffer payload, ByteBuffer out) {
+        int len = payload.remaining();
+        if (len > MAX_PAYLOAD_LENGTH) {
+            throw new IllegalArgumentException(String.format("Длинна данных не может быть больше %d. Указано: %d.", MAX_PAYLOAD_LENGTH, len));
+        }
+        int start = out.position();
+        out.put(STX);
+        out.put((byte) (len & 0x7F));
+        out.put((byte) (len >> 7));
+        out.put(id);
+        int crc = Crc8.update(Crc8.INIT, id);
+        if (payload.hasArray() && out.hasArray() && out.remaining() >= 2 * len) {
+            byte[] src = payload.array();
+            byte[] dst = out.array();
+            int i = payload.arrayOffset() + payload.position();
+            int end = i + len;
+            int j = out.arrayOffset() + out.position();
+            int dstStart = j;
+            int control = indexOfControl(src, i, end);
+            if (control < 0) {
+                // быстрый путь: экранирование не требуется
+                System.arraycopy(src, i, dst, j, len);
+                crc = Crc8.update(crc, src, i, len);
+                j += len;
+            } else {
+                System.arraycopy(src, i, dst, j, control - i);
+                crc = Crc8.update(crc, src, i, control - i);
+                j += control - i;
+                for (i = control; i < end; i++) {
+                    byte b = src[i];
+                    crc = Crc8.update(crc, b);
+                    if (b == STX) {
+                        dst[j++] = ESC;
+                        dst[j++] = TSTX;
+                    } else if (b == ESC) {
+                        dst[j++] = ESC;
+                        dst[j++] = TESC;
+                    } else {
+                        dst[j++] = b;
+                    }
+                }
+            }
+            payload.position(payload.position() + len);
+            out.position(out.position() + j - dstStart);
+        } else {
+            while (payload.hasRemaining()) {
+                byte b = payload.get();
+                crc = Crc8.update(crc, b);
+                put(b, out);
+            }
+        }
+        put((byte) crc, out);
+        return out.position() - start;
+    }
+    
+    /**
+     * Декодирует пакет и записывает его данные в буфер.
+     * 
+     * Буфер {@code in} должен содержать ровно один пакет от текущей позиции до
+     * предела. Данные записываются в буфер {@code out} с текущей позиции.
+     *
+     * @param in буфер, содержащий пакет
+     * @param out буфер для записи данных
+     * @return идентификатор пакета
+     * @throws IllegalArgumentException если пакет повреждён: неверная длинна
+     * данных, неверная контрольная сумма или недопустимая последовательность
+     * экранирования
+     * @throws java.nio.BufferOverflowException если в буфере недостаточно
+     * места для записи данных
+     */
+    public static byte decode(ByteBuffer in, ByteBuffer out) {
+        if (in.remaining() < 5) {
+            throw new IllegalArgumentException(String.format("Пакет не может быть короче 5 байт. Получено: %d.", in.remaining()));
+        }
+        if (in.get() != STX) {
+            throw new IllegalArgumentException("Пакет должен начинаться с символа начала текста.");
+        }
+        int len = (in.get() & 0x7F) | ((in.get() & 0xFF) << 7);
+        byte id = in.get();
+        int crc = Crc8.update(Crc8.INIT, id);
+        if (in.remaining() == len + 1 && in.hasArray() && out.hasArray() && out.remaining() >= len) {
+            // быстрый путь: в пакете нет экранированных символов
+            byte[] src = in.array();
+            int off = in.arrayOffset() + in.position();
+            if (indexOf(src, off, off + len, ESC) >= 0) {
+                throw new IllegalArgumentException(String.format("Неверная длинна данных. Указано: %d. Получено меньше.", len));
+            }
+            System.arraycopy(src, off, out.array(), out.arrayOffset() + out.position(), len);
+            crc = Crc8.update(crc, src, off, len);
+            in.position(in.position() + len);
+            out.position(out.position() + len);
+        } else {
+            for (int i = 0; i < len; i++) {
+                if (!in.hasRemaining()) {
+                    throw new IllegalArgumentException(String.format("Неверная длинна данных. Указано: %d. Получено: %d.", len, i));
+                }
+                byte b = get(in);
+                crc = Crc8.update(crc, b);
+                out.put(b);
+            }
+        }
+        if (!in.hasRemaining()) {
+            throw new IllegalArgumentException("Отсутствует контрольная сумма.");
+        }
+        byte expectedCRC = get(in);
+        if (in.hasRemaining()) {
+            throw new IllegalArgumentException(String.format("Неверная длинна данных. Указано: %d. Получено больше на %d байт.", len, in.remaining()));
+        }
+        byte calculatedCRC = (byte) crc;
+        if (calculatedCRC != expectedCRC) {
+            throw new IllegalArgumentException(String.format("Неверная контрольная сумма. Указано: %d. Получено: %d.", expectedCRC, calculatedCRC));
+        }
+        return id;
+    }
+    
+    /**
+     * Определить длинну данных, указанную в заголовке пакета.
+     *
+     * @param frame буфер, в котором с текущей позиции начинается пакет
+     * @return длинна данных без учёта экранирования
+     */
+    public static int payloadLength(ByteBuffer frame) {
+        int pos = frame.position();
+        return (frame.get(pos + 1) & 0x7F) | ((frame.get(pos + 2) & 0xFF) << 7);
+    }
+    
+    private static int indexOfControl(byte[] buf, int from, int to) {
+        for (int i = from; i < to; i++) {
+            byte b = buf[i];
+            if (b == STX || b == ESC) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    private static int indexOf(byte[] buf, int from, int to, byte value) {
+        for (int i = from; i < to; i++) {
+            if (buf[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    private static void put(byte b, ByteBuffer out) {
+        if (b == STX) {
+            out.put(ESC).put(TSTX);
+        } else if (b == ESC) {
+            out.put(ESC).put(TESC);
+        } else {
+            out.put(b);
+        }
+    }
+    
+    private static byte get(ByteBuffer in) {
+        byte b = in.get();
+        if (b == ESC) {
+            if (!in.hasRemaining()) {
+                throw new IllegalArgumentException("Незавершённая последовательность экранирования.");
+            }
+            byte t = in.get();
+            if (t == TSTX) {
+                b = STX;
+            } else if (t == TESC) {
+                b = ESC;
+            } else {
+                throw new IllegalArgumentException(String.format("Недопустимая последовательность экранирования: %d.", t));
+            }
+        }
+        return b;
+    }
+    
+}
@@ -0,0 +1,160 @@
+/*
+ * atol4j - клиентская библиотека для контрольной кассовой техники (ККТ) АТОЛ
+ * Copyright (C) 2019 Олег Викторович Курбатов
+ *
+ * Это программа является свободным программным обеспечением. Вы можете
+ * распространять и/или модифицировать её согласно условиям Стандартной
+ * Общественной Лицензии GNU, опубликованной Фондом Свободного Программного
+ * Обеспечения, версии 3 или, по Вашему желанию, любой более поздней версии.
+ *
+ * Эта программа распространяется в надежде, что она будет полезной, но БЕЗ
+ * ВСЯКИХ ГАРАНТИЙ, в том числе подразумеваемых гарантий ТОВАРНОГО
+ * СОСТОЯНИЯ ПРИ ПРОДАЖЕ и ГОДНОСТИ ДЛЯ ОПРЕДЕЛЁННОГО ПРИМЕНЕНИЯ. Смотрите
+ * Стандартную Общественную Лицензию GNU для получения дополнительной
+ * информации.
+ *
+ * Вы должны были получить копию Стандартной Общественной Лицензии GNU
+ * вместе с программой. В случае её отсутствия, смотрите
+ * http://www.gnu.org/licenses/.
+ */
+package com.github.kurbatov.atol4j.transport.protocol.v3;
+
+import com.github.kurbatov.atol4j.transport.protocol.ByteBuffer;
+import java.util.function.Consumer;
+import static com.github.kurbatov.atol4j.transport.protocol.v3.Token.*;
+
+/**
+ * Выделяет пакеты протокола нижнего уровня версии 3 из потока данных,
+ * поступающих от транспорта частями произвольного размера.
+ * 
+ * Разбор выполняется конечным автоматом, который продолжает работу с того
+ * места, где остановился на предыдущей части данных: каждый байт
+ * просматривается один раз. Пакеты передаются получателю в том виде, в
+ * котором они получены (с экранированием и контрольной суммой), для
+ * декодирования {@link FrameCodec}.
+ * 
+ * Символ начала пакета внутри пакета означает, что часть пакета потеряна:
+ * незавершённый пакет отбрасывается и разбор начинается заново.
+ * 
+ * Разборщик не потокобезопасен и рассчитан на одного читателя.
+ *
+ * @author Олег Курбатов &lt;o.v.kurbatov@gmail.com&gt;
+ */
+public final class FrameParser {
+    
+    private static final int SEEK = 0;
+    private static final int HEADER = 1;
+    private static final int BODY = 2;
+    
+    /**
+     * Длинна заголовка пакета: начало пакета, длинна данных и идентификатор.
+     */
+    private static final int HEADER_LENGTH = 4;
+    
+    private final ByteBuffer buffer = new ByteBuffer(1024);
+    
+    private int state = SEEK;
+    
+    private int position;
+    
+    private int remaining;
+    
+    private boolean escaped;
+    
+    /**
+     * Разобрать очередную часть данных.
+     *
+     * @param data данные от устройства
+     * @param sink получатель полностью принятых пакетов
+     */
+    public void parse(byte[] data, Consumer<byte[]> sink) {
+        buffer.append(data);
+        parse(sink);
+    }
+    
+    /**
+     * Разобрать очередную часть данных из буфера транспорта.
+     * 
+     * Данные копируются из буфера сразу, поэтому буфер может быть
+     * использован транспортом повторно после возврата из метода.
+     *
+     * @param data данные от устройства
+     * @param sink получатель полностью принятых пакетов
+     */
+    public void parse(java.nio.ByteBuffer data, Consumer<byte[]> sink) {
+        buffer.append(data);
+        parse(sink);
+    }
+    
+    private void parse(Consumer<byte[]> sink) {
+        while (true) {
+            switch (state) {
+                case SEEK:
+                    int stx = buffer.find(STX);
+                    if (stx < 0) {
+                        buffer.skip(buffer.size());
+                        return;
+                    }
+                    buffer.skip(stx);
+                    state = HEADER;
+                    break;
+                case HEADER:
+                    if (buffer.size() < HEADER_LENGTH) {
+                        return;
+                    }
+                    remaining = ((buffer.get(1) & 0x7F) | ((buffer.get(2) & 0xFF) << 7)) + 1;
+                    position = HEADER_LENGTH;
+                    escaped = false;
+                    state = BODY;
+                    break;
+                default:
+                    if (!body(sink)) {
+                        return;
+                    }
+            }
+        }
+    }
+    
+    /**
+     * Сбросить состояние разборщика и отбросить незавершённый пакет.
+     */
+    public void reset() {
+        buffer.skip(buffer.size());
+        state = SEEK;
+    }
+    
+    /**
+     * Просматривает данные и контрольную сумму пакета с того места, где
+     * остановился просмотр в прошлый раз.
+     *
+     * @param sink получатель пакета
+     * @return true - пакет завершён или отброшен, false - нужны ещё данные
+     */
+    private boolean body(Consumer<byte[]> sink) {
+        int size = buffer.size();
+        while (position < size) {
+            byte b = buffer.get(position++);
+            if (b == STX) {
+                buffer.skip(position - 1);
+                state = HEADER;
+                return true;
+            }
+            if (escaped) {
+                escaped = false;
+                remaining--;
+            } else if (b == ESC) {
+                escaped = true;
+            } else {
+                remaining--;
+            }
+            if (remaining == 0) {
+                byte[] frame = buffer.take(position);
+                state = SEEK;
+                sink.accept(frame);
+                return true;
+            }
+        }
+        return false;
+    }
+    
+}
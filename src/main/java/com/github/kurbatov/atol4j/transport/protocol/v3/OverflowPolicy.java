@@ -0,0 +1,55 @@
+/*
+ * atol4j - клиентская библиотека для контрольной кассовой техники (ККТ) АТОЛ
+ * Copyright (C) 2019 Олег Викторович Курбатов
+ *
+ * Это программа является свободным программным обеспечением. Вы можете
+ * распространять и/или модифицировать её согласно условиям Стандартной
+ * Общественной Лицензии GNU, опубликованной Фондом Свободного Программного
+ * Обеспечения, версии 3 или, по Вашему желанию, любой более поздней версии.
+ *
+ * Эта программа распространяется в надежде, что она будет полезной, но БЕЗ
+ * ВСЯКИХ ГАРАНТИЙ, в том числе подразумеваемых гарантий ТОВАРНОГО
+ * СОСТОЯНИЯ ПРИ ПРОДАЖЕ и ГОДНОСТИ ДЛЯ ОПРЕДЕЛЁННОГО ПРИМЕНЕНИЯ. Смотрите
+ * Стандартную Общественную Лицензию GNU для получения дополнительной
+ * информации.
+ *
+ * Вы должны были получить копию Стандартной Общественной Лицензии GNU
+ * вместе с программой. В случае её отсутствия, смотрите
+ * http://www.gnu.org/licenses/.
+ */
+package com.github.kurbatov.atol4j.transport.protocol.v3;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Поведение протокола при переполнении очереди заданий, ожидающих отправки
+ * устройству.
+ *
+ * @author Олег Курбатов &lt;o.v.kurbatov@gmail.com&gt;
+ */
+public enum OverflowPolicy {
+    
+    /**
+     * Отклонить новое задание: результат задания завершается исключением
+     * {@link RejectedExecutionException}.
+     */
+    REJECT,
+    
+    /**
+     * Приостановить поток, который отправляет задание, до освобождения места в
+     * очереди. Если задание отправляется из потока обработки ответов
+     * устройства, ожидание невозможно, и задание ставится в очередь сверх
+     * лимита. Другие потоки цикла событий не блокируются: задание, отправленное
+     * из них, отклоняется, как при политике {@link #REJECT}.
+     */
+    WAIT,
+    
+    /**
+     * Вытеснить из очереди задание с наименьшим приоритетом (из нескольких
+     * таких - самое новое), если его приоритет ниже приоритета нового задания.
+     * Иначе отклонить новое задание. Результат вытесненного или отклонённого
+     * задания завершается исключением {@link RejectedExecutionException}.
+     */
+    SHED
+    
+}
@@ -0,0 +1,155 @@
+/*
+ * atol4j - клиентская библиотека для контрольной кассовой техники (ККТ) АТОЛ
+ * Copyright (C) 2019 Олег Викторович Курбатов
+ *
+ * Это программа является свободным программным обеспечением. Вы можете
+ * распространять и/или модифицировать её согласно условиям Стандартной
+ * Общественной Лицензии GNU, опубликованной Фондом Свободного Программного
+ * Обеспечения, версии 3 или, по Вашему желанию, любой более поздней версии.
+ *
+ * Эта программа распространяется в надежде, что она будет полезной, но БЕЗ
+ * ВСЯКИХ ГАРАНТИЙ, в том числе подразумеваемых гарантий ТОВАРНОГО
+ * СОСТОЯНИЯ ПРИ ПРОДАЖЕ и ГОДНОСТИ ДЛЯ ОПРЕДЕЛЁННОГО ПРИМЕНЕНИЯ. Смотрите
+ * Стандартную Общественную Лицензию GNU для получения дополнительной
+ * информации.
+ *
+ * Вы должны были получить копию Стандартной Общественной Лицензии GNU
+ * вместе с программой. В случае её отсутствия, смотрите
+ * http://www.gnu.org/licenses/.
+ */
+package com.github.kurbatov.atol4j.transport.protocol.v3;
+
+import java.util.function.Consumer;
+
+/**
+ * Таблица с фиксированным количеством ячеек, индексированная идентификатором
+ * пакета или задания.
+ * 
+ * Идентификаторы протокола лежат в диапазоне от 0 до 0xDF, поэтому вместо
+ * отображения с упаковкой ключей используется массив. Каждая запись в ячейку
+ * увеличивает её поколение: удаление с указанием поколения не затрагивает
+ * значение, записанное после повторного использования идентификатора.
+ * 
+ * Таблица не потокобезопасна: доступ к ней синхронизирует владелец.
+ *
+ * @param <T> тип значения
+ * @author Олег Курбатов &lt;o.v.kurbatov@gmail.com&gt;
+ */
+final class SlotTable<T> {
+    
+    private final Object[] values;
+    
+    private final int[] generations;
+    
+    private int size;
+
+    /**
+     * Создаёт таблицу.
+     *
+     * @param capacity количество ячеек
+     */
+    SlotTable(int capacity) {
+        values = new Object[capacity];
+        generations = new int[capacity];
+    }
+    
+    /**
+     * Записать значение в ячейку, заменив предыдущее.
+     *
+     * @param id идентификатор
+     * @param value значение
+     * @return поколение записанного значения
+     */
+    int put(byte id, T value) {
+        int slot = id & 0xFF;
+        if (values[slot] == null) {
+            size++;
+        }
+        values[slot] = value;
+        return ++generations[slot];
+    }
+    
+    /**
+     * Получить значение из ячейки.
+     *
+     * @param id идентификатор
+     * @return значение или null, если ячейка свободна
+     */
+    @SuppressWarnings("unchecked")
+    T get(byte id) {
+        return (T) values[id & 0xFF];
+    }
+    
+    /**
+     * Освободить ячейку.
+     *
+     * @param id идентификатор
+     * @return значение, которое хранилось в ячейке, или null, если ячейка была
+     * свободна
+     */
+    @SuppressWarnings("unchecked")
+    T remove(byte id) {
+        int slot = id & 0xFF;
+        T result = (T) values[slot];
+        if (result != null) {
+            values[slot] = null;
+            size--;
+        }
+        return result;
+    }
+    
+    /**
+     * Освободить ячейку, если её значение относится к указанному поколению.
+     *
+     * @param id идентификатор
+     * @param generation поколение значения
+     * @return значение, которое хранилось в ячейке, или null, если ячейка
+     * свободна или занята значением другого поколения
+     */
+    T remove(byte id, int generation) {
+        return generations[id & 0xFF] == generation ? remove(id) : null;
+    }
+    
+    /**
+     * Получить количество занятых ячеек.
+     *
+     * @return количество занятых ячеек
+     */
+    int size() {
+        return size;
+    }
+    
+    /**
+     * Передать значения всех занятых ячеек указанному получателю, не
+     * освобождая ячейки.
+     *
+     * @param consumer получатель значений
+     */
+    @SuppressWarnings("unchecked")
+    void forEach(Consumer<? super T> consumer) {
+        for (int i = 0, found = 0; i < values.length && found < size; i++) {
+            if (values[i] != null) {
+                found++;
+                consumer.accept((T) values[i]);
+            }
+        }
+    }
+    
+    /**
+     * Освободить все ячейки, передав их значения указанному получателю.
+     *
+     * @param consumer получатель значений
+     */
+    @SuppressWarnings("unchecked")
+    void drain(Consumer<? super T> consumer) {
+        for (int i = 0; i < values.length && size > 0; i++) {
+            if (values[i] != null) {
+                T value = (T) values[i];
+                values[i] = null;
+                size--;
+                consumer.accept(value);
+            }
+        }
+    }
+    
+}
@@ -0,0 +1,104 @@
+/*
+ * atol4j - клиентская библиотека для контрольной кассовой техники (ККТ) АТОЛ
+ * Copyright (C) 2019 Олег Викторович Курбатов
+ *
+ * Это программа является свободным программным обеспечением. Вы можете
+ * распространять и/или модифицировать её согласно условиям Стандартной
+ * Общественной Лицензии GNU, опубликованной Фондом Свободного Программного
+ * Обеспечения, версии 3 или, по Вашему желанию, любой более поздней версии.
+ *
+ * Эта программа распространяется в надежде, что она будет полезной, но БЕЗ
+ * ВСЯКИХ ГАРАНТИЙ, в том числе подразумеваемых гарантий ТОВАРНОГО
+ * СОСТОЯНИЯ ПРИ ПРОДАЖЕ и ГОДНОСТИ ДЛЯ ОПРЕДЕЛЁННОГО ПРИМЕНЕНИЯ. Смотрите
+ * Стандартную Общественную Лицензию GNU для получения дополнительной
+ * информации.
+ *
+ * Вы должны были получить копию Стандартной Общественной Лицензии GNU
+ * вместе с программой. В случае её отсутствия, смотрите
+ * http://www.gnu.org/licenses/.
+ */
+package com.github.kurbatov.atol4j.transport.protocol.v3;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Ограниченная очередь без блокировок для одного писателя и одного читателя.
+ * 
+ * Писатель и читатель обращаются только к своему индексу и ячейкам массива,
+ * поэтому передача элемента не требует захвата монитора. Индекс читателя
+ * кэшируется писателем и перечитывается, только когда очередь кажется
+ * заполненной.
+ *
+ * @param <E> тип элемента
+ * @author Олег Курбатов &lt;o.v.kurbatov@gmail.com&gt;
+ */
+final class SpscQueue<E> {
+    
+    private final AtomicReferenceArray<E> elements;
+    
+    private final int mask;
+    
+    private final AtomicLong head = new AtomicLong();
+    
+    private final AtomicLong tail = new AtomicLong();
+    
+    private long cachedHead;
+
+    /**
+     * Создаёт очередь.
+     *
+     * @param capacity ёмкость очереди (округляется вверх до степени двойки)
+     */
+    SpscQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        elements = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+    }
+    
+    /**
+     * Добавить элемент в конец очереди. Вызывается только писателем.
+     *
+     * @param e элемент
+     * @return true - элемент добавлен, false - очередь заполнена
+     */
+    boolean offer(E e) {
+        long t = tail.get();
+        if (t - cachedHead > mask) {
+            cachedHead = head.get();
+            if (t - cachedHead > mask) {
+                return false;
+            }
+        }
+        elements.lazySet((int) t & mask, e);
+        tail.set(t + 1);
+        return true;
+    }
+    
+    /**
+     * Взять элемент из начала очереди. Вызывается только читателем.
+     *
+     * @return элемент или null, если очередь пуста
+     */
+    E poll() {
+        long h = head.get();
+        int index = (int) h & mask;
+        E e = elements.get(index);
+        if (e == null) {
+            return null;
+        }
+        elements.lazySet(index, null);
+        head.lazySet(h + 1);
+        return e;
+    }
+    
+    /**
+     * Проверить, пуста ли очередь.
+     *
+     * @return true - очередь пуста
+     */
+    boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+    
+}
@@ -19,24 +19,71 @@
  */
 package com.github.kurbatov.atol4j.transport.protocol.v3;
 
+import com.github.kurbatov.atol4j.command.Result;
+import com.github.kurbatov.atol4j.transport.BufferPool;
+import com.github.kurbatov.atol4j.transport.BufferTransport;
+import com.github.kurbatov.atol4j.transport.EventLoop;
+import com.github.kurbatov.atol4j.transport.HashedWheelTimer;
+import com.github.kurbatov.atol4j.transport.SerialExecutor;
 import com.github.kurbatov.atol4j.transport.Transport;
-import com.github.kurbatov.atol4j.transport.protocol.ByteBuffer;
+import com.github.kurbatov.atol4j.transport.protocol.CommandTimeout;
+import com.github.kurbatov.atol4j.transport.protocol.ExecutionMode;
+import com.github.kurbatov.atol4j.transport.protocol.Priority;
+import com.github.kurbatov.atol4j.transport.protocol.UnknownResultException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ExecutorService;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import com.github.kurbatov.atol4j.transport.protocol.TransportProtocol;
-import static com.github.kurbatov.atol4j.transport.protocol.v3.Token.*;
 
 /**
  * Имплементация протокола нижнего уровня версии 3.
  *
+ * Протокол позволяет держать в очереди заданий устройства несколько заданий
+ * одновременно. Количество заданий, отправленных устройству, но ещё не
+ * вернувших результат, ограничено размером окна. Задания сверх окна ожидают
+ * своей очереди на стороне клиента и отправляются устройству по мере получения
+ * результатов выполнения предыдущих заданий.
+ *
+ * Очередь на стороне клиента может быть ограничена, чтобы всплеск запросов не
+ * переполнял очередь заданий устройства и не увеличивал задержку выполнения
+ * команд. Поведение при переполнении очереди определяет {@link OverflowPolicy}.
+ *
+ * Для каждого отправленного задания отслеживается срок выполнения. Если
+ * устройство не вернуло результат в срок, протокол запрашивает у устройства
+ * состояние задания. Если задание ещё выполняется, срок продлевается. Если
+ * устройство не ответило на запрос или задание не найдено, ответ завершается
+ * исключением {@link TimeoutException}.
+ * 
+ * Задания в режиме {@link ExecutionMode#ASYNC} отправляются устройству сразу,
+ * минуя очередь на стороне клиента и не занимая места в окне, поэтому запросы
+ * состояния не ждут завершения длительной печати на стороне клиента.
+ * 
+ * Задания в режиме {@link ExecutionMode#NO_RESULT} отправляются без запроса
+ * результата: устройство сообщает только об ошибке их выполнения. Такие
+ * задания завершаются успешно, когда приходит результат следующего за ними
+ * задания, поскольку устройство выполняет задания по очереди. Последнее
+ * свободное место в окне всегда занимает задание с запросом результата, иначе
+ * окно могли бы занять задания, о завершении которых протокол не узнает.
+ * 
+ * Подтверждение получения результата задания передаётся вместе со следующим
+ * заданием командой {@link Command#ACK_ADD}. Если за период ожидания
+ * (см. {@link #setAckLinger(int)}) новое задание не отправлено, подтверждение
+ * передаётся отдельным пакетом.
+ *
  * @author Олег Курбатов &lt;o.v.kurbatov@gmail.com&gt;
  */
 public class TransportProtocolV3 implements TransportProtocol {
@@ -47,29 +94,106 @@ public class TransportProtocolV3 implements TransportProtocol {
 
     private final AtomicInteger taskId = new AtomicInteger();
 
-    private final Map<Byte, byte[]> sentPackages = new ConcurrentHashMap<>();
+    private final SlotTable<byte[]> sentPackages = new SlotTable<>(MAX_ID + 1);
+    
+    private final SlotTable<InFlightTask> pendingCommands = new SlotTable<>(MAX_ID + 1);
+    
+    private final SlotTable<InFlightTask> polls = new SlotTable<>(MAX_ID + 1);
+    
+    private final Deque<PendingTask> queue = new ArrayDeque<>();
+    
+    /**
+     * Задания без запроса результата в порядке отправки.
+     */
+    private final Deque<InFlightTask> unconfirmed = new ArrayDeque<>();
+    
+    private final Object lock = new Object();
+    
+    private final int window;
+    
+    private final int capacity;
+    
+    private final OverflowPolicy policy;
+    
+    private int inFlight;
+    
+    private int peakQueueSize;
+    
+    private long rejectedCount;
+    
+    private long shedCount;
+    
+    private int epoch;
+    
+    private long sequence;
+    
+    /**
+     * Количество заданий, завершившихся ошибкой, которая останавливает
+     * выполнение последующих заданий устройства.
+     */
+    private int failures;
+    
+    private int ackLinger = DEFAULT_ACK_LINGER;
+    
+    /**
+     * Идентификатор задания, получение результата которого ещё не
+     * подтверждено, или -1.
+     */
+    private int unacknowledged = -1;
+    
+    private HashedWheelTimer.Handle ackDeadline;
+    
+    private final FrameParser parser = new FrameParser();
+    
+    private final SpscQueue<byte[]> frames = new SpscQueue<>(1024);
+    
+    private final AtomicBoolean draining = new AtomicBoolean();
+    
+    /**
+     * Поток транспорта, ожидающий освобождения места в очереди принятых
+     * пакетов, или null.
+     */
+    private volatile Thread producer;
+    
+    /**
+     * Наибольшее время ожидания места в очереди принятых пакетов, нс.
+     */
+    private static final long ENQUEUE_TIMEOUT = TimeUnit.MILLISECONDS.toNanos(100);
     
-    private final Map<Byte, CompletableFuture<byte[]>> pendingCommands = new ConcurrentHashMap<>();
+    private final EventLoop loop;
     
-    private final ByteBuffer buffer = new ByteBuffer(1024);
+    private final SerialExecutor executor;
     
-    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "atol4j-TransportEvents"));
+    private final HashedWheelTimer timer;
     
     private static final byte[] EMPTY = new byte[] {};
+    
+    /**
+     * Период ожидания подтверждения по умолчанию в миллисекундах.
+     */
+    public static final int DEFAULT_ACK_LINGER = 10;
 
     private static final int MAX_ID = 0xDF;
     
     private static final byte ASYNC_RESPONSE_ID = (byte) 0xF0;
+    
+    /**
+     * Максимальное время ожидания ответа на запрос состояния задания в
+     * миллисекундах.
+     */
+    private static final int POLL_TIMEOUT = 2000;
+    
+    /**
+     * Максимальное количество повторных отправок задания, не найденного
+     * устройством.
+     */
+    private static final int MAX_RESENDS = 3;
 
     // флаги
     private static final byte NEED_RESULT = 1;
     private static final byte IGNORE_ERR = 2;
     private static final byte ASYNC = 4;
     
-    // параметры рассчёта контрольной суммы
-    private static final int CRC8INIT = 0xFF;
-    private static final int CRC8POLY = 0x31;// = X^8+X^5+X^4+X^0
-
     private static final Logger LOGGER = LoggerFactory.getLogger(TransportProtocolV3.class);
     
     /**
@@ -80,8 +204,83 @@ public class TransportProtocolV3 implements TransportProtocol {
      * клиентом и устройством
      */
     public TransportProtocolV3(Transport transport) {
+        this(transport, 1);
+    }
+
+    /**
+     * Создаёт протокол нижнего уровня версии 3, который взаимодействует с
+     * устройством через указанный транспорт и держит в очереди заданий
+     * устройства не более указанного количества заданий.
+     *
+     * @param transport транспорт, который осуществляет доставку сообщений между
+     * клиентом и устройством
+     * @param window максимальное количество заданий, отправленных устройству, но
+     * ещё не вернувших результат (от 1 до 224)
+     * @throws IllegalArgumentException если размер окна выходит за допустимые
+     * пределы
+     */
+    public TransportProtocolV3(Transport transport, int window) {
+        this(transport, window, Integer.MAX_VALUE, OverflowPolicy.REJECT);
+    }
+
+    /**
+     * Создаёт протокол нижнего уровня версии 3, который взаимодействует с
+     * устройством через указанный транспорт, держит в очереди заданий
+     * устройства не более указанного количества заданий и ограничивает очередь
+     * заданий, ожидающих отправки.
+     *
+     * @param transport транспорт, который осуществляет доставку сообщений между
+     * клиентом и устройством
+     * @param window максимальное количество заданий, отправленных устройству, но
+     * ещё не вернувших результат (от 1 до 224)
+     * @param capacity максимальное количество заданий, ожидающих отправки
+     * устройству
+     * @param policy поведение при переполнении очереди заданий, ожидающих
+     * отправки
+     * @throws IllegalArgumentException если размер окна или размер очереди
+     * выходят за допустимые пределы
+     */
+    public TransportProtocolV3(Transport transport, int window, int capacity, OverflowPolicy policy) {
+        this(transport, window, capacity, policy, EventLoop.getDefault());
+    }
+
+    /**
+     * Создаёт протокол нижнего уровня версии 3, который доставляет результаты
+     * заданий в потоках указанного цикла событий.
+     * 
+     * Результаты заданий одного устройства доставляются строго по одному в
+     * порядке получения, независимо от количества потоков цикла событий.
+     *
+     * @param transport транспорт, который осуществляет доставку сообщений между
+     * клиентом и устройством
+     * @param window максимальное количество заданий, отправленных устройству, но
+     * ещё не вернувших результат (от 1 до 224)
+     * @param capacity максимальное количество заданий, ожидающих отправки
+     * устройству
+     * @param policy поведение при переполнении очереди заданий, ожидающих
+     * отправки
+     * @param loop цикл событий, в потоках которого доставляются результаты и
+     * отслеживаются сроки выполнения заданий
+     * @throws IllegalArgumentException если размер окна или размер очереди
+     * выходят за допустимые пределы
+     */
+    public TransportProtocolV3(Transport transport, int window, int capacity, OverflowPolicy policy, EventLoop loop) {
+        if (window < 1 || window > MAX_ID + 1) {
+            throw new IllegalArgumentException(String.format("Размер окна должен быть от 1 до %d. Указано: %d.", MAX_ID + 1, window));
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Размер очереди должен быть больше нуля. Указано: " + capacity);
+        }
         this.transport = transport;
-        transport.subscribe(this::processResponse);
+        this.window = window;
+        this.capacity = capacity;
+        this.policy = policy;
+        this.loop = loop;
+        this.executor = loop.newSerialExecutor();
+        this.timer = loop.getTimer();
+        BufferTransport channel = BufferTransport.of(transport);
+        channel.listen(this::processResponse);
+        channel.addReconnectListener(this::resume);
     }
 
     @Override
@@ -91,61 +290,453 @@ public class TransportProtocolV3 implements TransportProtocol {
 
     @Override
     public void stop() {
-        executor.shutdown();
         try {
-            executor.awaitTermination(10, TimeUnit.SECONDS);
+            executor.awaitIdle(10, TimeUnit.SECONDS);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
+        synchronized (lock) {
+            flushAck();
+        }
         transport.disconnect();
     }
 
     @Override
     public CompletableFuture<byte[]> send(byte[] message) {
-        byte[] command = wrap(addTask(message, NEED_RESULT));
-        byte packId = command[3];
-        sentPackages.put(packId, command);
-        byte taskId = command[6];
-        CompletableFuture<byte[]> result = new CompletableFuture<>();
-        pendingCommands.put(taskId, result);
-        transport.write(command);
-        return result;
+        return send(message, Priority.NORMAL);
+    }
+
+    @Override
+    public CompletableFuture<byte[]> send(byte[] message, int priority) {
+        return send(message, priority, CommandTimeout.DEFAULT);
+    }
+
+    @Override
+    public CompletableFuture<byte[]> send(byte[] message, int priority, int timeout) {
+        return send(message, priority, timeout, ExecutionMode.QUEUED);
+    }
+
+    @Override
+    public CompletableFuture<byte[]> send(byte[] message, int priority, int timeout, ExecutionMode mode) {
+        PendingTask task = new PendingTask(message, priority, timeout, flags(mode), new CompletableFuture<>());
+        if (mode == ExecutionMode.ASYNC) {
+            synchronized (lock) {
+                submit(task, false);
+            }
+            return task.result;
+        }
+        PendingTask rejected = null;
+        synchronized (lock) {
+            if (queue.size() >= capacity) {
+                rejected = overflow(task);
+            }
+            if (rejected != task) {
+                queue.add(task);
+                peakQueueSize = Math.max(peakQueueSize, queue.size());
+            }
+        }
+        if (rejected != null) {
+            LOGGER.debug("Очередь заданий переполнена. Задание отклонено.");
+            rejected.result.completeExceptionally(new RejectedExecutionException(rejected == task
+                    ? "Очередь заданий переполнена"
+                    : "Задание вытеснено из очереди заданием с более высоким приоритетом"));
+        }
+        dispatch();
+        return task.result;
+    }
+
+    /**
+     * Освобождает место в переполненной очереди в соответствии с политикой
+     * переполнения. Вызывается под блокировкой очереди.
+     *
+     * @param task новое задание
+     * @return задание, которое не попадёт в очередь (новое или вытесненное),
+     * или null, если место в очереди освободилось
+     */
+    private PendingTask overflow(PendingTask task) {
+        switch (policy) {
+            case WAIT:
+                if (executor.isCurrentThread()) {
+                    // место в очереди освобождается этим же потоком
+                    return null;
+                }
+                if (EventLoop.inEventLoop()) {
+                    // ожидающий поток общего пула может оказаться тем, который
+                    // должен освободить место в очереди
+                    rejectedCount++;
+                    return task;
+                }
+                try {
+                    while (queue.size() >= capacity) {
+                        lock.wait();
+                    }
+                    return null;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    rejectedCount++;
+                    return task;
+                }
+            case SHED:
+                PendingTask victim = null;
+                for (PendingTask t : queue) {
+                    if (victim == null || t.priority <= victim.priority) {
+                        victim = t;
+                    }
+                }
+                if (victim != null && victim.priority < task.priority) {
+                    queue.removeLastOccurrence(victim);
+                    shedCount++;
+                    return victim;
+                }
+                rejectedCount++;
+                return task;
+            default:
+                rejectedCount++;
+                return task;
+        }
     }
 
     /**
      * Посылает устройству команду на очистку очереди задач.
+     * 
+     * Задания, которые ожидают отправки на стороне клиента, и задания, которые
+     * уже отправлены устройству, но ещё не вернули результат, завершаются
+     * исключением {@link CancellationException}.
      */
     public void abort() {
-        byte[] command = wrap(Command.ABORT);
-        sentPackages.put(command[3], command);
-        transport.write(command);
+        List<CompletableFuture<byte[]>> cancelled = new ArrayList<>();
+        synchronized (lock) {
+            byte[] command = wrap(Command.ABORT);
+            sentPackages.put(command[3], command);
+            transport.write(command);
+            epoch++;
+            inFlight = 0;
+            queue.forEach(t -> cancelled.add(t.result));
+            queue.clear();
+            lock.notifyAll();
+            pendingCommands.drain(t -> {
+                t.deadline.cancel();
+                cancelled.add(t.result);
+            });
+            polls.drain(t -> {});
+            unconfirmed.clear();
+            if (unacknowledged != -1) {
+                // очередь заданий устройства очищается вместе с результатами
+                ackDeadline.cancel();
+                unacknowledged = -1;
+            }
+        }
+        cancelled.forEach(f -> f.completeExceptionally(new CancellationException("Очередь заданий очищена")));
+    }
+
+    /**
+     * Установить период ожидания, в течение которого подтверждение получения
+     * результата задания ожидает отправки следующего задания, чтобы быть
+     * переданным вместе с ним.
+     *
+     * @param millis период ожидания в миллисекундах; 0 - подтверждение
+     * передаётся сразу отдельным пакетом
+     * @throws IllegalArgumentException если период ожидания отрицательный
+     */
+    public void setAckLinger(int millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Период ожидания не может быть отрицательным: " + millis);
+        }
+        synchronized (lock) {
+            this.ackLinger = millis;
+        }
+    }
+
+    /**
+     * Получить период ожидания подтверждения.
+     *
+     * @return период ожидания в миллисекундах
+     */
+    public int getAckLinger() {
+        synchronized (lock) {
+            return ackLinger;
+        }
+    }
+
+    /**
+     * Получить размер окна - максимальное количество заданий, отправленных
+     * устройству, но ещё не вернувших результат.
+     *
+     * @return размер окна
+     */
+    public int getWindow() {
+        return window;
+    }
+
+    /**
+     * Получить максимальное количество заданий, ожидающих отправки устройству.
+     *
+     * @return размер очереди
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Получить поведение при переполнении очереди заданий.
+     *
+     * @return политика переполнения очереди
+     */
+    public OverflowPolicy getOverflowPolicy() {
+        return policy;
+    }
+
+    /**
+     * Получить цикл событий, в потоках которого работает протокол.
+     *
+     * @return цикл событий
+     */
+    public EventLoop getEventLoop() {
+        return loop;
+    }
+
+    /**
+     * Получить количество заданий, ожидающих отправки устройству.
+     *
+     * @return текущая длина очереди
+     */
+    public int getQueueSize() {
+        synchronized (lock) {
+            return queue.size();
+        }
+    }
+
+    /**
+     * Получить наибольшее количество заданий, одновременно ожидавших отправки
+     * устройству.
+     *
+     * @return наибольшая длина очереди
+     */
+    public int getPeakQueueSize() {
+        synchronized (lock) {
+            return peakQueueSize;
+        }
+    }
+
+    /**
+     * Получить количество заданий, отправленных устройству, но ещё не вернувших
+     * результат.
+     *
+     * @return количество заданий в работе
+     */
+    public int getInFlight() {
+        synchronized (lock) {
+            return inFlight;
+        }
+    }
+
+    /**
+     * Получить количество заданий, ожидающих отправки или результата
+     * выполнения.
+     * 
+     * В отличие от {@link #getInFlight()}, задание перестаёт учитываться до
+     * передачи результата получателю, а не после освобождения места в окне.
+     *
+     * @return количество незавершённых заданий
+     */
+    public int getPendingCount() {
+        synchronized (lock) {
+            return queue.size() + pendingCommands.size();
+        }
+    }
+
+    /**
+     * Получить количество заданий, отклонённых из-за переполнения очереди.
+     *
+     * @return количество отклонённых заданий
+     */
+    public long getRejectedCount() {
+        synchronized (lock) {
+            return rejectedCount;
+        }
+    }
+
+    /**
+     * Получить количество заданий, вытесненных из очереди заданиями с более
+     * высоким приоритетом.
+     *
+     * @return количество вытесненных заданий
+     */
+    public long getShedCount() {
+        synchronized (lock) {
+            return shedCount;
+        }
+    }
+
+    /**
+     * Отправляет устройству задания из очереди, пока количество заданий в
+     * работе не достигнет размера окна.
+     */
+    private void dispatch() {
+        synchronized (lock) {
+            while (inFlight < window && !queue.isEmpty()) {
+                PendingTask task = queue.poll();
+                lock.notifyAll();
+                if (task.result.isDone()) {
+                    continue; // задание отменено до отправки
+                }
+                submit(task, true);
+            }
+        }
+    }
+    
+    /**
+     * Отправляет задание устройству. Вызывается под блокировкой очереди.
+     *
+     * @param task задание
+     * @param windowed true - задание занимает место в окне
+     */
+    private void submit(PendingTask task, boolean windowed) {
+        byte flags = task.flags;
+        if ((flags & NEED_RESULT) == 0 && inFlight + 1 >= window) {
+            flags |= NEED_RESULT; // иначе окно не освободится
+        }
+        byte[] add = addTask(task.message, flags);
+        byte id = add[2];
+        byte[] command = wrap(unacknowledged == -1 ? add : piggyback(add));
+        int generation = sentPackages.put(command[3], command);
+        InFlightTask sent = new InFlightTask(id, task, command[3], generation, windowed, (flags & NEED_RESULT) == 0, sequence++);
+        sent.failures = failures;
+        pendingCommands.put(id, sent);
+        if (sent.silent) {
+            unconfirmed.add(sent);
+        }
+        sent.deadline = timer.schedule(() -> expire(sent), task.timeout, TimeUnit.MILLISECONDS);
+        if (windowed) {
+            inFlight++;
+        }
+        try {
+            transport.write(command);
+        } catch (RuntimeException e) {
+            pendingCommands.remove(id);
+            unconfirmed.remove(sent);
+            sentPackages.remove(command[3], generation);
+            sent.deadline.cancel();
+            if (windowed) {
+                inFlight--;
+            }
+            task.result.completeExceptionally(e);
+        }
+    }
+    
+    private static byte flags(ExecutionMode mode) {
+        switch (mode) {
+            case ASYNC:
+                return NEED_RESULT | ASYNC;
+            case NO_RESULT:
+                return 0;
+            case IGNORE_ERRORS:
+                return NEED_RESULT | IGNORE_ERR;
+            default:
+                return NEED_RESULT;
+        }
+    }
+
+    /**
+     * Освобождает места в окне после получения результатов заданий и
+     * отправляет следующие задания из очереди.
+     *
+     * @param generation поколение окна, в котором были отправлены задания
+     * @param count количество освободившихся мест
+     */
+    private void release(int generation, int count) {
+        synchronized (lock) {
+            if (generation == epoch) {
+                inFlight -= count;
+            }
+        }
+        dispatch();
     }
     
     /**
      * Обрабатывает ответ от устройства.
+     * 
+     * Метод вызывается транспортом из одного потока: данные разбираются на
+     * пакеты без блокировок и передаются на обработку в поток доставки
+     * результатов через очередь без блокировок. Пакеты обрабатываются в
+     * порядке получения.
+     *
+     * @param msg ответ от устройства
+     */
+    public void processResponse(byte[] msg) {
+        parser.parse(msg, this::enqueue);
+        schedule();
+    }
+    
+    /**
+     * Обрабатывает ответ от устройства, полученный в буфере транспорта.
+     * 
+     * Данные копируются из буфера в буфер разборщика пакетов до возврата из
+     * метода.
      *
      * @param msg ответ от устройства
+     * @see #processResponse(byte[])
+     */
+    public void processResponse(java.nio.ByteBuffer msg) {
+        parser.parse(msg, this::enqueue);
+        schedule();
+    }
+    
+    private void schedule() {
+        if (!frames.isEmpty() && draining.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+    
+    /**
+     * Передаёт пакет в очередь принятых пакетов.
+     * 
+     * Если очередь заполнена, поток транспорта приостанавливается до
+     * освобождения места, но не дольше {@link #ENQUEUE_TIMEOUT}. Пакет, для
+     * которого место не освободилось, отбрасывается так же, как потерянный при
+     * передаче: результат задания будет запрошен по истечении его срока.
+     *
+     * @param frame пакет
      */
-    public synchronized void processResponse(byte[] msg) {
-        buffer.append(msg);
-        for(int stxIndex = buffer.find(STX); !buffer.isEmpty() && stxIndex > -1; stxIndex = buffer.find(STX)) {
-            buffer.skip(stxIndex);
-            if (buffer.size() >= 5) {
-                int len = ((buffer.get(1) & 0x7F) | ((buffer.get(2) & 0xFF) << 7)) + 5;
-                for (int escIndex = buffer.find(ESC, 4); escIndex > -1 && escIndex < len; escIndex = buffer.find(ESC, escIndex + 1)) {
-                    len++;
+    private void enqueue(byte[] frame) {
+        if (frames.offer(frame)) {
+            return;
+        }
+        long deadline = System.nanoTime() + ENQUEUE_TIMEOUT;
+        producer = Thread.currentThread();
+        try {
+            while (!frames.offer(frame)) {
+                if (draining.compareAndSet(false, true)) {
+                    executor.execute(this::drain);
                 }
-                if (buffer.size() >= len) {
-                    processMessage(buffer.take(len));
-                } else {
-                    break;
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    LOGGER.warn("Очередь принятых пакетов переполнена. Пакет {} отброшен.", frame[3] & 0xFF);
+                    return;
                 }
-            } else {
-                break;
+                LockSupport.parkNanos(this, remaining);
             }
+        } finally {
+            producer = null;
         }
     }
     
+    /**
+     * Обрабатывает принятые пакеты. Выполняется в потоке доставки результатов.
+     */
+    private void drain() {
+        do {
+            for (byte[] frame = frames.poll(); frame != null; frame = frames.poll()) {
+                Thread waiting = producer;
+                if (waiting != null) {
+                    LockSupport.unpark(waiting);
+                }
+                processMessage(frame);
+            }
+            draining.set(false);
+        } while (!frames.isEmpty() && draining.compareAndSet(false, true));
+    }
+    
     /**
      * Обрабатывает один пакет транспортного уровня.
      *
@@ -157,9 +748,12 @@ public class TransportProtocolV3 implements TransportProtocol {
             byte[] payload = unwrap(msg);
             if (payload.length == 0) {
                 LOGGER.warn("Получено пустое сообщение в ответ на пакет с идентификатором {}.", packId & 0xFF);
-                if (sentPackages.containsKey(packId)) { // ККТ запрашивает повтор пакета
+                byte[] pack;
+                synchronized (lock) {
                     //удаляем пакет из истории, чтобы избежать циклических повторов передачи
-                    byte[] pack = sentPackages.remove(packId);
+                    pack = sentPackages.remove(packId);
+                }
+                if (pack != null) { // ККТ запрашивает повтор пакета
                     LOGGER.debug("Повтор передачи пакета с идентификатором {}: {}", packId & 0xFF, pack);
                     transport.write(pack);
                 } else {
@@ -167,6 +761,14 @@ public class TransportProtocolV3 implements TransportProtocol {
                 }
                 return;
             }
+            InFlightTask polled;
+            synchronized (lock) {
+                polled = packId == ASYNC_RESPONSE_ID ? null : polls.remove(packId);
+            }
+            if (polled != null) {
+                processPoll(polled, payload);
+                return;
+            }
             byte status = payload[0];
             byte taskId = -1;
             if (status == Status.ASYNC_RESULT || status == Status.ASYNC_ERROR) {
@@ -177,12 +779,16 @@ public class TransportProtocolV3 implements TransportProtocol {
                 payload = Arrays.copyOfRange(payload, 1, payload.length);
                 //TODO узнать идентификатор задания, на который получен синхронный ответ
             }
-            processResult(taskId, status, payload);
-            if (status == Status.RESULT || status == Status.ERROR) {
-                byte[] ack = wrap(ack(taskId));
-                sentPackages.put(ack[3], ack);
-                transport.write(ack);
+            if (taskId != -1 && (status == Status.RESULT || status == Status.ERROR)) {
+                // подтверждение откладывается до передачи результата
+                // получателям: задание, отправленное освободившимся окном или
+                // следующей командой цепочки, передаст его вместе с собой.
+                // Синхронные ответы (например, на ABORT) подтверждать не нужно
+                synchronized (lock) {
+                    acknowledge(taskId);
+                }
             }
+            processResult(taskId, status, payload);
         } catch (IllegalArgumentException e) {
             if (packId == ASYNC_RESPONSE_ID) {
                 LOGGER.warn("Обнаружена ошибка в асинхронном ответе от устройства: {}", msg, e);
@@ -199,122 +805,45 @@ public class TransportProtocolV3 implements TransportProtocol {
     }
     
     byte[] wrap(byte[] buf, byte id) {
-        int masking = 0;
-        for (int i = 0; i < buf.length; i++) {
-            byte b = buf[i];
-            if (b == STX || b == ESC) {
-                masking++;
-            }
-        }
-        int len = buf.length;
-        byte[] result = new byte[len + masking + 5];
-        result[0] = STX;
-        result[1] = (byte) (len & 0x7F);
-        result[2] = (byte) (len >> 7);
-        result[3] = id;
-        int crc = CRC8INIT ^ (0xFF & id);
-        for (int k = 0; k < 8; k++) {
-            if ((crc & 0x80) == 128) {
-                crc = (crc << 1) ^ CRC8POLY;
-            } else {
-                crc <<= 1;
-            }
-        }
-        for (int i = 0, j = 4; i < buf.length; i++) {
-            byte b = buf[i];
-            if (b == STX) {
-                result[j++] = ESC;
-                result[j++] = TSTX;
-            } else if (b == ESC) {
-                result[j++] = ESC;
-                result[j++] = TESC;
-            } else {
-                result[j++] = b;
-            }
-            crc ^= 0xFF & b;
-            for (int k = 0; k < 8; k++) {
-                if ((crc & 0x80) == 128) {
-                    crc = (crc << 1) ^ CRC8POLY;
-                } else {
-                    crc <<= 1;
-                }
-            }
-        }
-        byte calculatedCRC = (byte) (0xFF & crc);
-        if (calculatedCRC == STX || calculatedCRC == ESC) {
-            byte[] temp = new byte[result.length + 1];
-            System.arraycopy(result, 0, temp, 0, result.length);
-            result = temp;
-            result[result.length - 2] = ESC;
-            if (calculatedCRC == STX) {
-                result[result.length - 1] = TSTX;
-            } else {
-                result[result.length - 1] = TESC;
-            }
-        } else {
-            result[result.length - 1] = calculatedCRC;
+        BufferPool pool = BufferPool.getDefault();
+        java.nio.ByteBuffer out = pool.acquire(FrameCodec.maxFrameLength(buf.length));
+        try {
+            FrameCodec.encode(id, java.nio.ByteBuffer.wrap(buf), out);
+            byte[] result = new byte[out.position()];
+            out.flip();
+            out.get(result);
+            return result;
+        } finally {
+            pool.release(out);
         }
-        return result;
     }
 
     static byte[] unwrap(byte[] r) {
-        int len = (r[1] & 0x7F) | (r[2] << 7);
-        int actualLen = r.length - 5;
-        for (int i = 4; i < r.length - 1; i++) {
-            if (r[i] == ESC) {
-                actualLen--;
-            }
-        }
-        if (len != actualLen) {
-            throw new IllegalArgumentException(String.format("Неверная длинна данных. Указано: %d. Получено: %d.", len, actualLen));
-        }
-        byte[] result = new byte[len];
-        byte id = r[3];
-        int crc = CRC8INIT ^ (0xFF & id);
-        for (int k = 0; k < 8; k++) {
-            if ((crc & 0x80) == 128) {
-                crc = (crc << 1) ^ CRC8POLY;
-            } else {
-                crc <<= 1;
-            }
-        }
-        for (int i = 4, j = 0; j < result.length; j++) {
-            byte b = r[i++];
-            if (b == ESC) {
-                b = r[i++];
-                if (b == TSTX) {
-                    b = STX;
-                } else if (b == TESC) {
-                    b = ESC;
-                }
-            }
-            result[j] = b;
-            crc ^= 0xFF & b;
-            for (int k = 0; k < 8; k++) {
-                if ((crc & 0x80) == 128) {
-                    crc = (crc << 1) ^ CRC8POLY;
-                } else {
-                    crc <<= 1;
-                }
-            }
-        }
-        byte calculatedCRC = (byte) (0xFF & crc);
-        int expectedCRC = r[r.length - 1];
-        if (calculatedCRC != expectedCRC && ((expectedCRC == TSTX && calculatedCRC != STX) || (expectedCRC == TESC && calculatedCRC != ESC))) {
-            throw new IllegalArgumentException(String.format("Неверная контрольная сумма. Указано: %d. Получено: %d.", expectedCRC, calculatedCRC));
+        if (r.length < 5) {
+            throw new IllegalArgumentException(String.format("Пакет не может быть короче 5 байт. Получено: %d.", r.length));
         }
+        java.nio.ByteBuffer in = java.nio.ByteBuffer.wrap(r);
+        byte[] result = new byte[FrameCodec.payloadLength(in)];
+        FrameCodec.decode(in, java.nio.ByteBuffer.wrap(result));
         return result;
     }
 
     /**
      * Формирует команду добавления задачи в очередь задач устройства.
+     * Вызывается под блокировкой очереди.
      *
      * @param task задача
      * @param flags флаги
      * @return команда добавления задачи в очередь задач устройства
      */
     byte[] addTask(byte[] task, byte flags) {
-        int id = taskId.updateAndGet(operand -> operand == MAX_ID ? 0 : operand + 1);
+        int id;
+        do {
+            // идентификатор задания, которое ещё не вернуло результат, не
+            // используется повторно: его результат нельзя было бы отличить от
+            // результата нового задания
+            id = taskId.updateAndGet(operand -> operand == MAX_ID ? 0 : operand + 1);
+        } while (pendingCommands.get((byte) id) != null && pendingCommands.size() <= MAX_ID);
         byte[] result = new byte[task.length + 3];
         result[0] = Command.ADD;
         result[1] = flags;
@@ -333,20 +862,475 @@ public class TransportProtocolV3 implements TransportProtocol {
     byte[] ack(byte id) {
         return new byte[] {Command.ACK, id};
     }
+    
+    /**
+     * Откладывает подтверждение получения результата задания до отправки
+     * следующего задания, но не дольше периода ожидания. Вызывается под
+     * блокировкой очереди.
+     *
+     * @param id идентификатор задания
+     */
+    private void acknowledge(byte id) {
+        flushAck(); // команда передаёт только одно подтверждение
+        if (ackLinger == 0) {
+            writeAck(id);
+            return;
+        }
+        unacknowledged = id & 0xFF;
+        ackDeadline = timer.schedule(() -> {
+            synchronized (lock) {
+                if (unacknowledged == (id & 0xFF)) {
+                    flushAck();
+                }
+            }
+        }, ackLinger, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Передаёт отложенное подтверждение отдельным пакетом. Вызывается под
+     * блокировкой очереди.
+     */
+    private void flushAck() {
+        if (unacknowledged != -1) {
+            ackDeadline.cancel();
+            writeAck((byte) unacknowledged);
+            unacknowledged = -1;
+        }
+    }
+    
+    private void writeAck(byte id) {
+        byte[] ack = wrap(ack(id));
+        sentPackages.put(ack[3], ack);
+        transport.write(ack);
+    }
+    
+    /**
+     * Превращает команду добавления задания в команду подтверждения результата
+     * и добавления задания, передавая отложенное подтверждение вместе с
+     * заданием. Вызывается под блокировкой очереди.
+     *
+     * @param add команда добавления задания
+     * @return команда подтверждения результата и добавления задания
+     */
+    private byte[] piggyback(byte[] add) {
+        ackDeadline.cancel();
+        byte[] result = new byte[add.length + 1];
+        result[0] = Command.ACK_ADD;
+        result[1] = (byte) unacknowledged;
+        System.arraycopy(add, 1, result, 2, add.length - 1);
+        unacknowledged = -1;
+        return result;
+    }
+    
+    /**
+     * Формирует запрос состояния задания с указанным идентификатором.
+     *
+     * @param id идентификатор задания
+     * @return запрос состояния задания
+     */
+    byte[] req(byte id) {
+        return new byte[] {Command.REQ, id};
+    }
 
     void processResult(byte id, byte status, byte[] msg) {
         if (id == -1) {
             return; // это ответ на подтверждение приёма результата
         }
-        CompletableFuture<byte[]> future = pendingCommands.get(id);
-        if (future == null) {
+        InFlightTask task;
+        List<InFlightTask> confirmed;
+        int generation;
+        synchronized (lock) {
+            task = pendingCommands.get(id);
+            if (task != null) {
+                forget(task);
+                if ((task.source.flags & IGNORE_ERR) == 0 && isError(status, msg)) {
+                    failures++;
+                }
+            }
+            confirmed = task == null ? Collections.emptyList() : confirm(task);
+            generation = epoch;
+        }
+        if (task == null) {
             LOGGER.warn("Получен результат для несуществующей команды {}. {}: {}", id & 0xFF, status, Arrays.toString(msg));
-        } else if (future.isDone()) {
-            LOGGER.warn("Получен результат для уже завершённой команды {}. Игнорируем.", id & 0xFF);
         } else {
             LOGGER.debug("Обновлён статус команды {}: {}", id & 0xFF, status);
-            executor.execute(() -> future.complete(msg));
+            // окно освобождается после того, как получатели результата его
+            // обработали: при ошибке цепочка команд успевает очистить очередь
+            // до отправки следующего задания
+            executor.execute(() -> {
+                confirmed.forEach(t -> t.result.complete(EMPTY));
+                if (!task.result.complete(msg)) {
+                    LOGGER.warn("Получен результат для уже завершённой команды {}. Игнорируем.", id & 0xFF);
+                }
+                // места выполненных заданий освобождаются одновременно, иначе
+                // каждое освободившееся место заняло бы задание с запросом
+                // результата
+                release(generation, confirmed.size() + (task.windowed ? 1 : 0));
+            });
+        }
+    }
+    
+    /**
+     * Удаляет задания без запроса результата, отправленные раньше указанного
+     * задания. Устройство выполняет задания по очереди, поэтому получение
+     * результата задания означает, что предыдущие задания выполнены без
+     * ошибок. Вызывается под блокировкой очереди.
+     *
+     * @param task задание, результат которого получен
+     * @return выполненные задания без запроса результата
+     */
+    private List<InFlightTask> confirm(InFlightTask task) {
+        List<InFlightTask> confirmed = new ArrayList<>();
+        while (!unconfirmed.isEmpty() && unconfirmed.peek().sequence < task.sequence) {
+            InFlightTask t = unconfirmed.peek();
+            forget(t);
+            confirmed.add(t);
+        }
+        return confirmed;
+    }
+    
+    /**
+     * Обрабатывает истечение срока выполнения задания: при первом истечении
+     * запрашивает у устройства состояние задания, при повторном - завершает
+     * ответ исключением.
+     *
+     * @param task задание
+     */
+    private void expire(InFlightTask task) {
+        int generation;
+        boolean unknown = false;
+        synchronized (lock) {
+            if (pendingCommands.get(task.id) != task) {
+                return; // результат получен или очередь очищена
+            }
+            if (task.notFound) {
+                forget(task);
+                generation = epoch;
+                unknown = true;
+            } else if (!task.polled) {
+                LOGGER.debug("Истёк срок выполнения задания {}. Запрашиваем состояние.", task.id & 0xFF);
+                poll(task);
+                return;
+            } else {
+                forget(task);
+                generation = epoch;
+            }
+        }
+        if (unknown) {
+            fail(task, new UnknownResultException(String.format("Неизвестно, выполнено ли задание %d", task.id & 0xFF)), generation);
+            return;
+        }
+        fail(task, new TimeoutException(String.format("Устройство не вернуло результат задания %d за %d мс", task.id & 0xFF, task.timeout)), generation);
+    }
+    
+    /**
+     * Запрашивает у устройства состояние задания и ограничивает время
+     * ожидания ответа. Вызывается под блокировкой очереди.
+     *
+     * @param task задание
+     */
+    private void poll(InFlightTask task) {
+        if (task.polled) {
+            // ответ на предыдущий запрос мог быть потерян
+            polls.remove(task.pollPacket, task.pollGeneration);
+        }
+        task.deadline.cancel();
+        task.polled = true;
+        byte[] request = wrap(req(task.id));
+        sentPackages.put(request[3], request);
+        task.pollPacket = request[3];
+        task.pollGeneration = polls.put(request[3], task);
+        task.deadline = timer.schedule(() -> expire(task), Math.min(task.timeout, POLL_TIMEOUT), TimeUnit.MILLISECONDS);
+        try {
+            transport.write(request);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Не удалось запросить состояние задания {}", task.id & 0xFF, e);
+        }
+    }
+    
+    /**
+     * Возобновляет обмен после восстановления соединения.
+     * 
+     * Пакеты, полученные до обрыва соединения не полностью, отбрасываются.
+     * Задания, отправленные устройству до обрыва, повторно не отправляются:
+     * их результаты могли быть потеряны вместе с соединением, поэтому у
+     * устройства запрашивается состояние каждого из них в порядке отправки.
+     * Задания, которые устройство так и не получило, отправляются повторно.
+     * Задания, ожидающие отправки, отправляются по мере освобождения окна,
+     * как обычно.
+     */
+    private void resume() {
+        parser.reset();
+        synchronized (lock) {
+            LOGGER.debug("Соединение восстановлено. Запрашиваем состояние {} заданий.", pendingCommands.size());
+            List<InFlightTask> sent = new ArrayList<>(pendingCommands.size());
+            pendingCommands.forEach(sent::add);
+            sent.sort(Comparator.comparingLong(t -> t.sequence));
+            sent.forEach(this::poll);
+        }
+        dispatch();
+    }
+    
+    /**
+     * Обрабатывает ответ на запрос состояния задания.
+     *
+     * @param task задание
+     * @param payload ответ устройства
+     */
+    private void processPoll(InFlightTask task, byte[] payload) {
+        byte status = payload[0];
+        int generation;
+        boolean found = false;
+        boolean resent = false;
+        List<InFlightTask> executed = Collections.emptyList();
+        List<InFlightTask> unknown = Collections.emptyList();
+        synchronized (lock) {
+            if (pendingCommands.get(task.id) != task) {
+                return; // идентификатор задания мог быть использован повторно
+            }
+            if (status == Status.RESULT || status == Status.ERROR) {
+                acknowledge(task.id);
+                generation = -1;
+            } else if (status == Status.NOT_FOUND && task.silent && hasLater(task)) {
+                // устройство удаляет задание без запроса результата сразу
+                // после успешного выполнения, но задание могло и не дойти до
+                // устройства: решение откладывается до ответа о следующих
+                // заданиях
+                task.notFound = true;
+                task.deadline.cancel();
+                task.deadline = timer.schedule(() -> expire(task), task.timeout, TimeUnit.MILLISECONDS);
+                return;
+            } else if (status == Status.NOT_FOUND && !task.silent && task.source.resends < MAX_RESENDS
+                    && failures == task.failures && !hasLater(task) && !hasEarlier(task)) {
+                // задание с запросом результата остаётся у устройства до
+                // подтверждения, значит устройство его не получало. Повтор
+                // безопасен, только если это задание - единственное в работе,
+                // а ошибок после его отправки не было: иначе устройство могло
+                // удалить задание после ошибки или выполнить следующие
+                LOGGER.debug("Задание {} не получено устройством. Отправляем повторно.", task.id & 0xFF);
+                forget(task);
+                task.source.resends++;
+                if (task.windowed) {
+                    inFlight--;
+                    queue.addFirst(task.source);
+                } else {
+                    submit(task.source, false);
+                }
+                generation = epoch;
+                resent = true;
+            } else if (status == Status.PENDING || status == Status.IN_PROGRESS || status == Status.WAITING) {
+                // устройство на связи и продолжает выполнять задание, а
+                // ненайденные задания, отправленные раньше, уже выполнило
+                executed = takeNotFound(task);
+                task.deadline.cancel();
+                task.polled = false;
+                task.deadline = timer.schedule(() -> expire(task), task.timeout, TimeUnit.MILLISECONDS);
+                generation = epoch;
+                found = true;
+            } else {
+                // задание не дошло до устройства, удалено им после ошибки или
+                // его исход неизвестен, а значит неизвестен и исход ненайденных
+                // заданий перед ним
+                forget(task);
+                unknown = takeNotFound(task);
+                generation = epoch;
+            }
+        }
+        if (generation == -1) {
+            processResult(task.id, status, Arrays.copyOfRange(payload, 1, payload.length));
+            return;
+        }
+        if (resent) {
+            dispatch();
+            return;
+        }
+        for (InFlightTask t : unknown) {
+            fail(t, new UnknownResultException(String.format("Неизвестно, выполнено ли задание %d", t.id & 0xFF)), generation);
+        }
+        if (found) {
+            if (!executed.isEmpty()) {
+                int released = generation;
+                List<InFlightTask> completed = executed;
+                executor.execute(() -> {
+                    completed.forEach(t -> t.result.complete(EMPTY));
+                    release(released, completed.size());
+                });
+            }
+            return;
+        }
+        if (status == Status.NOT_FOUND) {
+            fail(task, new UnknownResultException(String.format("Неизвестно, выполнено ли задание %d", task.id & 0xFF)), generation);
+            return;
+        }
+        fail(task, new TimeoutException(String.format("Задание %d не выполнено устройством. Статус: %02X", task.id & 0xFF, status)), generation);
+    }
+    
+    /**
+     * Узнать, есть ли в работе задания, отправленные после указанного.
+     * Вызывается под блокировкой очереди.
+     *
+     * @param task задание
+     * @return true - есть задания, отправленные позже
+     */
+    private boolean hasLater(InFlightTask task) {
+        boolean[] later = {false};
+        pendingCommands.forEach(t -> later[0] |= t.sequence > task.sequence);
+        return later[0];
+    }
+    
+    /**
+     * Узнать, есть ли в работе задания, отправленные раньше указанного.
+     * Вызывается под блокировкой очереди.
+     *
+     * @param task задание
+     * @return true - есть задания, отправленные раньше
+     */
+    private boolean hasEarlier(InFlightTask task) {
+        boolean[] earlier = {false};
+        pendingCommands.forEach(t -> earlier[0] |= t.sequence < task.sequence);
+        return earlier[0];
+    }
+    
+    /**
+     * Узнать, останавливает ли результат задания выполнение последующих
+     * заданий устройства.
+     *
+     * @param status статус задания
+     * @param msg результат задания
+     * @return true - задание завершилось ошибкой
+     */
+    private static boolean isError(byte status, byte[] msg) {
+        return status == Status.ERROR || msg.length > 1 && msg[0] == Result.RESPONSE_CODE && msg[1] != 0;
+    }
+    
+    /**
+     * Удаляет ненайденные устройством задания без запроса результата,
+     * отправленные раньше указанного задания. Вызывается под блокировкой
+     * очереди.
+     *
+     * @param task задание
+     * @return удалённые задания
+     */
+    private List<InFlightTask> takeNotFound(InFlightTask task) {
+        List<InFlightTask> taken = new ArrayList<>();
+        for (InFlightTask t : unconfirmed) {
+            if (t.sequence >= task.sequence) {
+                break;
+            }
+            if (t.notFound) {
+                taken.add(t);
+            }
+        }
+        taken.forEach(this::forget);
+        return taken;
+    }
+    
+    /**
+     * Удаляет задание из таблицы заданий в работе вместе с его отложенными
+     * действиями и пакетами. Вызывается под блокировкой очереди.
+     *
+     * @param task задание
+     */
+    private void forget(InFlightTask task) {
+        pendingCommands.remove(task.id);
+        if (task.silent) {
+            unconfirmed.remove(task);
+        }
+        task.deadline.cancel();
+        // задание получено устройством, повтор его пакета не понадобится
+        sentPackages.remove(task.packet, task.generation);
+        polls.remove(task.pollPacket, task.pollGeneration);
+    }
+    
+    private void fail(InFlightTask task, Throwable cause, int generation) {
+        LOGGER.warn(cause.getMessage());
+        executor.execute(() -> {
+            task.result.completeExceptionally(cause);
+            release(generation, task.windowed ? 1 : 0);
+        });
+    }
+    
+    /**
+     * Задание, ожидающее отправки устройству.
+     */
+    private static class PendingTask {
+        
+        private final byte[] message;
+        
+        private final int priority;
+        
+        private final int timeout;
+        
+        private final byte flags;
+        
+        private final CompletableFuture<byte[]> result;
+        
+        private int resends;
+
+        PendingTask(byte[] message, int priority, int timeout, byte flags, CompletableFuture<byte[]> result) {
+            this.message = message;
+            this.priority = priority;
+            this.timeout = timeout;
+            this.flags = flags;
+            this.result = result;
+        }
+        
+    }
+    
+    /**
+     * Задание, отправленное устройству и ожидающее результата.
+     */
+    private static class InFlightTask {
+        
+        private final byte id;
+        
+        private final PendingTask source;
+        
+        private final CompletableFuture<byte[]> result;
+        
+        private final byte packet;
+        
+        private final int generation;
+        
+        private final int timeout;
+        
+        private final boolean windowed;
+        
+        private final boolean silent;
+        
+        private final long sequence;
+        
+        private HashedWheelTimer.Handle deadline;
+        
+        private boolean polled;
+        
+        /**
+         * Устройство не нашло задание без запроса результата: оно выполнено,
+         * если устройству известно одно из следующих заданий.
+         */
+        private boolean notFound;
+        
+        /**
+         * Количество ошибок на момент отправки задания.
+         */
+        private int failures;
+        
+        private byte pollPacket;
+        
+        private int pollGeneration;
+
+        InFlightTask(byte id, PendingTask source, byte packet, int generation, boolean windowed, boolean silent, long sequence) {
+            this.id = id;
+            this.source = source;
+            this.result = source.result;
+            this.packet = packet;
+            this.generation = generation;
+            this.timeout = source.timeout;
+            this.windowed = windowed;
+            this.silent = silent;
+            this.sequence = sequence;
         }
+        
     }
 
 }
@@ -0,0 +1,111 @@
+/*
+ * atol4j - клиентская библиотека для контрольной кассовой техники (ККТ) АТОЛ
+ * Copyright (C) 2019 Олег Викторович Курбатов
+ *
+ * Это программа является свободным программным обеспечением. Вы можете
+ * распространять и/или модифицировать её согласно условиям Стандартной
+ * Общественной Лицензии GNU, опубликованной Фондом Свободного Программного
+ * Обеспечения, версии 3 или, по Вашему желанию, любой более поздней версии.
+ *
+ * Эта программа распространяется в надежде, что она будет полезной, но БЕЗ
+ * ВСЯКИХ ГАРАНТИЙ, в том числе подразумеваемых гарантий ТОВАРНОГО
+ * СОСТОЯНИЯ ПРИ ПРОДАЖЕ и ГОДНОСТИ ДЛЯ ОПРЕДЕЛЁННОГО ПРИМЕНЕНИЯ. Смотрите
+ * Стандартную Общественную Лицензию GNU для получения дополнительной
+ * информации.
+ *
+ * Вы должны были получить копию Стандартной Общественной Лицензии GNU
+ * вместе с программой. В случае её отсутствия, смотрите
+ * http://www.gnu.org/licenses/.
+ */
+package com.github.kurbatov.atol4j;
+
+import com.github.kurbatov.atol4j.command.Result;
+import com.github.kurbatov.atol4j.command.common.controll.BeepCommand;
+import com.github.kurbatov.atol4j.command.common.request.DeviceStateRequest;
+import com.github.kurbatov.atol4j.command.registration.CashIncomeCommand;
+import com.github.kurbatov.atol4j.command.registration.CloseBillCommand;
+import com.github.kurbatov.atol4j.command.registration.ItemRegistrationCommand;
+import com.github.kurbatov.atol4j.command.registration.OpenBillCommand;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Тестирует теневое состояние устройства.
+ *
+ * @author Oleg Kurbatov &lt;o.v.kurbatov@gmail.com&gt;
+ */
+public class ShadowStateTest {
+    
+    @Test
+    public void reconcileTest() {
+        ShadowState state = new ShadowState();
+        assertFalse(state.isKnown());
+        assertFalse(state.isFresh(60000));
+        state.reconcile(deviceState(0x11, 1));
+        assertTrue(state.isKnown());
+        assertTrue(state.isFresh(60000));
+        assertFalse(state.isFresh(0), "Zero period must disable the shadow state");
+        assertEquals(state.getMode(), 1);
+        assertEquals(state.getSubMode(), 0x10);
+        assertEquals(state.getBillState(), 1);
+        assertTrue(state.isShiftOpen());
+        assertEquals(state.getBillNumber(), 5);
+        assertEquals(state.getShiftNumber(), 3);
+        state.invalidate();
+        assertFalse(state.isKnown());
+        assertFalse(state.isFresh(60000));
+    }
+    
+    @Test
+    public void transitionTest() {
+        ShadowState state = new ShadowState();
+        state.reconcile(deviceState(0x11, 1));
+        state.modeReset();
+        assertEquals(state.getMode(), 1, "Sub mode must be left first");
+        assertEquals(state.getSubMode(), 0);
+        state.modeReset();
+        assertEquals(state.getMode(), 0);
+        state.billClosed();
+        assertEquals(state.getBillState(), 0);
+        assertEquals(state.getBillNumber(), 6);
+        state.shiftClosed();
+        assertFalse(state.isShiftOpen());
+        assertEquals(state.getShiftNumber(), 4);
+    }
+    
+    @Test
+    public void commandUpdateTest() {
+        ShadowState state = new ShadowState();
+        state.reconcile(deviceState(0x01, 0));
+        new BeepCommand(1000, 10).update(state, new Result());
+        assertTrue(state.isKnown(), "State-neutral command must keep the shadow state");
+        new OpenBillCommand(OpenBillCommand.INCOME, true, true).update(state, new Result());
+        assertEquals(state.getBillState(), 0, "Test mode must not open the bill");
+        new OpenBillCommand(OpenBillCommand.INCOME, true, false).update(state, new Result());
+        assertEquals(state.getBillState(), OpenBillCommand.INCOME);
+        new ItemRegistrationCommand("Товар", 100, 1000).update(state, new Result());
+        assertTrue(state.isKnown(), "Registration in an open bill must keep the shadow state");
+        new CloseBillCommand(0, CloseBillCommand.CASH, true).update(state, new Result());
+        assertEquals(state.getBillState(), OpenBillCommand.INCOME, "Test mode must not close the bill");
+        new CloseBillCommand(0, CloseBillCommand.CASH, false).update(state, new Result());
+        assertEquals(state.getBillState(), 0);
+        assertEquals(state.getBillNumber(), 6);
+        new CashIncomeCommand(100, false).update(state, new Result());
+        assertFalse(state.isKnown(), "Command without own update must invalidate the shadow state");
+    }
+    
+    private static DeviceStateRequest.Response deviceState(int mode, int billState) {
+        byte[] buf = new byte[30];
+        buf[0] = 0x44;
+        buf[3] = 0x19;
+        buf[4] = 0x01;
+        buf[5] = 0x01;
+        buf[9] = 2; // смена открыта
+        buf[17] = (byte) mode;
+        buf[19] = 0x05;
+        buf[21] = 0x03;
+        buf[22] = (byte) billState;
+        return new DeviceStateRequest.Response(buf);
+    }
+    
+}
@@ -20,6 +20,7 @@
 package com.github.kurbatov.atol4j.charset;
 
 import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.charset.Charset;
 import org.testng.annotations.Test;
 import static org.testng.Assert.*;
@@ -43,4 +44,11 @@ public class ExternalCharsetTest {
         assertEquals("АТОЛ 91Ф", atol91f);
     }
     
+    @Test
+    public void unmappedTest() {
+        Charset charset = ExternalCharset.INSTANCE;
+        assertEquals(charset.encode(CharBuffer.wrap("Ω1".toCharArray())).array(), new byte[] {0x3F, 0x31}, "Символ вне кодировки должен заменяться знаком вопроса");
+        assertEquals(charset.decode(ByteBuffer.wrap(new byte[] {0x31, 0x00, 0x32})).toString(), "1\uFFFD2", "Неизвестный код должен заменяться символом замены");
+    }
+    
 }
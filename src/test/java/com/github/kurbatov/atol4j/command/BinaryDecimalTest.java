@@ -45,9 +45,36 @@ public class BinaryDecimalTest {
             new Object[] {10L},
             new Object[] {100L},
             new Object[] {123L},
-            new Object[] {4294967295L}
+            new Object[] {4294967295L},
+            new Object[] {9999999999L}
         };
         return result;
     }
     
+    @Test
+    public void wideFieldTest() {
+        byte[] binary = Command.encode(123456789012L, 6);
+        Assert.assertEquals(binary, new byte[] {0x12, 0x34, 0x56, 0x78, (byte) 0x90, 0x12});
+        Assert.assertEquals(Result.decode(binary), 123456789012L);
+    }
+    
+    @Test
+    public void offsetTest() {
+        byte[] buffer = new byte[8];
+        int next = Command.encode(9876L, buffer, 3, 3);
+        Assert.assertEquals(next, 6);
+        Assert.assertEquals(buffer, new byte[] {0, 0, 0, 0, (byte) 0x98, 0x76, 0, 0});
+        Assert.assertEquals(Result.decode(buffer, 3, 3), 9876L);
+    }
+    
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void overflowTest() {
+        Command.encode(100000L, 2);
+    }
+    
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void negativeTest() {
+        Command.encode(-1L, 5);
+    }
+    
 }
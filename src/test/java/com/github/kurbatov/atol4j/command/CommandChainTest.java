@@ -0,0 +1,73 @@
+/*
+ * atol4j - клиентская библиотека для контрольной кассовой техники (ККТ) АТОЛ
+ * Copyright (C) 2019 Олег Викторович Курбатов
+ *
+ * Это программа является свободным программным обеспечением. Вы можете
+ * распространять и/или модифицировать её согласно условиям Стандартной
+ * Общественной Лицензии GNU, опубликованной Фондом Свободного Программного
+ * Обеспечения, версии 3 или, по Вашему желанию, любой более поздней версии.
+ *
+ * Эта программа распространяется в надежде, что она будет полезной, но БЕЗ
+ * ВСЯКИХ ГАРАНТИЙ, в том числе подразумеваемых гарантий ТОВАРНОГО
+ * СОСТОЯНИЯ ПРИ ПРОДАЖЕ и ГОДНОСТИ ДЛЯ ОПРЕДЕЛЁННОГО ПРИМЕНЕНИЯ. Смотрите
+ * Стандартную Общественную Лицензию GNU для получения дополнительной
+ * информации.
+ *
+ * Вы должны были получить копию Стандартной Общественной Лицензии GNU
+ * вместе с программой. В случае её отсутствия, смотрите
+ * http://www.gnu.org/licenses/.
+ */
+package com.github.kurbatov.atol4j.command;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ *
+ * @author Oleg Kurbatov &lt;o.v.kurbatov@gmail.com&gt;
+ */
+public class CommandChainTest {
+    
+    private static final Result OK = new Result(Result.RESPONSE_CODE, (byte) 0, (byte) 0);
+    
+    @Test
+    public void longChainTest() throws Exception {
+        ChainResult result = CommandChain.execute(1_000_000, i -> CompletableFuture.completedFuture(OK)).get(5, TimeUnit.SECONDS);
+        assertFalse(result.hasError());
+        assertEquals(result.getFailedIndex(), -1);
+    }
+    
+    @Test
+    public void failedIndexTest() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            int[] calls = new int[1];
+            ChainResult result = CommandChain.execute(10_000, i -> {
+                calls[0]++;
+                Result r = i == 5_000 ? new Result(Result.RESPONSE_CODE, (byte) 0x7A, (byte) 0) : OK;
+                return CompletableFuture.supplyAsync(() -> r, executor);
+            }).get(5, TimeUnit.SECONDS);
+            assertTrue(result.hasError());
+            assertEquals(result.getErrorCode(), (byte) 0x7A);
+            assertEquals(result.getFailedIndex(), 5_000);
+            assertEquals(calls[0], 5_001, "Chain must stop at the failed step");
+        } finally {
+            executor.shutdown();
+        }
+    }
+    
+    @Test
+    public void exceptionTest() {
+        CompletableFuture<ChainResult> result = CommandChain.execute(3, i -> {
+            CompletableFuture<Result> f = new CompletableFuture<>();
+            f.completeExceptionally(new IllegalStateException());
+            return f;
+        });
+        assertTrue(result.isCompletedExceptionally());
+    }
+    
+}
@@ -0,0 +1,73 @@
+/*
+ * atol4j - клиентская библиотека для контрольной кассовой техники (ККТ) АТОЛ
+ * Copyright (C) 2019 Олег Викторович Курбатов
+ *
+ * Это программа является свободным программным обеспечением. Вы можете
+ * распространять и/или модифицировать её согласно условиям Стандартной
+ * Общественной Лицензии GNU, опубликованной Фондом Свободного Программного
+ * Обеспечения, версии 3 или, по Вашему желанию, любой более поздней версии.
+ *
+ * Эта программа распространяется в надежде, что она будет полезной, но БЕЗ
+ * ВСЯКИХ ГАРАНТИЙ, в том числе подразумеваемых гарантий ТОВАРНОГО
+ * СОСТОЯНИЯ ПРИ ПРОДАЖЕ и ГОДНОСТИ ДЛЯ ОПРЕДЕЛЁННОГО ПРИМЕНЕНИЯ. Смотрите
+ * Стандартную Общественную Лицензию GNU для получения дополнительной
+ * информации.
+ *
+ * Вы должны были получить копию Стандартной Общественной Лицензии GNU
+ * вместе с программой. В случае её отсутствия, смотрите
+ * http://www.gnu.org/licenses/.
+ */
+package com.github.kurbatov.atol4j.command;
+
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Тестирует политику восстановления после ошибок выполнения команд.
+ *
+ * @author Oleg Kurbatov &lt;o.v.kurbatov@gmail.com&gt;
+ */
+public class RecoveryPolicyTest {
+    
+    @Test
+    public void defaultStrategyTest() {
+        RecoveryPolicy policy = new RecoveryPolicy();
+        assertEquals(policy.getStrategy(Errors.WRONG_PRICE), RecoveryStrategy.KEEP_STATE);
+        assertEquals(policy.getStrategy(Errors.FISCAL_MODULE_EXCHANGE_ERR), RecoveryStrategy.RETRY);
+        assertEquals(policy.getStrategy(Errors.PRINTER_CONNECTION_ERR), RecoveryStrategy.RETRY);
+        assertEquals(policy.getStrategy(Errors.NO_PAPER), RecoveryStrategy.KEEP_STATE);
+        byte unknown = 0x17;
+        assertNull(Errors.valueOf(unknown));
+        assertEquals(policy.getStrategy(unknown, true), RecoveryStrategy.RESET, "Unknown error must reset the device");
+        policy.setDefaultStrategy(RecoveryStrategy.KEEP_STATE);
+        assertEquals(policy.getStrategy(unknown, true), RecoveryStrategy.KEEP_STATE);
+    }
+    
+    @Test
+    public void setStrategyTest() {
+        RecoveryPolicy policy = new RecoveryPolicy();
+        policy.setStrategy(Errors.NO_PAPER, RecoveryStrategy.RESET);
+        assertEquals(policy.getStrategy(Errors.NO_PAPER), RecoveryStrategy.RESET);
+        assertEquals(policy.getStrategy(Errors.NO_PAPER.code, true), RecoveryStrategy.RESET);
+        assertEquals(new RecoveryPolicy().getStrategy(Errors.NO_PAPER), RecoveryStrategy.KEEP_STATE, "Policies must not share strategies");
+    }
+    
+    @Test
+    public void retryLimitTest() {
+        RecoveryPolicy policy = new RecoveryPolicy();
+        byte code = Errors.FISCAL_MODULE_EXCHANGE_ERR.code;
+        assertEquals(policy.getStrategy(code, true), RecoveryStrategy.RETRY);
+        assertEquals(policy.getStrategy(code, false), RecoveryStrategy.RESET, "Exhausted retries must reset the device");
+        assertEquals(policy.getStrategy(Errors.WRONG_PRICE.code, false), RecoveryStrategy.KEEP_STATE);
+    }
+    
+    @Test
+    public void backoffTest() {
+        RecoveryPolicy policy = new RecoveryPolicy();
+        policy.setRetryDelay(100);
+        assertEquals(policy.getBackoff(0), 100);
+        assertEquals(policy.getBackoff(1), 200);
+        assertEquals(policy.getBackoff(3), 800);
+    }
+    
+}
@@ -0,0 +1,52 @@
+/*
+ * atol4j - клиентская библиотека для контрольной кассовой техники (ККТ) АТОЛ
+ * Copyright (C) 2019 Олег Викторович Курбатов
+ *
+ * Это программа является свободным программным обеспечением. Вы можете
+ * распространять и/или модифицировать её согласно условиям Стандартной
+ * Общественной Лицензии GNU, опубликованной Фондом Свободного Программного
+ * Обеспечения, версии 3 или, по Вашему желанию, любой более поздней версии.
+ *
+ * Эта программа распространяется в надежде, что она будет полезной, но БЕЗ
+ * ВСЯКИХ ГАРАНТИЙ, в том числе подразумеваемых гарантий ТОВАРНОГО
+ * СОСТОЯНИЯ ПРИ ПРОДАЖЕ и ГОДНОСТИ ДЛЯ ОПРЕДЕЛЁННОГО ПРИМЕНЕНИЯ. Смотрите
+ * Стандартную Общественную Лицензию GNU для получения дополнительной
+ * информации.
+ *
+ * Вы должны были получить копию Стандартной Общественной Лицензии GNU
+ * вместе с программой. В случае её отсутствия, смотрите
+ * http://www.gnu.org/licenses/.
+ */
+package com.github.kurbatov.atol4j.command.common;
+
+import com.github.kurbatov.atol4j.ShadowState;
+import com.github.kurbatov.atol4j.command.Result;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Тестирует команду выхода из текущего режима.
+ *
+ * @author Oleg Kurbatov &lt;o.v.kurbatov@gmail.com&gt;
+ */
+public class ResetModeCommandTest {
+    
+    @Test
+    public void predictTest() {
+        ShadowState state = new ShadowState();
+        Result predicted = ResetModeCommand.INSTANCE.predict(state);
+        assertNotNull(predicted, "Reset in the select mode must be elided");
+        assertFalse(predicted.hasError());
+        state.modeEntered(SetModeCommand.REGISTRATION);
+        assertNull(ResetModeCommand.INSTANCE.predict(state), "Reset of an active mode must be sent");
+    }
+    
+    @Test
+    public void updateTest() {
+        ShadowState state = new ShadowState();
+        state.modeEntered(SetModeCommand.REGISTRATION);
+        ResetModeCommand.INSTANCE.update(state, new Result());
+        assertEquals(state.getMode(), 0);
+    }
+    
+}
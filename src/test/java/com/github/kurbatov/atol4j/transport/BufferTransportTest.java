@@ -0,0 +1,106 @@
+/*
+ * atol4j - клиентская библиотека для контрольной кассовой техники (ККТ) АТОЛ
+ * Copyright (C) 2019 Олег Викторович Курбатов
+ *
+ * Это программа является свободным программным обеспечением. Вы можете
+ * распространять и/или модифицировать её согласно условиям Стандартной
+ * Общественной Лицензии GNU, опубликованной Фондом Свободного Программного
+ * Обеспечения, версии 3 или, по Вашему желанию, любой более поздней версии.
+ *
+ * Эта программа распространяется в надежде, что она будет полезной, но БЕЗ
+ * ВСЯКИХ ГАРАНТИЙ, в том числе подразумеваемых гарантий ТОВАРНОГО
+ * СОСТОЯНИЯ ПРИ ПРОДАЖЕ и ГОДНОСТИ ДЛЯ ОПРЕДЕЛЁННОГО ПРИМЕНЕНИЯ. Смотрите
+ * Стандартную Общественную Лицензию GNU для получения дополнительной
+ * информации.
+ *
+ * Вы должны были получить копию Стандартной Общественной Лицензии GNU
+ * вместе с программой. В случае её отсутствия, смотрите
+ * http://www.gnu.org/licenses/.
+ */
+package com.github.kurbatov.atol4j.transport;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Тестирует адаптер транспорта к каналу обмена данными в буферах.
+ *
+ * @author Oleg Kurbatov &lt;o.v.kurbatov@gmail.com&gt;
+ */
+public class BufferTransportTest {
+    
+    @Test
+    public void adapterTest() {
+        RecordingTransport transport = new RecordingTransport();
+        BufferTransport adapter = BufferTransport.of(transport);
+        ByteBuffer header = ByteBuffer.wrap(new byte[] {0, 1, 2}, 1, 2);
+        ByteBuffer body = ByteBuffer.allocateDirect(2).put(new byte[] {3, 4});
+        body.flip();
+        adapter.write(header, body);
+        assertEquals(transport.written.get(0), new byte[] {1, 2, 3, 4}, "Buffers must be gathered in one write");
+        assertFalse(header.hasRemaining());
+        assertFalse(body.hasRemaining());
+        
+        byte[] whole = new byte[] {5, 6};
+        adapter.write(ByteBuffer.wrap(whole));
+        assertSame(transport.written.get(1), whole, "Buffer backed by a whole array must not be copied");
+        
+        List<ByteBuffer> received = new ArrayList<>();
+        adapter.listen(received::add);
+        transport.consumer.accept(new byte[] {7, 8});
+        assertEquals(received.size(), 1);
+        assertTrue(received.get(0).isReadOnly());
+        assertEquals(received.get(0).remaining(), 2);
+        assertEquals(received.get(0).get(1), 8);
+        
+        NetworkTransport network = new NetworkTransport("localhost");
+        assertSame(BufferTransport.of(network), network, "Native implementation must be used as is");
+    }
+    
+    private static class RecordingTransport implements Transport {
+        
+        private final List<byte[]> written = new ArrayList<>();
+        
+        private Consumer<byte[]> consumer;
+        
+        @Override
+        public void connect() {
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public void write(byte[] b) {
+            written.add(b);
+        }
+
+        @Override
+        public byte[] read() {
+            return null;
+        }
+
+        @Override
+        public byte[] read(int count) {
+            return null;
+        }
+
+        @Override
+        public byte[] read(int count, int timeout) throws TimeoutException {
+            return null;
+        }
+
+        @Override
+        public void subscribe(Consumer<byte[]> consumer) {
+            this.consumer = consumer;
+        }
+        
+    }
+    
+}
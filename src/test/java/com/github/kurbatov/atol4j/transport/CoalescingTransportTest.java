@@ -0,0 +1,105 @@
+/*
+ * atol4j - клиентская библиотека для контрольной кассовой техники (ККТ) АТОЛ
+ * Copyright (C) 2019 Олег Викторович Курбатов
+ *
+ * Это программа является свободным программным обеспечением. Вы можете
+ * распространять и/или модифицировать её согласно условиям Стандартной
+ * Общественной Лицензии GNU, опубликованной Фондом Свободного Программного
+ * Обеспечения, версии 3 или, по Вашему желанию, любой более поздней версии.
+ *
+ * Эта программа распространяется в надежде, что она будет полезной, но БЕЗ
+ * ВСЯКИХ ГАРАНТИЙ, в том числе подразумеваемых гарантий ТОВАРНОГО
+ * СОСТОЯНИЯ ПРИ ПРОДАЖЕ и ГОДНОСТИ ДЛЯ ОПРЕДЕЛЁННОГО ПРИМЕНЕНИЯ. Смотрите
+ * Стандартную Общественную Лицензию GNU для получения дополнительной
+ * информации.
+ *
+ * Вы должны были получить копию Стандартной Общественной Лицензии GNU
+ * вместе с программой. В случае её отсутствия, смотрите
+ * http://www.gnu.org/licenses/.
+ */
+package com.github.kurbatov.atol4j.transport;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Тестирует объединение сообщений в одну операцию записи.
+ *
+ * @author Oleg Kurbatov &lt;o.v.kurbatov@gmail.com&gt;
+ */
+public class CoalescingTransportTest {
+    
+    @Test
+    public void coalesceTest() throws Exception {
+        RecordingTransport delegate = new RecordingTransport();
+        CoalescingTransport transport = new CoalescingTransport(delegate, 50, 1024);
+        transport.connect();
+        transport.write(new byte[] {1, 2});
+        transport.write(new byte[] {3});
+        assertTrue(delegate.writes.isEmpty(), "Messages must be held during the linger period");
+        for (int i = 0; i < 100 && delegate.writes.isEmpty(); i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(delegate.writes.size(), 1, "Messages must be written at once");
+        assertEquals(delegate.writes.get(0), new byte[] {1, 2, 3});
+        transport.disconnect();
+    }
+    
+    @Test
+    public void maxSizeTest() {
+        RecordingTransport delegate = new RecordingTransport();
+        CoalescingTransport transport = new CoalescingTransport(delegate, 10000, 4);
+        transport.connect();
+        transport.write(new byte[] {1, 2});
+        transport.write(new byte[] {3, 4, 5});
+        assertEquals(delegate.writes.size(), 1, "Block must be written as soon as it reaches the maximum size");
+        assertEquals(delegate.writes.get(0), new byte[] {1, 2, 3, 4, 5});
+        transport.write(new byte[] {6});
+        transport.read();
+        assertEquals(delegate.writes.size(), 2, "Pending messages must be written before reading");
+        transport.disconnect();
+    }
+    
+    private static class RecordingTransport implements Transport {
+        
+        private final List<byte[]> writes = new CopyOnWriteArrayList<>();
+        
+        @Override
+        public void connect() {
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public void write(byte[] b) {
+            writes.add(b);
+        }
+
+        @Override
+        public byte[] read() {
+            return new byte[0];
+        }
+
+        @Override
+        public byte[] read(int count) {
+            return new byte[0];
+        }
+
+        @Override
+        public byte[] read(int count, int timeout) throws TimeoutException {
+            return new byte[0];
+        }
+
+        @Override
+        public void subscribe(Consumer<byte[]> consumer) {
+        }
+        
+    }
+    
+}
@@ -0,0 +1,78 @@
+/*
+ * atol4j - клиентская библиотека для контрольной кассовой техники (ККТ) АТОЛ
+ * Copyright (C) 2019 Олег Викторович Курбатов
+ *
+ * Это программа является свободным программным обеспечением. Вы можете
+ * распространять и/или модифицировать её согласно условиям Стандартной
+ * Общественной Лицензии GNU, опубликованной Фондом Свободного Программного
+ * Обеспечения, версии 3 или, по Вашему желанию, любой более поздней версии.
+ *
+ * Эта программа распространяется в надежде, что она будет полезной, но БЕЗ
+ * ВСЯКИХ ГАРАНТИЙ, в том числе подразумеваемых гарантий ТОВАРНОГО
+ * СОСТОЯНИЯ ПРИ ПРОДАЖЕ и ГОДНОСТИ ДЛЯ ОПРЕДЕЛЁННОГО ПРИМЕНЕНИЯ. Смотрите
+ * Стандартную Общественную Лицензию GNU для получения дополнительной
+ * информации.
+ *
+ * Вы должны были получить копию Стандартной Общественной Лицензии GNU
+ * вместе с программой. В случае её отсутствия, смотрите
+ * http://www.gnu.org/licenses/.
+ */
+package com.github.kurbatov.atol4j.transport;
+
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.TimeoutException;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Тестирует чтение данных сетевым транспортом.
+ *
+ * @author Oleg Kurbatov &lt;o.v.kurbatov@gmail.com&gt;
+ */
+public class NetworkTransportTest {
+    
+    @Test
+    public void readTest() throws Exception {
+        try (ServerSocket server = new ServerSocket(0)) {
+            NetworkTransport transport = new NetworkTransport("localhost", server.getLocalPort());
+            transport.connect();
+            try (Socket device = server.accept()) {
+                OutputStream out = device.getOutputStream();
+                out.write(new byte[] {1, 2});
+                out.flush();
+                try {
+                    transport.read(3, 200);
+                    fail("Read must time out when not enough data arrived");
+                } catch (TimeoutException e) {
+                    // ожидаемо
+                }
+                out.write(new byte[] {3, 4});
+                out.flush();
+                assertEquals(transport.read(3, 1000), new byte[] {1, 2, 3});
+                assertEquals(transport.read(1), new byte[] {4});
+                assertEquals(transport.read(), new byte[0]);
+            } finally {
+                transport.disconnect();
+            }
+        }
+    }
+    
+    @Test
+    public void adaptiveBufferTest() {
+        AdaptiveReadBuffer buffer = new AdaptiveReadBuffer(64, 128, 512);
+        buffer.record(128);
+        assertEquals(buffer.capacity(), 256, "Buffer filled by a read must grow");
+        buffer.record(256);
+        buffer.record(512);
+        assertEquals(buffer.capacity(), 512, "Buffer must not grow beyond the maximum");
+        buffer.record(10);
+        assertEquals(buffer.capacity(), 512, "Single small read must not shrink the buffer");
+        buffer.record(10);
+        assertEquals(buffer.capacity(), 256);
+        assertEquals(buffer.get().remaining(), 256);
+        assertTrue(buffer.get().isDirect());
+    }
+    
+}
@@ -0,0 +1,404 @@
+/*
+ * atol4j - клиентская библиотека для контрольной кассовой техники (ККТ) АТОЛ
+ * Copyright (C) 2019 Олег Викторович Курбатов
+ *
+ * Это программа является свободным программным обеспечением. Вы можете
+ * распространять и/или модифицировать её согласно условиям Стандартной
+ * Общественной Лицензии GNU, опубликованной Фондом Свободного Программного
+ * Обеспечения, версии 3 или, по Вашему желанию, любой более поздней версии.
+ *
+ * Эта программа распространяется в надежде, что она будет полезной, но БЕЗ
+ * ВСЯКИХ ГАРАНТИЙ, в том числе подразумеваемых гарантий ТОВАРНОГО
+ * СОСТОЯНИЯ ПРИ ПРОДАЖЕ и ГОДНОСТИ ДЛЯ ОПРЕДЕЛЁННОГО ПРИМЕНЕНИЯ. Смотрите
+ * Стандартную Общественную Лицензию GNU для получения дополнительной
+ * информации.
+ *
+ * Вы должны были получить копию Стандартной Общественной Лицензии GNU
+ * вместе с программой. В случае её отсутствия, смотрите
+ * http://www.gnu.org/licenses/.
+ */
+package com.github.kurbatov.atol4j.transport.emulator;
+
+import com.github.kurbatov.atol4j.CashRegister;
+import com.github.kurbatov.atol4j.command.ChainResult;
+import com.github.kurbatov.atol4j.command.CommandBuilder;
+import com.github.kurbatov.atol4j.command.Errors;
+import com.github.kurbatov.atol4j.command.Result;
+import com.github.kurbatov.atol4j.command.common.SetModeCommand;
+import com.github.kurbatov.atol4j.command.common.request.DeviceStateRequest;
+import com.github.kurbatov.atol4j.command.common.request.DeviceTypeRequest;
+import com.github.kurbatov.atol4j.command.registration.CloseBillCommand;
+import com.github.kurbatov.atol4j.command.registration.OpenBillCommand;
+import com.github.kurbatov.atol4j.transport.NetworkTransport;
+import com.github.kurbatov.atol4j.transport.protocol.v3.TransportProtocolV3;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Тестирует взаимодействие библиотеки с эмулятором ККТ.
+ *
+ * @author Oleg Kurbatov &lt;o.v.kurbatov@gmail.com&gt;
+ */
+public class DeviceEmulatorTest {
+    
+    @Test
+    public void connectTest() throws Exception {
+        CashRegister device = new CashRegister(new EmulatorTransport(), new byte[] {0, 0});
+        try {
+            DeviceTypeRequest.Response type = device.connect().get(5, TimeUnit.SECONDS);
+            assertEquals(type.getModel(), DeviceEmulator.MODEL);
+            assertEquals(type.getDeviceName(), "АТОЛ Эмулятор");
+        } finally {
+            device.disconnect();
+        }
+    }
+    
+    @Test
+    public void pipelineTest() throws Exception {
+        DeviceEmulator emulator = new DeviceEmulator();
+        emulator.setLatency(5);
+        emulator.setSeed(1);
+        CashRegister device = new CashRegister(new TransportProtocolV3(new EmulatorTransport(emulator), 4), new byte[] {0, 0});
+        try {
+            device.connect().get(5, TimeUnit.SECONDS);
+            emulator.setRetransmitRate(0.5);
+            Result result = device.command()
+                    .beep(1000, 10)
+                    .beep(1000, 10)
+                    .beep(1000, 10)
+                    .beep(1000, 10)
+                    .beep(1000, 10)
+                    .execute()
+                    .get(5, TimeUnit.SECONDS);
+            assertFalse(result.hasError());
+        } finally {
+            device.disconnect();
+        }
+    }
+    
+    @Test
+    public void errorStopsQueueTest() throws Exception {
+        DeviceEmulator emulator = new DeviceEmulator();
+        emulator.setHandler(c -> c.length > 0 && c[0] == 0x47 ? new byte[] {Result.RESPONSE_CODE, 0x7A, 0} : DeviceEmulator.respond(c));
+        CashRegister device = new CashRegister(new TransportProtocolV3(new EmulatorTransport(emulator), 4), new byte[] {0, 0});
+        try {
+            device.connect().get(5, TimeUnit.SECONDS);
+            Result result = device.command()
+                    .beep(1000, 10)
+                    .buzz()
+                    .beep(1000, 10)
+                    .execute()
+                    .get(5, TimeUnit.SECONDS);
+            assertTrue(result.hasError());
+            assertEquals(result.getErrorCode(), (byte) 0x7A);
+        } finally {
+            device.disconnect();
+        }
+    }
+    
+    @Test
+    public void asyncBypassesQueueTest() throws Exception {
+        DeviceEmulator emulator = new DeviceEmulator();
+        CashRegister device = new CashRegister(new TransportProtocolV3(new EmulatorTransport(emulator), 1), new byte[] {0, 0});
+        try {
+            device.connect().get(5, TimeUnit.SECONDS);
+            emulator.setLatency(300);
+            CompletableFuture<Result> first = device.command().beep(1000, 10).execute();
+            CompletableFuture<Result> second = device.command().beep(1000, 10).execute();
+            CompletableFuture<DeviceStateRequest.Response> state = device.execute(DeviceStateRequest.INSTANCE);
+            second.get(5, TimeUnit.SECONDS);
+            assertTrue(first.isDone());
+            assertTrue(state.isDone(), "Status query must not wait for queued commands");
+            assertFalse(state.get().hasError());
+        } finally {
+            device.disconnect();
+        }
+    }
+    
+    @Test
+    public void batchTest() throws Exception {
+        DeviceEmulator emulator = new DeviceEmulator();
+        CashRegister device = new CashRegister(new TransportProtocolV3(new EmulatorTransport(emulator), 8), new byte[] {0, 0});
+        try {
+            device.connect().get(5, TimeUnit.SECONDS);
+            AtomicInteger results = new AtomicInteger();
+            emulator.subscribe(b -> {
+                if (b.length > 3 && b[3] == (byte) 0xF0) {
+                    results.incrementAndGet();
+                }
+            });
+            CommandBuilder batch = device.command().cut();
+            for (int i = 0; i < 40; i++) {
+                batch.printString("Строка " + i);
+            }
+            Result result = batch.cut().executeBatch().get(5, TimeUnit.SECONDS);
+            assertFalse(result.hasError());
+            assertTrue(results.get() < 21, "Only barrier tasks must return results, got " + results.get());
+            results.set(0);
+            result = device.command()
+                    .printString("1")
+                    .buzz()
+                    .printString("2")
+                    .cut()
+                    .executeBatch()
+                    .get(5, TimeUnit.SECONDS);
+            assertFalse(result.hasError());
+            // транспорт получает результат раньше, чем подписчик теста
+            for (int i = 0; i < 50 && results.get() < 2; i++) {
+                Thread.sleep(10);
+            }
+            assertEquals(results.get(), 2, "Commands that are not batchable must be sent with a result request");
+        } finally {
+            device.disconnect();
+        }
+    }
+    
+    @Test
+    public void batchErrorTest() throws Exception {
+        DeviceEmulator emulator = new DeviceEmulator();
+        emulator.setHandler(c -> c.length > 0 && c[0] == 0x47 ? new byte[] {Result.RESPONSE_CODE, 0x7A, 0} : DeviceEmulator.respond(c));
+        CashRegister device = new CashRegister(new TransportProtocolV3(new EmulatorTransport(emulator), 8), new byte[] {0, 0});
+        try {
+            device.connect().get(5, TimeUnit.SECONDS);
+            Result result = device.command()
+                    .printString("1")
+                    .printString("2")
+                    .buzz()
+                    .printString("3")
+                    .cut()
+                    .executeBatch()
+                    .get(5, TimeUnit.SECONDS);
+            assertTrue(result.hasError());
+            assertEquals(result.getErrorCode(), (byte) 0x7A);
+            assertEquals(((ChainResult) result).getFailedIndex(), 2);
+        } finally {
+            device.disconnect();
+        }
+    }
+    
+    @Test
+    public void shadowStateTest() throws Exception {
+        DeviceEmulator emulator = new DeviceEmulator();
+        AtomicInteger stateRequests = new AtomicInteger();
+        emulator.setHandler(c -> {
+            if (c.length > 0 && c[0] == 0x3F) {
+                stateRequests.incrementAndGet();
+            }
+            return c.length > 0 && c[0] == 0x47 ? new byte[] {Result.RESPONSE_CODE, 0x7A, 0} : DeviceEmulator.respond(c);
+        });
+        CashRegister device = new CashRegister(new TransportProtocolV3(new EmulatorTransport(emulator), 4), new byte[] {0, 0});
+        device.setReconcilePeriod(60000);
+        try {
+            device.connect().get(5, TimeUnit.SECONDS);
+            assertEquals(stateRequests.get(), 1);
+            Result result = device.command()
+                    .setMode(SetModeCommand.REGISTRATION, (byte) 0, (byte) 0, (byte) 0, (byte) 30)
+                    .buzz()
+                    .execute()
+                    .get(5, TimeUnit.SECONDS);
+            assertTrue(result.hasError());
+            assertEquals(stateRequests.get(), 1, "Recovery must rely on the shadow state");
+            assertEquals(device.getShadowState().getMode(), 0);
+            device.setReconcilePeriod(0);
+            device.toInitialState().get(5, TimeUnit.SECONDS);
+            assertEquals(stateRequests.get(), 2);
+        } finally {
+            device.disconnect();
+        }
+    }
+    
+    @Test
+    public void lazyModeResetTest() throws Exception {
+        DeviceEmulator emulator = new DeviceEmulator();
+        AtomicInteger setMode = new AtomicInteger();
+        AtomicInteger resetMode = new AtomicInteger();
+        emulator.setHandler(c -> {
+            if (c.length > 0 && c[0] == 0x56) {
+                setMode.incrementAndGet();
+            } else if (c.length > 0 && c[0] == 0x48) {
+                resetMode.incrementAndGet();
+            }
+            return DeviceEmulator.respond(c);
+        });
+        CashRegister device = new CashRegister(new TransportProtocolV3(new EmulatorTransport(emulator), 4), new byte[] {0, 0});
+        device.setReconcilePeriod(60000);
+        device.setLazyModeReset(true);
+        try {
+            device.connect().get(5, TimeUnit.SECONDS);
+            for (int i = 0; i < 3; i++) {
+                Result result = device.command()
+                        .setMode(SetModeCommand.REGISTRATION, (byte) 0, (byte) 0, (byte) 0, (byte) 30)
+                        .beep(1000, 10)
+                        .resetMode()
+                        .execute()
+                        .get(5, TimeUnit.SECONDS);
+                assertFalse(result.hasError());
+            }
+            assertEquals(setMode.get(), 1, "Repeated mode entry must be elided");
+            assertEquals(resetMode.get(), 0, "Mode reset must be deferred");
+            assertEquals(device.getShadowState().getMode(), SetModeCommand.REGISTRATION);
+            device.command().beep(1000, 10).execute().get(5, TimeUnit.SECONDS);
+            assertEquals(resetMode.get(), 1);
+            assertEquals(device.getShadowState().getMode(), 0);
+            Result result = device.command().resetMode().execute().get(5, TimeUnit.SECONDS);
+            assertFalse(result.hasError());
+            assertEquals(resetMode.get(), 1, "Reset in select mode must be elided");
+            device.command()
+                    .setMode(SetModeCommand.REGISTRATION, (byte) 0, (byte) 0, (byte) 0, (byte) 30)
+                    .append(new OpenBillCommand(OpenBillCommand.INCOME, true, false))
+                    .execute()
+                    .get(5, TimeUnit.SECONDS);
+            device.toInitialState().get(5, TimeUnit.SECONDS);
+            assertEquals(resetMode.get(), 2, "Recovery must leave the mode without deferral");
+            assertEquals(device.getShadowState().getMode(), 0);
+        } finally {
+            device.disconnect();
+        }
+    }
+    
+    @Test
+    public void deferredResetErrorTest() throws Exception {
+        DeviceEmulator emulator = new DeviceEmulator();
+        AtomicInteger stateRequests = new AtomicInteger();
+        emulator.setHandler(c -> {
+            if (c.length > 0 && c[0] == 0x3F) {
+                stateRequests.incrementAndGet();
+            }
+            return c.length > 0 && c[0] == 0x48 ? new byte[] {Result.RESPONSE_CODE, Errors.FORMAT_ERR.code, 0} : DeviceEmulator.respond(c);
+        });
+        CashRegister device = new CashRegister(new TransportProtocolV3(new EmulatorTransport(emulator), 4), new byte[] {0, 0});
+        device.setReconcilePeriod(60000);
+        device.setLazyModeReset(true);
+        try {
+            device.connect().get(5, TimeUnit.SECONDS);
+            device.command()
+                    .setMode(SetModeCommand.REGISTRATION, (byte) 0, (byte) 0, (byte) 0, (byte) 30)
+                    .beep(1000, 10)
+                    .resetMode()
+                    .execute()
+                    .get(5, TimeUnit.SECONDS);
+            stateRequests.set(0);
+            Result result = device.command().beep(1000, 10).execute().get(5, TimeUnit.SECONDS);
+            assertFalse(result.hasError());
+            assertEquals(stateRequests.get(), 1, "Failed deferred reset must lead to recovery");
+        } finally {
+            device.disconnect();
+        }
+    }
+    
+    @Test
+    public void keepStateRecoveryTest() throws Exception {
+        DeviceEmulator emulator = new DeviceEmulator();
+        AtomicInteger recoveryCommands = new AtomicInteger();
+        emulator.setHandler(c -> {
+            if (c.length > 0 && (c[0] == 0x3F || c[0] == 0x48 || c[0] == 0x59)) {
+                recoveryCommands.incrementAndGet();
+            }
+            return c.length > 0 && c[0] == 0x47 ? new byte[] {Result.RESPONSE_CODE, Errors.WRONG_PRICE.code, 0} : DeviceEmulator.respond(c);
+        });
+        CashRegister device = new CashRegister(new TransportProtocolV3(new EmulatorTransport(emulator), 4), new byte[] {0, 0});
+        try {
+            device.connect().get(5, TimeUnit.SECONDS);
+            recoveryCommands.set(0);
+            Result result = device.command()
+                    .setMode(SetModeCommand.REGISTRATION, (byte) 0, (byte) 0, (byte) 0, (byte) 30)
+                    .buzz()
+                    .execute()
+                    .get(5, TimeUnit.SECONDS);
+            assertEquals(result.getErrorCode(), Errors.WRONG_PRICE.code);
+            assertEquals(((ChainResult) result).getFailedIndex(), 1);
+            assertEquals(recoveryCommands.get(), 0, "Item-level error must not reset the device");
+            assertEquals(device.getShadowState().getMode(), SetModeCommand.REGISTRATION);
+        } finally {
+            device.disconnect();
+        }
+    }
+    
+    @Test
+    public void retryRecoveryTest() throws Exception {
+        DeviceEmulator emulator = new DeviceEmulator();
+        AtomicInteger buzz = new AtomicInteger();
+        AtomicInteger print = new AtomicInteger();
+        AtomicInteger closeBill = new AtomicInteger();
+        AtomicInteger stateRequests = new AtomicInteger();
+        emulator.setHandler(c -> {
+            if (c.length > 0 && c[0] == 0x47 && buzz.incrementAndGet() == 1) {
+                return new byte[] {Result.RESPONSE_CODE, Errors.FISCAL_MODULE_EXCHANGE_ERR.code, 0};
+            }
+            if (c.length > 0 && c[0] == 0x4C && print.incrementAndGet() == 1) {
+                return new byte[] {Result.RESPONSE_CODE, Errors.FISCAL_MODULE_EXCHANGE_ERR.code, 0};
+            }
+            if (c.length > 0 && c[0] == 0x4A) {
+                closeBill.incrementAndGet();
+                return new byte[] {Result.RESPONSE_CODE, Errors.FISCAL_MODULE_EXCHANGE_ERR.code, 0};
+            }
+            if (c.length > 0 && c[0] == 0x3F) {
+                stateRequests.incrementAndGet();
+            }
+            return DeviceEmulator.respond(c);
+        });
+        CashRegister device = new CashRegister(new TransportProtocolV3(new EmulatorTransport(emulator), 4), new byte[] {0, 0});
+        try {
+            device.connect().get(5, TimeUnit.SECONDS);
+            Result result = device.command()
+                    .beep(1000, 10)
+                    .buzz()
+                    .printString("1")
+                    .beep(1000, 10)
+                    .execute()
+                    .get(5, TimeUnit.SECONDS);
+            assertFalse(result.hasError());
+            assertEquals(buzz.get(), 2);
+            assertEquals(print.get(), 2, "Each failed command must get its own retries");
+            stateRequests.set(0);
+            result = device.execute(new CloseBillCommand(0, CloseBillCommand.CASH, false)).get(5, TimeUnit.SECONDS);
+            assertEquals(result.getErrorCode(), Errors.FISCAL_MODULE_EXCHANGE_ERR.code);
+            assertEquals(closeBill.get(), 1, "Fiscal command must not be repeated");
+            assertEquals(stateRequests.get(), 1, "Device must be reset by its actual state");
+        } finally {
+            device.disconnect();
+        }
+    }
+    
+    @Test
+    public void networkTest() throws Exception {
+        EmulatorServer server = new EmulatorServer(new DeviceEmulator(), 0);
+        server.start();
+        CashRegister device = new CashRegister(new NetworkTransport("localhost", server.getPort()), new byte[] {0, 0});
+        try {
+            DeviceTypeRequest.Response type = device.connect().get(5, TimeUnit.SECONDS);
+            assertEquals(type.getModel(), DeviceEmulator.MODEL);
+        } finally {
+            device.disconnect();
+            server.stop();
+        }
+    }
+    
+    @Test
+    public void reconnectTest() throws Exception {
+        DeviceEmulator emulator = new DeviceEmulator();
+        EmulatorServer server = new EmulatorServer(emulator, 0);
+        server.start();
+        NetworkTransport transport = new NetworkTransport("localhost", server.getPort());
+        transport.setReconnectDelay(10, 50);
+        CashRegister device = new CashRegister(new TransportProtocolV3(transport, 4), new byte[] {0, 0});
+        try {
+            device.connect().get(5, TimeUnit.SECONDS);
+            emulator.setLatency(300);
+            CompletableFuture<Result> result = device.command()
+                    .beep(1000, 10)
+                    .beep(1000, 10)
+                    .execute();
+            Thread.sleep(100);
+            server.dropConnection();
+            assertFalse(result.get(5, TimeUnit.SECONDS).hasError(), "Commands must complete after the connection is restored");
+        } finally {
+            device.disconnect();
+            server.stop();
+        }
+    }
+    
+}
@@ -0,0 +1,80 @@
+/*
+ * atol4j - клиентская библиотека для контрольной кассовой техники (ККТ) АТОЛ
+ * Copyright (C) 2019 Олег Викторович Курбатов
+ *
+ * Это программа является свободным программным обеспечением. Вы можете
+ * распространять и/или модифицировать её согласно условиям Стандартной
+ * Общественной Лицензии GNU, опубликованной Фондом Свободного Программного
+ * Обеспечения, версии 3 или, по Вашему желанию, любой более поздней версии.
+ *
+ * Эта программа распространяется в надежде, что она будет полезной, но БЕЗ
+ * ВСЯКИХ ГАРАНТИЙ, в том числе подразумеваемых гарантий ТОВАРНОГО
+ * СОСТОЯНИЯ ПРИ ПРОДАЖЕ и ГОДНОСТИ ДЛЯ ОПРЕДЕЛЁННОГО ПРИМЕНЕНИЯ. Смотрите
+ * Стандартную Общественную Лицензию GNU для получения дополнительной
+ * информации.
+ *
+ * Вы должны были получить копию Стандартной Общественной Лицензии GNU
+ * вместе с программой. В случае её отсутствия, смотрите
+ * http://www.gnu.org/licenses/.
+ */
+package com.github.kurbatov.atol4j.transport.emulator;
+
+import com.github.kurbatov.atol4j.transport.protocol.v3.FrameCodec;
+import com.github.kurbatov.atol4j.transport.protocol.v3.Token;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeoutException;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Тестирует чтение данных из транспорта эмулятора.
+ *
+ * @author Oleg Kurbatov &lt;o.v.kurbatov@gmail.com&gt;
+ */
+public class EmulatorTransportTest {
+    
+    @Test
+    public void emptyReadTest() {
+        EmulatorTransport transport = new EmulatorTransport();
+        transport.connect();
+        try {
+            assertEquals(transport.read(), new byte[0]);
+        } finally {
+            transport.disconnect();
+        }
+    }
+    
+    @Test(expectedExceptions = TimeoutException.class)
+    public void readTimeoutTest() throws Exception {
+        EmulatorTransport transport = new EmulatorTransport();
+        transport.connect();
+        try {
+            transport.read(1, 50);
+        } finally {
+            transport.disconnect();
+        }
+    }
+    
+    @Test
+    public void bufferedReadTest() throws Exception {
+        EmulatorTransport transport = new EmulatorTransport();
+        transport.connect();
+        try {
+            ByteBuffer frame = ByteBuffer.allocate(16);
+            FrameCodec.encode((byte) 1, ByteBuffer.wrap(new byte[] {(byte) 0xC4}), frame);
+            frame.flip();
+            byte[] abort = new byte[frame.remaining()];
+            frame.get(abort);
+            transport.write(abort);
+            byte[] header = transport.read(4, 1000);
+            assertEquals(header[0], Token.STX);
+            assertEquals(header[3], (byte) 1);
+            byte[] rest = transport.read(header[1] + 1, 1000);
+            assertEquals(rest.length, header[1] + 1);
+            assertEquals(transport.read(), new byte[0]);
+        } finally {
+            transport.disconnect();
+        }
+    }
+    
+}
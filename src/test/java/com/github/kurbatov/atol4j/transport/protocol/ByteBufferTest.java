@@ -0,0 +1,78 @@
+/*
+ * atol4j - клиентская библиотека для контрольной кассовой техники (ККТ) АТОЛ
+ * Copyright (C) 2019 Олег Викторович Курбатов
+ *
+ * Это программа является свободным программным обеспечением. Вы можете
+ * распространять и/или модифицировать её согласно условиям Стандартной
+ * Общественной Лицензии GNU, опубликованной Фондом Свободного Программного
+ * Обеспечения, версии 3 или, по Вашему желанию, любой более поздней версии.
+ *
+ * Эта программа распространяется в надежде, что она будет полезной, но БЕЗ
+ * ВСЯКИХ ГАРАНТИЙ, в том числе подразумеваемых гарантий ТОВАРНОГО
+ * СОСТОЯНИЯ ПРИ ПРОДАЖЕ и ГОДНОСТИ ДЛЯ ОПРЕДЕЛЁННОГО ПРИМЕНЕНИЯ. Смотрите
+ * Стандартную Общественную Лицензию GNU для получения дополнительной
+ * информации.
+ *
+ * Вы должны были получить копию Стандартной Общественной Лицензии GNU
+ * вместе с программой. В случае её отсутствия, смотрите
+ * http://www.gnu.org/licenses/.
+ */
+package com.github.kurbatov.atol4j.transport.protocol;
+
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Тестирует буфер данных.
+ *
+ * @author Oleg Kurbatov &lt;o.v.kurbatov@gmail.com&gt;
+ */
+public class ByteBufferTest {
+    
+    @Test
+    public void compactTest() {
+        for (boolean direct : new boolean[] {false, true}) {
+            ByteBuffer buffer = new ByteBuffer(8, direct);
+            buffer.append(new byte[] {1, 2, 3, 4, 5, 6});
+            buffer.skip(5);
+            buffer.append(new byte[] {7, 8, 9, 10, 11});
+            assertEquals(buffer.capacity(), 8, "Small remainder must be moved instead of growing the buffer");
+            assertEquals(buffer.size(), 6);
+            assertEquals(buffer.find((byte) 9), 3);
+            assertEquals(buffer.find((byte) 6, 1), -1);
+            assertEquals(buffer.get(5), 11);
+            assertEquals(buffer.take(4), new byte[] {6, 7, 8, 9});
+            assertEquals(buffer.take(), 10);
+            assertEquals(buffer.isDirect(), direct);
+        }
+    }
+    
+    @Test
+    public void growTest() {
+        ByteBuffer buffer = new ByteBuffer(8);
+        buffer.append(new byte[] {1, 2, 3, 4, 5, 6});
+        buffer.skip(1);
+        buffer.append(new byte[] {7, 8});
+        assertEquals(buffer.capacity(), 8);
+        buffer.append(new byte[] {9});
+        assertEquals(buffer.capacity(), 16, "Large remainder must double the buffer");
+        assertEquals(buffer.take(8), new byte[] {2, 3, 4, 5, 6, 7, 8, 9});
+        assertTrue(buffer.isEmpty());
+    }
+    
+    @Test
+    public void sliceTest() {
+        ByteBuffer buffer = new ByteBuffer(8);
+        buffer.append(new byte[] {1, 2, 3, 4, 5, 6});
+        buffer.skip(5);
+        buffer.append(new byte[] {7, 8, 9});
+        java.nio.ByteBuffer slice = buffer.slice(3);
+        assertEquals(slice.remaining(), 3);
+        assertEquals(slice.get(0), 6);
+        assertEquals(slice.get(2), 8);
+        assertTrue(slice.isReadOnly());
+        buffer.skip(3);
+        assertEquals(buffer.take(), 9);
+    }
+    
+}
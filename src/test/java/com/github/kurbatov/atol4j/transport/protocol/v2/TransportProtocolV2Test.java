@@ -20,6 +20,8 @@
 package com.github.kurbatov.atol4j.transport.protocol.v2;
 
 import com.github.kurbatov.atol4j.transport.Transport;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
 import org.testng.annotations.Test;
@@ -55,6 +57,83 @@ public class TransportProtocolV2Test {
         assertFalse(result, "Must return false for incorrect frame");
     }
     
+    @Test
+    public void exchangeTest() throws Exception {
+        byte[] response = new byte[] {0x55, 0x00, 0x10, 0x03, 0x01};
+        DeviceStub device = new DeviceStub(response);
+        TransportProtocolV2 v2 = new TransportProtocolV2(device);
+        CompletableFuture<byte[]> result = v2.send(new byte[] {0x3F}, 0, 1000);
+        assertEquals(result.get(3, TimeUnit.SECONDS), response);
+        assertEquals(device.naks, 1, "Response with wrong checksum must be rejected once");
+        device.respond = false;
+        long start = System.currentTimeMillis();
+        result = v2.send(new byte[] {0x3F}, 0, 200);
+        assertEquals(result.get(3, TimeUnit.SECONDS), new byte[0], "No response within T5 must give an empty answer");
+        assertTrue(System.currentTimeMillis() - start >= 200);
+    }
+    
+    /**
+     * Отвечает на сообщения как устройство. Первый ответ передаётся частями с
+     * неверной контрольной суммой.
+     */
+    private class DeviceStub extends TransportStub {
+        
+        private final byte[] frame;
+        
+        private Consumer<byte[]> consumer;
+        
+        private volatile boolean respond = true;
+        
+        private int naks;
+        
+        private boolean sent;
+
+        DeviceStub(byte[] response) {
+            frame = protocol.wrap(response);
+        }
+
+        @Override
+        public void write(byte[] b) {
+            switch (b[0]) {
+                case Token.ENQ:
+                case Token.STX:
+                    consumer.accept(new byte[] {Token.ACK});
+                    break;
+                case Token.EOT:
+                    if (respond) {
+                        sent = false;
+                        consumer.accept(new byte[] {Token.ENQ});
+                    }
+                    break;
+                case Token.NAK:
+                    naks++;
+                    consumer.accept(frame);
+                    sent = true;
+                    break;
+                case Token.ACK:
+                    if (sent) {
+                        consumer.accept(new byte[] {Token.EOT});
+                    } else if (naks == 0) {
+                        byte[] broken = frame.clone();
+                        broken[broken.length - 1]++;
+                        consumer.accept(java.util.Arrays.copyOf(broken, 3));
+                        consumer.accept(java.util.Arrays.copyOfRange(broken, 3, broken.length));
+                    } else {
+                        consumer.accept(frame);
+                        sent = true;
+                    }
+                    break;
+                default:
+            }
+        }
+
+        @Override
+        public void subscribe(Consumer<byte[]> consumer) {
+            this.consumer = consumer;
+        }
+        
+    }
+    
     private static class TransportStub implements Transport {
         @Override
         public void connect() {
@@ -0,0 +1,72 @@
+/*
+ * atol4j - клиентская библиотека для контрольной кассовой техники (ККТ) АТОЛ
+ * Copyright (C) 2019 Олег Викторович Курбатов
+ *
+ * Это программа является свободным программным обеспечением. Вы можете
+ * распространять и/или модифицировать её согласно условиям Стандартной
+ * Общественной Лицензии GNU, опубликованной Фондом Свободного Программного
+ * Обеспечения, версии 3 или, по Вашему желанию, любой более поздней версии.
+ *
+ * Эта программа распространяется в надежде, что она будет полезной, но БЕЗ
+ * ВСЯКИХ ГАРАНТИЙ, в том числе подразумеваемых гарантий ТОВАРНОГО
+ * СОСТОЯНИЯ ПРИ ПРОДАЖЕ и ГОДНОСТИ ДЛЯ ОПРЕДЕЛЁННОГО ПРИМЕНЕНИЯ. Смотрите
+ * Стандартную Общественную Лицензию GNU для получения дополнительной
+ * информации.
+ *
+ * Вы должны были получить копию Стандартной Общественной Лицензии GNU
+ * вместе с программой. В случае её отсутствия, смотрите
+ * http://www.gnu.org/licenses/.
+ */
+package com.github.kurbatov.atol4j.transport.protocol.v3;
+
+import java.nio.ByteBuffer;
+import org.testng.annotations.Test;
+import static com.github.kurbatov.atol4j.transport.protocol.v3.Token.*;
+import static org.testng.Assert.*;
+
+/**
+ * Тестирует кодирование и декодирование пакетов в буферах NIO.
+ *
+ * @author Oleg Kurbatov &lt;o.v.kurbatov@gmail.com&gt;
+ */
+public class FrameCodecTest {
+    
+    @Test
+    public void directBufferTest() {
+        byte[] data = {0x1F, STX, 0x00, ESC, (byte) 0xFF};
+        ByteBuffer payload = ByteBuffer.allocateDirect(data.length);
+        payload.put(data).flip();
+        ByteBuffer frame = ByteBuffer.allocateDirect(FrameCodec.maxFrameLength(data.length));
+        int len = FrameCodec.encode((byte) 7, payload, frame);
+        assertEquals(len, data.length + 2 + 5, "Control bytes of the payload must be escaped");
+        assertFalse(payload.hasRemaining(), "Payload must be consumed");
+        frame.flip();
+        ByteBuffer decoded = ByteBuffer.allocate(FrameCodec.payloadLength(frame));
+        assertEquals(FrameCodec.decode(frame, decoded), 7);
+        assertEquals(decoded.array(), data);
+    }
+    
+    @Test
+    public void heapBufferMatchesTest() {
+        byte[] data = {Status.ASYNC_RESULT, 87, 0x55, 0, 0};
+        ByteBuffer frame = ByteBuffer.allocate(FrameCodec.maxFrameLength(data.length));
+        FrameCodec.encode((byte) 0xF0, ByteBuffer.wrap(data), frame);
+        byte[] encoded = new byte[frame.position()];
+        frame.flip();
+        frame.get(encoded);
+        assertEquals(encoded, new byte[] {STX, 5, 0, (byte) 0xF0, Status.ASYNC_RESULT, 87, 0x55, 0, 0, ESC, TSTX});
+    }
+    
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void wrongCrcTest() {
+        ByteBuffer frame = ByteBuffer.wrap(new byte[] {STX, 1, 0, 1, 0x10, 0x11});
+        FrameCodec.decode(frame, ByteBuffer.allocate(1));
+    }
+    
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void wrongLengthTest() {
+        ByteBuffer frame = ByteBuffer.wrap(new byte[] {STX, 2, 0, 1, 0x10, 0x11});
+        FrameCodec.decode(frame, ByteBuffer.allocate(2));
+    }
+    
+}
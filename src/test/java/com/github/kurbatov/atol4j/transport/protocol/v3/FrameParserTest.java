@@ -0,0 +1,84 @@
+/*
+ * atol4j - клиентская библиотека для контрольной кассовой техники (ККТ) АТОЛ
+ * Copyright (C) 2019 Олег Викторович Курбатов
+ *
+ * Это программа является свободным программным обеспечением. Вы можете
+ * распространять и/или модифицировать её согласно условиям Стандартной
+ * Общественной Лицензии GNU, опубликованной Фондом Свободного Программного
+ * Обеспечения, версии 3 или, по Вашему желанию, любой более поздней версии.
+ *
+ * Эта программа распространяется в надежде, что она будет полезной, но БЕЗ
+ * ВСЯКИХ ГАРАНТИЙ, в том числе подразумеваемых гарантий ТОВАРНОГО
+ * СОСТОЯНИЯ ПРИ ПРОДАЖЕ и ГОДНОСТИ ДЛЯ ОПРЕДЕЛЁННОГО ПРИМЕНЕНИЯ. Смотрите
+ * Стандартную Общественную Лицензию GNU для получения дополнительной
+ * информации.
+ *
+ * Вы должны были получить копию Стандартной Общественной Лицензии GNU
+ * вместе с программой. В случае её отсутствия, смотрите
+ * http://www.gnu.org/licenses/.
+ */
+package com.github.kurbatov.atol4j.transport.protocol.v3;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.testng.annotations.Test;
+import static com.github.kurbatov.atol4j.transport.protocol.v3.Token.*;
+import static org.testng.Assert.*;
+
+/**
+ * Тестирует выделение пакетов из потока данных.
+ *
+ * @author Oleg Kurbatov &lt;o.v.kurbatov@gmail.com&gt;
+ */
+public class FrameParserTest {
+    
+    @Test
+    public void splitTest() {
+        byte[] frame = encode((byte) 3, new byte[] {STX, ESC, 0x10});
+        FrameParser parser = new FrameParser();
+        List<byte[]> frames = new ArrayList<>();
+        for (byte b : frame) {
+            parser.parse(new byte[] {b}, frames::add);
+        }
+        assertEquals(frames.size(), 1, "Frame received byte by byte must be assembled");
+        assertEquals(frames.get(0), frame);
+    }
+    
+    @Test
+    public void batchTest() {
+        byte[] first = encode((byte) 1, new byte[] {1, 2});
+        byte[] second = encode((byte) 2, new byte[] {ESC});
+        byte[] data = new byte[first.length + second.length + 2];
+        data[0] = 0x55; // мусор перед пакетом
+        System.arraycopy(first, 0, data, 1, first.length);
+        System.arraycopy(second, 0, data, first.length + 1, second.length);
+        FrameParser parser = new FrameParser();
+        List<byte[]> frames = new ArrayList<>();
+        parser.parse(data, frames::add);
+        assertEquals(frames.size(), 2);
+        assertEquals(frames.get(0), first);
+        assertEquals(frames.get(1), second);
+    }
+    
+    @Test
+    public void resyncTest() {
+        byte[] broken = encode((byte) 1, new byte[] {1, 2, 3, 4});
+        byte[] frame = encode((byte) 2, new byte[] {5});
+        byte[] data = Arrays.copyOf(broken, broken.length - 3 + frame.length);
+        System.arraycopy(frame, 0, data, broken.length - 3, frame.length);
+        FrameParser parser = new FrameParser();
+        List<byte[]> frames = new ArrayList<>();
+        parser.parse(data, frames::add);
+        assertEquals(frames.size(), 1, "Truncated frame must be dropped");
+        assertEquals(frames.get(0), frame);
+    }
+    
+    private static byte[] encode(byte id, byte[] payload) {
+        ByteBuffer out = ByteBuffer.allocate(FrameCodec.maxFrameLength(payload.length));
+        FrameCodec.encode(id, ByteBuffer.wrap(payload), out);
+        return Arrays.copyOf(out.array(), out.position());
+    }
+    
+}
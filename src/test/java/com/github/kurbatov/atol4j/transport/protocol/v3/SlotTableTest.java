@@ -0,0 +1,62 @@
+/*
+ * atol4j - клиентская библиотека для контрольной кассовой техники (ККТ) АТОЛ
+ * Copyright (C) 2019 Олег Викторович Курбатов
+ *
+ * Это программа является свободным программным обеспечением. Вы можете
+ * распространять и/или модифицировать её согласно условиям Стандартной
+ * Общественной Лицензии GNU, опубликованной Фондом Свободного Программного
+ * Обеспечения, версии 3 или, по Вашему желанию, любой более поздней версии.
+ *
+ * Эта программа распространяется в надежде, что она будет полезной, но БЕЗ
+ * ВСЯКИХ ГАРАНТИЙ, в том числе подразумеваемых гарантий ТОВАРНОГО
+ * СОСТОЯНИЯ ПРИ ПРОДАЖЕ и ГОДНОСТИ ДЛЯ ОПРЕДЕЛЁННОГО ПРИМЕНЕНИЯ. Смотрите
+ * Стандартную Общественную Лицензию GNU для получения дополнительной
+ * информации.
+ *
+ * Вы должны были получить копию Стандартной Общественной Лицензии GNU
+ * вместе с программой. В случае её отсутствия, смотрите
+ * http://www.gnu.org/licenses/.
+ */
+package com.github.kurbatov.atol4j.transport.protocol.v3;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Тестирует таблицу с поколениями ячеек.
+ *
+ * @author Oleg Kurbatov &lt;o.v.kurbatov@gmail.com&gt;
+ */
+public class SlotTableTest {
+    
+    @Test
+    public void generationTest() {
+        SlotTable<String> table = new SlotTable<>(0xE0);
+        byte id = (byte) 0xDF;
+        int stale = table.put(id, "old");
+        int actual = table.put(id, "new");
+        assertNotEquals(stale, actual, "Reused slot must get a new generation");
+        assertEquals(table.size(), 1);
+        assertNull(table.remove(id, stale), "Stale generation must not free a reused slot");
+        assertEquals(table.get(id), "new");
+        assertEquals(table.remove(id, actual), "new");
+        assertNull(table.get(id));
+        assertEquals(table.size(), 0);
+    }
+    
+    @Test
+    public void drainTest() {
+        SlotTable<Integer> table = new SlotTable<>(0xE0);
+        for (int i = 0; i < 0xE0; i += 7) {
+            table.put((byte) i, i);
+        }
+        List<Integer> drained = new ArrayList<>();
+        table.drain(drained::add);
+        assertEquals(drained.size(), 32);
+        assertEquals(table.size(), 0);
+        assertNull(table.get((byte) 7));
+    }
+    
+}
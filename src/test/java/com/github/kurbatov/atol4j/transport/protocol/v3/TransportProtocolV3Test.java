@@ -20,7 +20,19 @@
 package com.github.kurbatov.atol4j.transport.protocol.v3;
 
 import com.github.kurbatov.atol4j.command.Result;
+import com.github.kurbatov.atol4j.transport.EventLoop;
 import com.github.kurbatov.atol4j.transport.Transport;
+import com.github.kurbatov.atol4j.transport.protocol.ExecutionMode;
+import com.github.kurbatov.atol4j.transport.protocol.Priority;
+import com.github.kurbatov.atol4j.transport.protocol.UnknownResultException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
 import org.testng.annotations.Test;
@@ -80,6 +92,275 @@ public class TransportProtocolV3Test {
         assertEquals(frame[3], 0);
     }
     
+    @Test
+    public void windowTest() throws Exception {
+        RecordingTransport transport = new RecordingTransport();
+        TransportProtocolV3 windowed = new TransportProtocolV3(transport, 2);
+        CompletableFuture<byte[]> first = windowed.send(new byte[] {1});
+        CompletableFuture<byte[]> second = windowed.send(new byte[] {2});
+        CompletableFuture<byte[]> third = windowed.send(new byte[] {3});
+        assertEquals(transport.frames.size(), 2, "Only the window of tasks should be sent to the device");
+        byte[] add = TransportProtocolV3.unwrap(transport.frames.get(0));
+        assertEquals(add[0], Command.ADD);
+        windowed.processResponse(windowed.wrap(new byte[] {Status.ASYNC_RESULT, add[2], Result.RESPONSE_CODE, 0, 0}, (byte) 0xF0));
+        assertEquals(first.get(1, TimeUnit.SECONDS), new byte[] {Result.RESPONSE_CODE, 0, 0});
+        for (int i = 0; i < 100 && transport.frames.size() < 3; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(transport.frames.size(), 3, "Next task must be sent");
+        byte[] next = TransportProtocolV3.unwrap(transport.frames.get(2));
+        assertEquals(next[0], Command.ACK_ADD, "Result must be acknowledged with the next task");
+        assertEquals(next[1], add[2]);
+        assertEquals(next[4], 3);
+        assertFalse(second.isDone());
+        windowed.abort();
+        assertTrue(second.isCompletedExceptionally(), "Abort must cancel tasks sent to the device");
+        assertTrue(third.isCompletedExceptionally(), "Abort must cancel tasks sent to the device");
+        windowed.stop();
+    }
+    
+    @Test
+    public void ackLingerTest() throws Exception {
+        RecordingTransport transport = new RecordingTransport();
+        TransportProtocolV3 protocol = new TransportProtocolV3(transport, 2);
+        CompletableFuture<byte[]> result = protocol.send(new byte[] {1});
+        byte[] add = TransportProtocolV3.unwrap(transport.frames.get(0));
+        protocol.processResponse(protocol.wrap(new byte[] {Status.ASYNC_RESULT, add[2], Result.RESPONSE_CODE, 0, 0}, (byte) 0xF0));
+        result.get(1, TimeUnit.SECONDS);
+        for (int i = 0; i < 100 && transport.frames.size() < 2; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(transport.frames.size(), 2, "Result must be acknowledged when no task follows");
+        byte[] ack = TransportProtocolV3.unwrap(transport.frames.get(1));
+        assertEquals(ack, new byte[] {Command.ACK, add[2]});
+        protocol.stop();
+    }
+    
+    @Test
+    public void rejectTest() {
+        TransportProtocolV3 bounded = new TransportProtocolV3(new RecordingTransport(), 1, 1, OverflowPolicy.REJECT);
+        CompletableFuture<byte[]> first = bounded.send(new byte[] {1});
+        CompletableFuture<byte[]> second = bounded.send(new byte[] {2});
+        CompletableFuture<byte[]> third = bounded.send(new byte[] {3});
+        assertEquals(bounded.getInFlight(), 1);
+        assertEquals(bounded.getQueueSize(), 1);
+        assertFalse(first.isDone());
+        assertFalse(second.isDone());
+        assertTrue(third.isCompletedExceptionally(), "Task must be rejected when the queue is full");
+        assertEquals(bounded.getRejectedCount(), 1);
+        bounded.abort();
+        bounded.stop();
+    }
+    
+    @Test
+    public void shedTest() {
+        TransportProtocolV3 bounded = new TransportProtocolV3(new RecordingTransport(), 1, 2, OverflowPolicy.SHED);
+        bounded.send(new byte[] {1});
+        CompletableFuture<byte[]> low = bounded.send(new byte[] {2}, Priority.LOW);
+        CompletableFuture<byte[]> normal = bounded.send(new byte[] {3}, Priority.NORMAL);
+        CompletableFuture<byte[]> high = bounded.send(new byte[] {4}, Priority.HIGH);
+        assertTrue(low.isCompletedExceptionally(), "Task with the lowest priority must be shed");
+        CompletableFuture<byte[]> another = bounded.send(new byte[] {5}, Priority.NORMAL);
+        assertTrue(another.isCompletedExceptionally(), "Task must not shed tasks with the same priority");
+        assertFalse(normal.isDone());
+        assertFalse(high.isDone());
+        assertEquals(bounded.getShedCount(), 1);
+        assertEquals(bounded.getRejectedCount(), 1);
+        assertEquals(bounded.getPeakQueueSize(), 2);
+        bounded.abort();
+        bounded.stop();
+    }
+    
+    @Test
+    public void waitInEventLoopTest() throws Exception {
+        TransportProtocolV3 bounded = new TransportProtocolV3(new RecordingTransport(), 1, 1, OverflowPolicy.WAIT);
+        bounded.send(new byte[] {1});
+        bounded.send(new byte[] {2});
+        CompletableFuture<byte[]> third = CompletableFuture
+                .supplyAsync(() -> bounded.send(new byte[] {3}), EventLoop.getDefault().getExecutor())
+                .thenCompose(f -> f);
+        try {
+            third.get(5, TimeUnit.SECONDS);
+            fail("Task sent from an event loop thread must not wait for a free slot");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        assertEquals(bounded.getRejectedCount(), 1);
+        bounded.abort();
+        bounded.stop();
+    }
+    
+    @Test
+    public void synchronousReplyTest() throws Exception {
+        RecordingTransport transport = new RecordingTransport();
+        TransportProtocolV3 protocol = new TransportProtocolV3(transport, 2);
+        protocol.processResponse(protocol.wrap(new byte[] {Status.RESULT}, (byte) 1));
+        Thread.sleep(TransportProtocolV3.DEFAULT_ACK_LINGER * 5);
+        assertTrue(transport.frames.isEmpty(), "Synchronous reply must not be acknowledged");
+        protocol.stop();
+    }
+    
+    @Test
+    public void deadlineTest() throws Exception {
+        RecordingTransport transport = new RecordingTransport();
+        TransportProtocolV3 protocol = new TransportProtocolV3(transport, 2);
+        CompletableFuture<byte[]> answered = protocol.send(new byte[] {1}, Priority.NORMAL, 50);
+        CompletableFuture<byte[]> lost = protocol.send(new byte[] {2}, Priority.NORMAL, 50);
+        for (int i = 0; i < 100 && transport.frames.size() < 4; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(transport.frames.size(), 4, "Task status must be requested when the deadline expires");
+        byte[] answeredId = null;
+        for (byte[] frame : transport.frames.subList(2, 4)) {
+            byte[] req = TransportProtocolV3.unwrap(frame);
+            assertEquals(req[0], Command.REQ);
+            if (req[1] == TransportProtocolV3.unwrap(transport.frames.get(0))[2]) {
+                answeredId = frame;
+            }
+        }
+        assertNotNull(answeredId);
+        protocol.processResponse(protocol.wrap(new byte[] {Status.RESULT, Result.RESPONSE_CODE, 0, 0}, answeredId[3]));
+        assertEquals(answered.get(1, TimeUnit.SECONDS), new byte[] {Result.RESPONSE_CODE, 0, 0});
+        try {
+            lost.get(1, TimeUnit.SECONDS);
+            fail("Task must fail when the device does not answer the status request");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        for (int i = 0; i < 100 && protocol.getInFlight() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(protocol.getInFlight(), 0, "Expired task must free the window");
+        protocol.stop();
+    }
+    
+    @Test
+    public void notFoundSilentTaskTest() throws Exception {
+        RecordingTransport transport = new RecordingTransport();
+        TransportProtocolV3 protocol = new TransportProtocolV3(transport, 2);
+        CompletableFuture<byte[]> silent = protocol.send(new byte[] {1}, Priority.NORMAL, 50, ExecutionMode.NO_RESULT);
+        CompletableFuture<byte[]> next = protocol.send(new byte[] {2}, Priority.NORMAL, 50);
+        byte[] silentId = TransportProtocolV3.unwrap(transport.frames.get(0));
+        Map<Byte, byte[]> polls = awaitPolls(transport, 2);
+        protocol.processResponse(protocol.wrap(new byte[] {Status.NOT_FOUND}, polls.get(silentId[2])[3]));
+        assertFalse(silent.isDone(), "Silent task must not be considered executed before the next task is found");
+        byte[] nextId = TransportProtocolV3.unwrap(transport.frames.get(1));
+        protocol.processResponse(protocol.wrap(new byte[] {Status.IN_PROGRESS}, polls.get(nextId[2])[3]));
+        assertEquals(silent.get(1, TimeUnit.SECONDS), new byte[0], "Silent task must be executed when the next task is known to the device");
+        assertFalse(next.isDone());
+        protocol.stop();
+    }
+    
+    @Test
+    public void unknownSilentTaskTest() throws Exception {
+        RecordingTransport transport = new RecordingTransport();
+        TransportProtocolV3 protocol = new TransportProtocolV3(transport, 2);
+        CompletableFuture<byte[]> silent = protocol.send(new byte[] {1}, Priority.NORMAL, 50, ExecutionMode.NO_RESULT);
+        byte[] silentId = TransportProtocolV3.unwrap(transport.frames.get(0));
+        Map<Byte, byte[]> polls = awaitPolls(transport, 1);
+        protocol.processResponse(protocol.wrap(new byte[] {Status.NOT_FOUND}, polls.get(silentId[2])[3]));
+        try {
+            silent.get(1, TimeUnit.SECONDS);
+            fail("Result of the silent task must be unknown when no later task confirms it");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof UnknownResultException);
+        }
+        protocol.stop();
+    }
+    
+    @Test
+    public void resendNotFoundTaskTest() throws Exception {
+        RecordingTransport transport = new RecordingTransport();
+        TransportProtocolV3 protocol = new TransportProtocolV3(transport, 1);
+        CompletableFuture<byte[]> result = protocol.send(new byte[] {7}, Priority.NORMAL, 50);
+        byte[] add = TransportProtocolV3.unwrap(transport.frames.get(0));
+        Map<Byte, byte[]> polls = awaitPolls(transport, 1);
+        int sent = transport.frames.size();
+        protocol.processResponse(protocol.wrap(new byte[] {Status.NOT_FOUND}, polls.get(add[2])[3]));
+        for (int i = 0; i < 100 && transport.frames.size() == sent; i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(transport.frames.size() > sent, "Task not found by the device must be sent again");
+        byte[] resent = TransportProtocolV3.unwrap(transport.frames.get(sent));
+        assertEquals(resent[0], Command.ADD);
+        assertEquals(resent[resent.length - 1], 7);
+        assertFalse(result.isDone(), "Resent task must wait for its result");
+        protocol.processResponse(protocol.wrap(new byte[] {Status.ASYNC_RESULT, resent[2], Result.RESPONSE_CODE, 0, 0}, (byte) 0xF0));
+        assertEquals(result.get(1, TimeUnit.SECONDS), new byte[] {Result.RESPONSE_CODE, 0, 0});
+        protocol.stop();
+    }
+    
+    @Test
+    public void lostPipelinedTaskTest() throws Exception {
+        RecordingTransport transport = new RecordingTransport();
+        TransportProtocolV3 protocol = new TransportProtocolV3(transport, 2);
+        CompletableFuture<byte[]> lost = protocol.send(new byte[] {1}, Priority.NORMAL, 50);
+        CompletableFuture<byte[]> executed = protocol.send(new byte[] {2}, Priority.NORMAL, 50);
+        byte[] lostId = TransportProtocolV3.unwrap(transport.frames.get(0));
+        byte[] executedId = TransportProtocolV3.unwrap(transport.frames.get(1));
+        Map<Byte, byte[]> polls = awaitPolls(transport, 2);
+        protocol.processResponse(protocol.wrap(new byte[] {Status.NOT_FOUND}, polls.get(lostId[2])[3]));
+        protocol.processResponse(protocol.wrap(new byte[] {Status.RESULT, Result.RESPONSE_CODE, 0, 0}, polls.get(executedId[2])[3]));
+        try {
+            lost.get(1, TimeUnit.SECONDS);
+            fail("Task followed by an executed task must not be resent");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof UnknownResultException);
+        }
+        assertEquals(executed.get(1, TimeUnit.SECONDS), new byte[] {Result.RESPONSE_CODE, 0, 0});
+        for (byte[] frame : transport.frames.subList(2, transport.frames.size())) {
+            assertNotEquals(TransportProtocolV3.unwrap(frame)[0], Command.ADD, "Lost task must not be resent");
+        }
+        protocol.stop();
+    }
+    
+    @Test
+    public void notFoundAfterErrorTest() throws Exception {
+        RecordingTransport transport = new RecordingTransport();
+        TransportProtocolV3 protocol = new TransportProtocolV3(transport, 2);
+        CompletableFuture<byte[]> failed = protocol.send(new byte[] {1}, Priority.NORMAL, 50);
+        CompletableFuture<byte[]> dropped = protocol.send(new byte[] {2}, Priority.NORMAL, 50);
+        byte[] failedId = TransportProtocolV3.unwrap(transport.frames.get(0));
+        byte[] droppedId = TransportProtocolV3.unwrap(transport.frames.get(1));
+        Map<Byte, byte[]> polls = awaitPolls(transport, 2);
+        protocol.processResponse(protocol.wrap(new byte[] {Status.RESULT, Result.RESPONSE_CODE, 0x7A, 0}, polls.get(failedId[2])[3]));
+        assertEquals(failed.get(1, TimeUnit.SECONDS), new byte[] {Result.RESPONSE_CODE, 0x7A, 0});
+        protocol.processResponse(protocol.wrap(new byte[] {Status.NOT_FOUND}, polls.get(droppedId[2])[3]));
+        try {
+            dropped.get(1, TimeUnit.SECONDS);
+            fail("Task dropped after an error must not be resent");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof UnknownResultException);
+        }
+        protocol.stop();
+    }
+    
+    private static Map<Byte, byte[]> awaitPolls(RecordingTransport transport, int count) throws InterruptedException {
+        Map<Byte, byte[]> polls = new HashMap<>();
+        for (int i = 0; i < 100 && polls.size() < count; i++) {
+            Thread.sleep(10);
+            for (byte[] frame : transport.frames) {
+                byte[] req = TransportProtocolV3.unwrap(frame);
+                if (req[0] == Command.REQ) {
+                    polls.putIfAbsent(req[1], frame);
+                }
+            }
+        }
+        assertEquals(polls.size(), count, "Task status must be requested when the deadline expires");
+        return polls;
+    }
+    
+    private static class RecordingTransport extends TransportStub {
+        
+        private final List<byte[]> frames = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void write(byte[] b) {
+            frames.add(b);
+        }
+        
+    }
+    
     private static class TransportStub implements Transport {
         @Override
         public void connect() {